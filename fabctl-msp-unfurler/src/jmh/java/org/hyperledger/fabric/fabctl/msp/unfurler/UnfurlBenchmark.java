@@ -0,0 +1,179 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.msp.unfurler;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Unfurl a folder of yaml MSP descriptors to disk, as the init container does, for 10 - 10,000 synthetic
+ * identities.  The descriptors are rendered as fabctl-sandbox renders them:  id first, then the msp and tls trees
+ * with each file as a !!binary scalar.
+ *
+ * unfurlFresh writes every file into an empty folder (a new pod.)  unfurlUnchanged unfurls over the folder written
+ * by the previous run, where the manifest check leaves every file alone (the sidecar, after a config map update.)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UnfurlBenchmark
+{
+    private static final YAMLMapper yamlMapper = new YAMLMapper();
+
+    @Param({ "10", "100", "1000", "10000" })
+    public int identities;
+
+    private Path workDir;
+
+    private File[] descriptors;
+
+    private Unfurler unchanged;
+
+    private Unfurler fresh;
+
+    private int run;
+
+    @Setup(Level.Trial)
+    public void writeDescriptors() throws IOException
+    {
+        workDir = Files.createTempDirectory("unfurl-bench-");
+
+        final Path inputDir = Files.createDirectories(workDir.resolve("input"));
+        for (int i = 0; i < identities; i++)
+        {
+            final String id = "peer" + i + ".org" + (i / 100) + ".example.com";
+            yamlMapper.writeValue(inputDir.resolve("msp-" + id + ".yaml").toFile(), buildDescriptor(id, i));
+        }
+
+        descriptors = inputDir.toFile().listFiles();
+
+        unchanged = new Unfurler(workDir.resolve("unchanged").toFile(), workDir.resolve("blobs").toFile());
+        unfurlAll(unchanged);
+    }
+
+    @Setup(Level.Invocation)
+    public void newOutputFolder()
+    {
+        fresh = new Unfurler(workDir.resolve("fresh-" + run++).toFile(), workDir.resolve("blobs").toFile());
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteFreshFolders() throws IOException
+    {
+        try (final Stream<Path> folders = Files.list(workDir))
+        {
+            for (Path folder : (Iterable<Path>) folders::iterator)
+            {
+                if (folder.getFileName().toString().startsWith("fresh-"))
+                {
+                    delete(folder);
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteWorkDir() throws IOException
+    {
+        delete(workDir);
+    }
+
+    @Benchmark
+    public void unfurlFresh()
+    {
+        unfurlAll(fresh);
+    }
+
+    @Benchmark
+    public void unfurlUnchanged()
+    {
+        unfurlAll(unchanged);
+    }
+
+    /**
+     * A timing for an unfurl that failed part way is meaningless:  fail the run instead.
+     */
+    private void unfurlAll(final Unfurler unfurler)
+    {
+        if (! Main.unfurlAll(unfurler, descriptors, Main.DEFAULT_PARALLELISM))
+        {
+            throw new IllegalStateException("Could not unfurl the descriptors in " + workDir);
+        }
+    }
+
+    /**
+     * A peer's msp and tls folders, as laid out by cryptogen.  The CA certs are shared across an org.
+     */
+    private static ObjectNode buildDescriptor(final String id, final int seed)
+    {
+        final String org = id.substring(id.indexOf('.') + 1);
+        final int orgSeed = seed / 100;
+
+        final ObjectNode descriptor = JsonNodeFactory.instance.objectNode();
+        descriptor.put("name", "msp-" + id);
+        descriptor.put("id", id);
+
+        final ObjectNode msp = descriptor.putObject("msp");
+        msp.putObject("admincerts").put("Admin@" + org + "-cert.pem", pem("admin", orgSeed));
+        msp.putObject("cacerts").put("ca." + org + "-cert.pem", pem("ca", orgSeed));
+        msp.putObject("keystore").put("priv_sk", pem("key", seed));
+        msp.putObject("signcerts").put(id + "-cert.pem", pem("cert", seed));
+        msp.putObject("tlscacerts").put("tlsca." + org + "-cert.pem", pem("tlsca", orgSeed));
+        msp.put("config.yaml", pem("config", orgSeed));
+
+        final ObjectNode tls = descriptor.putObject("tls");
+        tls.put("ca.crt", pem("tlsca", orgSeed));
+        tls.put("server.crt", pem("server", seed));
+        tls.put("server.key", pem("server.key", seed));
+
+        return descriptor;
+    }
+
+    /**
+     * About the size of a cryptogen PEM file.
+     */
+    private static byte[] pem(final String kind, final int seed)
+    {
+        final StringBuilder pem = new StringBuilder("-----BEGIN CERTIFICATE-----\n");
+        for (int line = 0; line < 12; line++)
+        {
+            pem.append(String.format("%08x", kind.hashCode() * 31 + seed * 17 + line).repeat(8)).append('\n');
+        }
+        pem.append("-----END CERTIFICATE-----\n");
+
+        return pem.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void delete(final Path path) throws IOException
+    {
+        try (final Stream<Path> paths = Files.walk(path))
+        {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+            {
+                Files.delete(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.msp.unfurler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * An unfurled MSP folder, with a manifest of the SHA-256 of every file written into it.
+ *
+ * The manifest ([id]/.manifest) is in `sha256sum` format.  When a descriptor is unfurled over an existing folder
+ * (a pod restart with a persistent volume, or a certificate rotation,) files whose content matches the manifest
+ * are skipped.  Changed files are written to a temp file and renamed into place, so a crash never leaves a partial
+ * file behind.  Files that were in the previous manifest but not in the descriptor are removed.  The manifest
+ * itself is replaced last, so an interrupted unfurl is simply redone on the next run.
+ */
+@Slf4j
+class MSPFolder
+{
+    static final String MANIFEST = ".manifest";
+
+    private final Path root;
+
+    /**
+     * relative path -> sha256 from the last completed unfurl.
+     */
+    private final Map<String, String> previous;
+
+    private final Map<String, String> current = new TreeMap<>();
+
+    private int written;
+    private int skipped;
+
+    private MSPFolder(final Path root, final Map<String, String> previous)
+    {
+        this.root = root;
+        this.previous = previous;
+    }
+
+    static MSPFolder open(final Path dir) throws IOException
+    {
+        final Path root = dir.toAbsolutePath().normalize();
+        final Map<String, String> previous = new HashMap<>();
+
+        final Path manifest = root.resolve(MANIFEST);
+        if (Files.isRegularFile(manifest))
+        {
+            try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8))
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    final int sep = line.indexOf("  ");
+                    if (sep > 0)
+                    {
+                        previous.put(line.substring(sep + 2), line.substring(0, sep));
+                    }
+                }
+            }
+        }
+
+        Files.createDirectories(root);
+
+        return new MSPFolder(root, previous);
+    }
+
+    void mkdir(final String path) throws IOException
+    {
+        Files.createDirectories(resolve(path));
+    }
+
+    void write(final String path, final byte[] content) throws IOException
+    {
+        final String sha256 = sha256(content);
+        if (unchanged(path, sha256))
+        {
+            return;
+        }
+
+        final Path target = resolve(path);
+        final Path temp = createTempFile(target);
+        try
+        {
+            Files.write(temp, content);
+            replace(temp, target);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+
+        log.info("    {}", target);
+        current.put(path, sha256);
+        written++;
+    }
+
+    /**
+     * Copy a file whose SHA-256 is already known (e.g. a blob named by its digest.)
+     */
+    void copy(final String path, final Path source, final String sha256) throws IOException
+    {
+        if (unchanged(path, sha256))
+        {
+            return;
+        }
+
+        final Path target = resolve(path);
+        final Path temp = createTempFile(target);
+        try
+        {
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            replace(temp, target);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+
+        log.info("    {} <-- {}", target, source.getFileName());
+        current.put(path, sha256);
+        written++;
+    }
+
+    /**
+     * Stream content to a temp file, hashing as it goes, and keep it only if it differs from the manifest.
+     */
+    void write(final String path, final InputStream in) throws IOException
+    {
+        final Path target = resolve(path);
+        final Path temp = createTempFile(target);
+        try
+        {
+            final MessageDigest digest = newDigest();
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(temp), digest))
+            {
+                in.transferTo(out);
+            }
+
+            final String sha256 = hex(digest.digest());
+            if (unchanged(path, sha256))
+            {
+                return;
+            }
+
+            replace(temp, target);
+
+            log.info("    {}", target);
+            current.put(path, sha256);
+            written++;
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Remove files dropped from the descriptor and replace the manifest.
+     */
+    void commit() throws IOException
+    {
+        int removed = 0;
+        for (String path : previous.keySet())
+        {
+            if (! current.containsKey(path) && Files.deleteIfExists(resolve(path)))
+            {
+                removed++;
+            }
+        }
+
+        final StringBuilder manifest = new StringBuilder();
+        for (Map.Entry<String, String> e : current.entrySet())
+        {
+            manifest.append(e.getValue()).append("  ").append(e.getKey()).append('\n');
+        }
+
+        final Path target = root.resolve(MANIFEST);
+        final Path temp = createTempFile(target);
+        try
+        {
+            Files.write(temp, manifest.toString().getBytes(StandardCharsets.UTF_8));
+            replace(temp, target);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+
+        log.info("{}: {} written, {} unchanged, {} removed", root, written, skipped, removed);
+    }
+
+    private boolean unchanged(final String path, final String sha256)
+    {
+        if (current.containsKey(path))
+        {
+            throw new RuntimeException("duplicate entry " + path + " in " + root);
+        }
+
+        if (sha256.equals(previous.get(path)) && Files.isRegularFile(resolve(path)))
+        {
+            current.put(path, sha256);
+            skipped++;
+            return true;
+        }
+
+        return false;
+    }
+
+    private Path resolve(final String path)
+    {
+        final Path resolved = root.resolve(path).normalize();
+        if (! resolved.startsWith(root) || resolved.equals(root))
+        {
+            throw new RuntimeException("path " + path + " is outside of " + root);
+        }
+
+        return resolved;
+    }
+
+    private static Path createTempFile(final Path target) throws IOException
+    {
+        Files.createDirectories(target.getParent());
+        return Files.createTempFile(target.getParent(), ".unfurl-", ".tmp");
+    }
+
+    private static void replace(final Path temp, final Path target) throws IOException
+    {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static String sha256(final byte[] content)
+    {
+        return hex(newDigest().digest(content));
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private static String hex(final byte[] bytes)
+    {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+        {
+            sb.append(String.format("%02x", b));
+        }
+
+        return sb.toString();
+    }
+}
@@ -5,29 +5,37 @@
  */
 package org.hyperledger.fabric.fabctl.msp.unfurler;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.nio.charset.Charset;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.filefilter.WildcardFileFilter;
 
 /**
  * This is an incredibly rough prototype routine that will unfurl
  * fabric MSP descriptors into MSP Folder structures on disk.  The intent
  * is that this entrypoint be set up as an init container on pods running
  * fabric binaries.
+ *
+ * Descriptors are unfurled concurrently, on a pool of UNFURL_PARALLELISM threads.
+ *
+ * With UNFURL_WATCH=true the unfurler runs as a sidecar instead, re-unfurling descriptors as the kubelet updates
+ * the mounted config maps (see Watcher.)
  */
 @Slf4j
 public class Main
 {
-    private static final YAMLMapper yamlMapper = new YAMLMapper();
+    private static final String DEFAULT_BLOB_FOLDER = "/var/hyperledger/fabric/msp-blobs";
+
+    /**
+     * Pods carry a handful of MSP contexts - there's no sense in more threads than that.
+     */
+    static final int DEFAULT_PARALLELISM = Math.min(4, Runtime.getRuntime().availableProcessors());
 
     /**
      * Really, really, really simple.  Just enough to see if this scheme will work.
@@ -36,12 +44,15 @@ public class Main
     {
         final String inputFolder = System.getenv("INPUT_FOLDER");
         final String outputFolder = System.getenv("OUTPUT_FOLDER");
+        final String blobFolder = System.getenv().getOrDefault("BLOB_FOLDER", DEFAULT_BLOB_FOLDER);
+        final int parallelism = Integer.parseInt(System.getenv().getOrDefault("UNFURL_PARALLELISM",
+                                                                              String.valueOf(DEFAULT_PARALLELISM)));
+        final boolean watch = Boolean.parseBoolean(System.getenv("UNFURL_WATCH"));
 
         log.info("Scanning {} for msp descriptors", inputFolder);
         log.info("Writing output MSP structures to {}", outputFolder);
 
         final File inputDir = new File(inputFolder);
-        final File outputDir = new File(outputFolder);
 
         if (! inputDir.exists())
         {
@@ -49,77 +60,82 @@ public class Main
             System.exit(1);
         }
 
-        // not realistic - just process any file ending in .yaml
-        final FileFilter fileFilter = new WildcardFileFilter("msp-*.yaml");
+        // not realistic - just process any msp-* file ending in .yaml or .tar.gz
+        final FileFilter fileFilter = file ->
+                file.getName().startsWith("msp-")
+                && (file.getName().endsWith(".yaml") || file.getName().endsWith(Unfurler.BUNDLE_SUFFIX));
+
+        final Unfurler unfurler = new Unfurler(new File(outputFolder), new File(blobFolder));
 
-        for (File descriptor : inputDir.listFiles(fileFilter))
+        if (watch)
         {
             try
             {
-                unfurl(outputDir, descriptor);
+                new Watcher(unfurler, inputDir, fileFilter).watch();
             }
             catch (Exception ex)
             {
-                log.error("Could not unfurl " + descriptor, ex);
+                log.error("Could not watch " + inputDir, ex);
                 System.exit(1);
             }
         }
 
-        System.exit(0);
+        System.exit(unfurlAll(unfurler, inputDir.listFiles(fileFilter), parallelism) ? 0 : 1);
     }
 
-    private static void unfurl(final File outputDir, final File descriptor)
-            throws IOException
+    /**
+     * Unfurl each descriptor on a bounded pool, returning true if all of them succeeded.
+     */
+    static boolean unfurlAll(final Unfurler unfurler, final File[] descriptors, final int parallelism)
     {
-        final JsonNode node = yamlMapper.readTree(descriptor);
-        // log.debug(yamlMapper.writeValueAsString(node));  // yaml contains secret spec - do not emit to stdout.
-
-        final File mspDir = new File(outputDir, node.get("id").asText());
-        log.info("Unfurling {} --> {}", descriptor, mspDir);
-
-        if (mspDir.exists())
-        {
-            throw new RuntimeException("msp folder " + mspDir + " exists and will not be overwritten.");
-        }
-
-        unfurl(new File(mspDir, "msp"), node.get("msp"));
-        unfurl(new File(mspDir, "tls"), node.get("tls"));
-    }
+        final long start = System.currentTimeMillis();
 
-    private static void unfurl(final File f, final JsonNode node) throws IOException
-    {
-        // no node?  no unfurling!
-        if (node == null || node.isNull())
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable ->
         {
-            return;
-        }
+            final Thread thread = new Thread(runnable, "unfurl-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
 
-        if (node.isTextual())
+        try
         {
-            log.info("    {}", f);
-
-            try (final FileOutputStream fos = new FileOutputStream(f))
+            final Map<File, Future<?>> futures = new LinkedHashMap<>();
+            for (File descriptor : descriptors)
             {
-                IOUtils.write(node.textValue(), fos, Charset.defaultCharset());
+                futures.put(descriptor, executor.submit(() ->
+                {
+                    unfurler.unfurl(descriptor);
+                    return null;
+                }));
             }
-        }
-        else if (node instanceof ObjectNode)
-        {
-            f.mkdirs();
 
-            final ObjectNode on = (ObjectNode) node;
-            final Iterator<String> i = on.fieldNames();
-            while (i.hasNext())
+            boolean ok = true;
+            for (Map.Entry<File, Future<?>> e : futures.entrySet())
             {
-                final String field = i.next();
-                final JsonNode child = on.get(field);
-
-                unfurl(new File(f, field), child);
+                try
+                {
+                    e.getValue().get();
+                }
+                catch (ExecutionException ex)
+                {
+                    log.error("Could not unfurl " + e.getKey(), ex.getCause());
+                    ok = false;
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
             }
+
+            log.info("Unfurled {} descriptors in {} ms", descriptors.length, System.currentTimeMillis() - start);
+
+            return ok;
         }
-        else
+        finally
         {
-            throw new RuntimeException("can not unfurl node " + node);
+            executor.shutdownNow();
         }
     }
 }
@@ -0,0 +1,333 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.msp.unfurler;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+
+/**
+ * Unfurl a single MSP descriptor (yaml) or bundle (tar.gz) into an MSP folder structure under the output folder.
+ *
+ * Yaml descriptors are parsed with a streaming JsonParser:  each file is written as soon as its scalar is read,
+ * without building a tree for the whole descriptor.  This relies on the descriptor's id (and refs) preceding the
+ * msp and tls trees, as MSPDescriptor in fabctl-sandbox renders them.  A tree that appears before the id is read
+ * into memory and unfurled at the end.  A refs field after a tree that has already been written is rejected:  the
+ * tree's scalars were written as file contents rather than as blob digests.
+ *
+ * Unfurling over an existing folder only rewrites the files that changed (see MSPFolder.)
+ *
+ * An Unfurler is stateless and may be shared across threads.
+ */
+@Slf4j
+class Unfurler
+{
+    /**
+     * Descriptors marked with refs: sha256 carry blob digests in place of file contents.
+     */
+    static final String REFS_SHA256 = "sha256";
+
+    /**
+     * An MSP bundle is a tar.gz of [id]/msp/... and [id]/tls/... (see MSPBundle in fabctl-sandbox.)
+     */
+    static final String BUNDLE_SUFFIX = ".tar.gz";
+
+    /**
+     * The mapper is costly to build and is not needed to extract a bundle:  load it on first use.
+     */
+    private static class YAML
+    {
+        private static final YAMLMapper mapper = new YAMLMapper();
+    }
+
+    private final File outputDir;
+    private final File blobDir;
+
+    Unfurler(final File outputDir, final File blobDir)
+    {
+        this.outputDir = outputDir;
+        this.blobDir = blobDir;
+    }
+
+    void unfurl(final File descriptor) throws IOException
+    {
+        if (descriptor.getName().endsWith(BUNDLE_SUFFIX))
+        {
+            extract(descriptor);
+        }
+        else
+        {
+            stream(descriptor);
+        }
+    }
+
+    /**
+     * Stream a yaml descriptor to disk, one file at a time.
+     */
+    private void stream(final File descriptor) throws IOException
+    {
+        try (final JsonParser parser = YAML.mapper.getFactory().createParser(descriptor))
+        {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+            {
+                throw new RuntimeException("msp descriptor " + descriptor + " is not an object.");
+            }
+
+            String id = null;
+            boolean refs = false;
+            MSPFolder folder = null;
+
+            final Map<String, JsonNode> deferred = new LinkedHashMap<>();
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME)
+            {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+
+                if ("id".equals(field))
+                {
+                    id = parser.getText();
+                }
+                else if ("refs".equals(field))
+                {
+                    if (folder != null)
+                    {
+                        throw new RuntimeException("msp descriptor " + descriptor
+                                                   + " has refs after an msp / tls tree.");
+                    }
+
+                    refs = REFS_SHA256.equals(parser.getText());
+                }
+                else if (("msp".equals(field) || "tls".equals(field)) && id == null)
+                {
+                    deferred.put(field, parser.readValueAsTree());
+                }
+                else if ("msp".equals(field) || "tls".equals(field))
+                {
+                    if (folder == null)
+                    {
+                        folder = openFolder(descriptor, id);
+                    }
+
+                    stream(folder, field, parser, refs);
+                }
+                else
+                {
+                    parser.skipChildren();
+                }
+            }
+
+            if (id == null)
+            {
+                throw new RuntimeException("msp descriptor " + descriptor + " has no id.");
+            }
+
+            if (folder == null)
+            {
+                folder = openFolder(descriptor, id);
+            }
+
+            for (Map.Entry<String, JsonNode> e : deferred.entrySet())
+            {
+                unfurl(folder, e.getKey(), e.getValue(), refs);
+            }
+
+            folder.commit();
+        }
+    }
+
+    private MSPFolder openFolder(final File descriptor, final String id) throws IOException
+    {
+        final File mspDir = new File(outputDir, id);
+        log.info("Unfurling {} --> {}", descriptor, mspDir);
+
+        return MSPFolder.open(mspDir.toPath());
+    }
+
+    /**
+     * Write the value at the parser's current token to path, recursing into objects.
+     */
+    private void stream(final MSPFolder folder, final String path, final JsonParser parser, final boolean refs)
+            throws IOException
+    {
+        switch (parser.currentToken())
+        {
+            case VALUE_NULL:
+                // no node?  no unfurling!
+                return;
+
+            case START_OBJECT:
+                folder.mkdir(path);
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME)
+                {
+                    final String field = parser.getCurrentName();
+                    parser.nextToken();
+
+                    stream(folder, path + "/" + field, parser, refs);
+                }
+                return;
+
+            case VALUE_EMBEDDED_OBJECT:
+                // Raw bytes (!!binary in the descriptor) go straight to disk, without any charset conversion.
+                folder.write(path, parser.getBinaryValue());
+                return;
+
+            case VALUE_STRING:
+                if (refs)
+                {
+                    copyBlob(folder, path, parser.getText());
+                }
+                else
+                {
+                    folder.write(path, parser.getText().getBytes(StandardCharsets.UTF_8));
+                }
+                return;
+
+            default:
+                throw new RuntimeException("can not unfurl " + parser.currentToken() + " at " + path);
+        }
+    }
+
+    /**
+     * Unfurl a tree read into memory.
+     */
+    private void unfurl(final MSPFolder folder, final String path, final JsonNode node, final boolean refs)
+            throws IOException
+    {
+        // no node?  no unfurling!
+        if (node == null || node.isNull())
+        {
+            return;
+        }
+
+        if (node.isTextual() && refs)
+        {
+            copyBlob(folder, path, node.textValue());
+        }
+        else if (node.isBinary())
+        {
+            folder.write(path, node.binaryValue());
+        }
+        else if (node.isTextual())
+        {
+            folder.write(path, node.textValue().getBytes(StandardCharsets.UTF_8));
+        }
+        else if (node instanceof ObjectNode)
+        {
+            folder.mkdir(path);
+
+            final ObjectNode on = (ObjectNode) node;
+            final Iterator<String> i = on.fieldNames();
+            while (i.hasNext())
+            {
+                final String field = i.next();
+                final JsonNode child = on.get(field);
+
+                unfurl(folder, path + "/" + field, child, refs);
+            }
+        }
+        else
+        {
+            throw new RuntimeException("can not unfurl node " + node);
+        }
+    }
+
+    /**
+     * Referenced files are copied from the blob folder (see MSPBlobStore in fabctl-sandbox.)  The blob is named by
+     * the SHA-256 of its content, so there is no need to hash it again.
+     */
+    private void copyBlob(final MSPFolder folder, final String path, final String digest) throws IOException
+    {
+        final File blob = new File(blobDir, digest);
+        if (! blob.isFile())
+        {
+            throw new RuntimeException("msp blob " + blob + " is not mounted.");
+        }
+
+        folder.copy(path, blob.toPath(), digest);
+    }
+
+    /**
+     * Stream an MSP bundle to disk, one entry at a time.
+     */
+    private void extract(final File bundle) throws IOException
+    {
+        final Path root = outputDir.toPath().toAbsolutePath().normalize();
+
+        log.info("Extracting {} --> {}", bundle, outputDir);
+
+        try (final TarArchiveInputStream tis =
+                     new TarArchiveInputStream(
+                             new GzipCompressorInputStream(
+                                     new BufferedInputStream(
+                                             new FileInputStream(bundle)))))
+        {
+            String id = null;
+            MSPFolder folder = null;
+
+            TarArchiveEntry entry;
+            while ((entry = tis.getNextTarEntry()) != null)
+            {
+                final Path path = root.resolve(entry.getName()).normalize();
+                if (! path.startsWith(root) || path.equals(root))
+                {
+                    throw new RuntimeException("bundle entry " + entry.getName() + " is outside of " + outputDir);
+                }
+
+                //
+                // Each bundle holds a single identity folder.
+                //
+                final Path relative = root.relativize(path);
+                if (id == null)
+                {
+                    id = relative.getName(0).toString();
+                    folder = MSPFolder.open(root.resolve(id));
+                }
+                else if (! id.equals(relative.getName(0).toString()))
+                {
+                    throw new RuntimeException("bundle " + bundle + " holds more than one identity.");
+                }
+
+                if (relative.getNameCount() == 1)
+                {
+                    continue;
+                }
+
+                final String entryPath = relative.subpath(1, relative.getNameCount()).toString();
+
+                if (entry.isDirectory())
+                {
+                    folder.mkdir(entryPath);
+                }
+                else
+                {
+                    folder.write(entryPath, tis);
+                }
+            }
+
+            if (folder != null)
+            {
+                folder.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.msp.unfurler;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watch the input folder and re-unfurl descriptors as they change, so that a rotated certificate lands in the
+ * MSP folder without restarting the pod.
+ *
+ * The kubelet does not rewrite a config map volume in place:  it writes a new timestamped folder and swaps the
+ * ..data symlink over to it.  The events we see are for ..data and the timestamped folders, not the descriptors,
+ * so any event triggers a rescan.  Each descriptor is fingerprinted by the SHA-256 of its content, and only the
+ * descriptors that actually changed are unfurled again.  MSPFolder then only replaces the files that changed,
+ * each with an atomic rename.
+ */
+@Slf4j
+class Watcher
+{
+    /**
+     * The kubelet's update arrives as a burst of events.  Let it settle before rescanning.
+     */
+    private static final long SETTLE_MILLIS = 500;
+
+    private final Unfurler unfurler;
+    private final File inputDir;
+    private final FileFilter fileFilter;
+
+    /**
+     * descriptor -> sha256 of the content last unfurled.
+     */
+    private final Map<File, String> fingerprints = new HashMap<>();
+
+    Watcher(final Unfurler unfurler, final File inputDir, final FileFilter fileFilter)
+    {
+        this.unfurler = unfurler;
+        this.inputDir = inputDir;
+        this.fileFilter = fileFilter;
+    }
+
+    /**
+     * Watch until interrupted.
+     *
+     * The first scan unfurls every descriptor.  Following an init container, this only reads the descriptors:
+     * the MSP folders are already up to date with their manifests.
+     */
+    void watch() throws IOException, InterruptedException
+    {
+        try (final WatchService watchService = FileSystems.getDefault().newWatchService())
+        {
+            //
+            // Register before the first scan, so that a change made during the scan is not missed.
+            //
+            inputDir.toPath().register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+
+            rescan();
+
+            log.info("Watching {} for changes to {} msp descriptors", inputDir, fingerprints.size());
+
+            while (true)
+            {
+                WatchKey key = watchService.take();
+
+                //
+                // Drain the burst, including any events that arrive while we wait for it to settle.
+                //
+                do
+                {
+                    key.pollEvents();
+                    if (! key.reset())
+                    {
+                        throw new IOException("input folder " + inputDir + " is no longer accessible.");
+                    }
+                }
+                while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+                rescan();
+            }
+        }
+    }
+
+    /**
+     * Unfurl the descriptors that were added or changed since the last scan.  A descriptor that fails to unfurl
+     * is retried on the next change.
+     */
+    private void rescan()
+    {
+        final long start = System.currentTimeMillis();
+        final Set<File> current = new HashSet<>();
+
+        int unfurled = 0;
+        for (File descriptor : descriptors())
+        {
+            current.add(descriptor);
+
+            try
+            {
+                final String fingerprint = fingerprint(descriptor);
+                if (fingerprint.equals(fingerprints.get(descriptor)))
+                {
+                    continue;
+                }
+
+                unfurler.unfurl(descriptor);
+
+                fingerprints.put(descriptor, fingerprint);
+                unfurled++;
+            }
+            catch (Exception ex)
+            {
+                log.error("Could not unfurl " + descriptor, ex);
+            }
+        }
+
+        //
+        // A descriptor that has been removed from the volume leaves its MSP folder alone:  the fabric node may
+        // still be reading from it.
+        //
+        fingerprints.keySet().retainAll(current);
+
+        if (unfurled > 0)
+        {
+            log.info("Re-unfurled {} descriptors in {} ms", unfurled, System.currentTimeMillis() - start);
+        }
+    }
+
+    private File[] descriptors()
+    {
+        final File[] descriptors = inputDir.listFiles(fileFilter);
+        return descriptors == null ? new File[0] : descriptors;
+    }
+
+    private static String fingerprint(final File descriptor) throws IOException
+    {
+        return MSPFolder.sha256(Files.readAllBytes(descriptor.toPath()));
+    }
+}
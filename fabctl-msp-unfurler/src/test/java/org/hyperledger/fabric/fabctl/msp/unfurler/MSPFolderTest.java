@@ -0,0 +1,135 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.msp.unfurler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unfurl over an existing folder, checking which files are rewritten against the manifest.
+ */
+public class MSPFolderTest
+{
+    /**
+     * Files rewritten by an unfurl get a new modification time.  Those left alone keep this one.
+     */
+    private static final FileTime LONG_AGO = FileTime.fromMillis(0);
+
+    @TempDir
+    Path root;
+
+    @Test
+    public void testWriteManifest() throws IOException
+    {
+        final MSPFolder folder = MSPFolder.open(root);
+        folder.write("msp/signcerts/cert.pem", bytes("cert"));
+        folder.write("tls/server.key", new ByteArrayInputStream(bytes("key")));
+        folder.commit();
+
+        assertEquals("cert", read("msp/signcerts/cert.pem"));
+        assertEquals("key", read("tls/server.key"));
+        assertEquals(List.of(MSPFolder.sha256(bytes("cert")) + "  msp/signcerts/cert.pem",
+                             MSPFolder.sha256(bytes("key")) + "  tls/server.key"),
+                     Files.readAllLines(root.resolve(MSPFolder.MANIFEST)));
+    }
+
+    @Test
+    public void testSkipUnchangedFiles() throws IOException
+    {
+        unfurl("cert", "key");
+        touch("msp/signcerts/cert.pem", "tls/server.key");
+
+        //
+        // Only the rotated key is written.
+        //
+        unfurl("cert", "new key");
+
+        assertEquals(LONG_AGO, Files.getLastModifiedTime(root.resolve("msp/signcerts/cert.pem")));
+        assertNotEquals(LONG_AGO, Files.getLastModifiedTime(root.resolve("tls/server.key")));
+        assertEquals("new key", read("tls/server.key"));
+    }
+
+    /**
+     * A file listed in the manifest but missing from disk is written again.
+     */
+    @Test
+    public void testRewriteMissingFiles() throws IOException
+    {
+        unfurl("cert", "key");
+        Files.delete(root.resolve("tls/server.key"));
+
+        unfurl("cert", "key");
+
+        assertEquals("key", read("tls/server.key"));
+    }
+
+    @Test
+    public void testRemoveDroppedFiles() throws IOException
+    {
+        unfurl("cert", "key");
+
+        final MSPFolder folder = MSPFolder.open(root);
+        folder.write("msp/signcerts/cert.pem", bytes("cert"));
+        folder.commit();
+
+        assertFalse(Files.exists(root.resolve("tls/server.key")));
+        assertEquals(1, Files.readAllLines(root.resolve(MSPFolder.MANIFEST)).size());
+    }
+
+    @Test
+    public void testDuplicateEntry() throws IOException
+    {
+        final MSPFolder folder = MSPFolder.open(root);
+        folder.write("tls/server.key", bytes("key"));
+
+        assertThrows(RuntimeException.class, () -> folder.write("tls/server.key", bytes("key")));
+    }
+
+    @Test
+    public void testPathOutsideFolder() throws IOException
+    {
+        final MSPFolder folder = MSPFolder.open(root.resolve("peer1"));
+
+        assertThrows(RuntimeException.class, () -> folder.write("../peer2/tls/server.key", bytes("key")));
+        assertThrows(RuntimeException.class, () -> folder.mkdir(".."));
+        assertFalse(Files.exists(root.resolve("peer2")));
+    }
+
+    private void unfurl(final String cert, final String key) throws IOException
+    {
+        final MSPFolder folder = MSPFolder.open(root);
+        folder.write("msp/signcerts/cert.pem", bytes(cert));
+        folder.write("tls/server.key", new ByteArrayInputStream(bytes(key)));
+        folder.commit();
+    }
+
+    private void touch(final String... paths) throws IOException
+    {
+        for (String path : paths)
+        {
+            Files.setLastModifiedTime(root.resolve(path), LONG_AGO);
+        }
+    }
+
+    private String read(final String path) throws IOException
+    {
+        return Files.readString(root.resolve(path), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(final String s)
+    {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
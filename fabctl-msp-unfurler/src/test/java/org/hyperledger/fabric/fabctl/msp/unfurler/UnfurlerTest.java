@@ -0,0 +1,244 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.msp.unfurler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unfurl yaml descriptors and tar.gz bundles into a temp folder.
+ */
+public class UnfurlerTest
+{
+    private static final String CERT = "-----BEGIN CERTIFICATE-----\nMIIB\n-----END CERTIFICATE-----\n";
+
+    private static final String DIGEST = MSPFolder.sha256(CERT.getBytes(StandardCharsets.UTF_8));
+
+    @TempDir
+    Path workDir;
+
+    private Path inputDir;
+
+    private Path outputDir;
+
+    private Unfurler unfurler;
+
+    @BeforeEach
+    public void createUnfurler() throws IOException
+    {
+        inputDir = Files.createDirectories(workDir.resolve("input"));
+        outputDir = workDir.resolve("output");
+
+        final Path blobDir = Files.createDirectories(workDir.resolve("blobs"));
+        Files.write(blobDir.resolve(DIGEST), CERT.getBytes(StandardCharsets.UTF_8));
+
+        unfurler = new Unfurler(outputDir.toFile(), blobDir.toFile());
+    }
+
+    @Test
+    public void testUnfurlInline() throws IOException
+    {
+        unfurler.unfurl(writeDescriptor("msp-peer1.yaml",
+                                        "id: peer1",
+                                        "msp:",
+                                        "  signcerts:",
+                                        "    cert.pem: |",
+                                        "      " + CERT.replace("\n", "\n      ").trim(),
+                                        "tls:",
+                                        "  server.key: secret"));
+
+        assertEquals(CERT, read("peer1/msp/signcerts/cert.pem"));
+        assertEquals("secret", read("peer1/tls/server.key"));
+        assertTrue(Files.isRegularFile(outputDir.resolve("peer1/" + MSPFolder.MANIFEST)));
+    }
+
+    @Test
+    public void testUnfurlRefs() throws IOException
+    {
+        unfurler.unfurl(writeDescriptor("msp-peer1.yaml",
+                                        "id: peer1",
+                                        "refs: sha256",
+                                        "msp:",
+                                        "  signcerts:",
+                                        "    cert.pem: " + DIGEST));
+
+        assertEquals(CERT, read("peer1/msp/signcerts/cert.pem"));
+    }
+
+    /**
+     * A tree ahead of the id (and refs) is read into memory, and unfurled with the refs that follow it.
+     */
+    @Test
+    public void testUnfurlTreeBeforeRefs() throws IOException
+    {
+        unfurler.unfurl(writeDescriptor("msp-peer1.yaml",
+                                        "msp:",
+                                        "  signcerts:",
+                                        "    cert.pem: " + DIGEST,
+                                        "id: peer1",
+                                        "refs: sha256"));
+
+        assertEquals(CERT, read("peer1/msp/signcerts/cert.pem"));
+    }
+
+    /**
+     * Once the id is known, trees are streamed:  refs arriving after a tree can not be honoured.
+     */
+    @Test
+    public void testRefsAfterStreamedTree() throws IOException
+    {
+        final File descriptor = writeDescriptor("msp-peer1.yaml",
+                                                "id: peer1",
+                                                "msp:",
+                                                "  signcerts:",
+                                                "    cert.pem: " + DIGEST,
+                                                "refs: sha256");
+
+        final RuntimeException ex = assertThrows(RuntimeException.class, () -> unfurler.unfurl(descriptor));
+        assertTrue(ex.getMessage().contains("refs after"));
+
+        assertFalse(Main.unfurlAll(unfurler, new File[] { descriptor }, 1));
+    }
+
+    /**
+     * A !!binary scalar is streamed straight to disk as the decoded bytes, which need not be valid in any charset.
+     */
+    @Test
+    public void testUnfurlBinary() throws IOException
+    {
+        final byte[] key = { 0x00, (byte) 0xff, (byte) 0xfe, (byte) 0x80, 0x0a };
+
+        unfurler.unfurl(writeDescriptor("msp-peer1.yaml",
+                                        "id: peer1",
+                                        "tls:",
+                                        "  server.key: !!binary " + Base64.getEncoder().encodeToString(key)));
+
+        assertArrayEquals(key, Files.readAllBytes(outputDir.resolve("peer1/tls/server.key")));
+    }
+
+    @Test
+    public void testMissingBlob() throws IOException
+    {
+        final File descriptor = writeDescriptor("msp-peer1.yaml",
+                                                "id: peer1",
+                                                "refs: sha256",
+                                                "msp:",
+                                                "  signcerts:",
+                                                "    cert.pem: " + MSPFolder.sha256(new byte[0]));
+
+        assertThrows(RuntimeException.class, () -> unfurler.unfurl(descriptor));
+    }
+
+    @Test
+    public void testExtractBundle() throws IOException
+    {
+        unfurler.unfurl(writeBundle("msp-peer1.tar.gz",
+                                    "peer1/",
+                                    "peer1/msp/",
+                                    "peer1/msp/signcerts/cert.pem",
+                                    "peer1/tls/server.key"));
+
+        assertEquals("peer1/msp/signcerts/cert.pem", read("peer1/msp/signcerts/cert.pem"));
+        assertEquals("peer1/tls/server.key", read("peer1/tls/server.key"));
+    }
+
+    /**
+     * MSPBundle writes names over 100 characters (e.g. a cryptogen signcert of a long host name) as POSIX (pax)
+     * headers.
+     */
+    @Test
+    public void testExtractLongPaths() throws IOException
+    {
+        final String signcert = "peer1/msp/signcerts/" + "peer1.".repeat(20) + "example.com-cert.pem";
+
+        unfurler.unfurl(writeBundle("msp-peer1.tar.gz", signcert));
+
+        assertEquals(signcert, read(signcert));
+    }
+
+    /**
+     * Entries may not escape the output folder.
+     */
+    @Test
+    public void testBundleTraversal() throws IOException
+    {
+        final File bundle = writeBundle("msp-evil.tar.gz", "peer1/msp/../../../evil.pem");
+
+        final RuntimeException ex = assertThrows(RuntimeException.class, () -> unfurler.unfurl(bundle));
+        assertTrue(ex.getMessage().contains("outside of"));
+
+        assertFalse(Files.exists(workDir.resolve("evil.pem")));
+    }
+
+    @Test
+    public void testBundleWithTwoIdentities() throws IOException
+    {
+        final File bundle = writeBundle("msp-two.tar.gz", "peer1/tls/server.key", "peer2/tls/server.key");
+
+        assertThrows(RuntimeException.class, () -> unfurler.unfurl(bundle));
+    }
+
+    private String read(final String path) throws IOException
+    {
+        return Files.readString(outputDir.resolve(path), StandardCharsets.UTF_8);
+    }
+
+    private File writeDescriptor(final String name, final String... lines) throws IOException
+    {
+        final Path descriptor = inputDir.resolve(name);
+        Files.write(descriptor, String.join("\n", lines).concat("\n").getBytes(StandardCharsets.UTF_8));
+
+        return descriptor.toFile();
+    }
+
+    /**
+     * A bundle of the given entries, with long names written as MSPBundle (fabctl-sandbox) writes them.  Names ending
+     * in / are folders, and each file holds its own name.
+     */
+    private File writeBundle(final String name, final String... entries) throws IOException
+    {
+        final Path bundle = inputDir.resolve(name);
+
+        try (final OutputStream out = Files.newOutputStream(bundle);
+             final TarArchiveOutputStream tos = new TarArchiveOutputStream(new GzipCompressorOutputStream(out)))
+        {
+            tos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+
+            for (String entry : entries)
+            {
+                final TarArchiveEntry tarEntry = new TarArchiveEntry(entry);
+                final byte[] content = entry.getBytes(StandardCharsets.UTF_8);
+
+                if (! entry.endsWith("/"))
+                {
+                    tarEntry.setSize(content.length);
+                }
+
+                tos.putArchiveEntry(tarEntry);
+                if (! entry.endsWith("/"))
+                {
+                    tos.write(content);
+                }
+                tos.closeArchiveEntry();
+            }
+        }
+
+        return bundle.toFile();
+    }
+}
@@ -0,0 +1,151 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.msp.unfurler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Run the watcher over a folder laid out as the kubelet writes a config map volume:
+ *
+ * <pre>
+ *   ..2026_10_16_00_00_00.000000001/msp-peer1.yaml
+ *   ..data -> ..2026_10_16_00_00_00.000000001
+ *   msp-peer1.yaml -> ..data/msp-peer1.yaml
+ * </pre>
+ *
+ * An update writes a new timestamped folder and swaps ..data over to it with a rename.
+ */
+public class WatcherTest
+{
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    @TempDir
+    Path workDir;
+
+    private Path inputDir;
+
+    private Path outputDir;
+
+    private Thread watcher;
+
+    private int generation;
+
+    @BeforeEach
+    public void startWatcher() throws IOException
+    {
+        inputDir = Files.createDirectories(workDir.resolve("input"));
+        outputDir = workDir.resolve("output");
+
+        update("msp-peer1.yaml", "id: peer1", "tls:", "  server.crt: blue");
+        Files.createSymbolicLink(inputDir.resolve("msp-peer1.yaml"), Path.of("..data/msp-peer1.yaml"));
+
+        final Unfurler unfurler = new Unfurler(outputDir.toFile(), workDir.resolve("blobs").toFile());
+
+        watcher = new Thread(() ->
+        {
+            try
+            {
+                new Watcher(unfurler, inputDir.toFile(), file -> file.getName().startsWith("msp-")).watch();
+            }
+            catch (InterruptedException ex)
+            {
+                // stopped by the test
+            }
+            catch (IOException ex)
+            {
+                throw new RuntimeException(ex);
+            }
+        }, "msp-watch");
+
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @AfterEach
+    public void stopWatcher() throws InterruptedException
+    {
+        watcher.interrupt();
+        watcher.join(TIMEOUT_MILLIS);
+    }
+
+    @Test
+    public void testUnfurlOnStart() throws Exception
+    {
+        awaitContent("peer1/tls/server.crt", "blue");
+    }
+
+    @Test
+    public void testUnfurlOnUpdate() throws Exception
+    {
+        awaitContent("peer1/tls/server.crt", "blue");
+
+        update("msp-peer1.yaml", "id: peer1", "tls:", "  server.crt: green");
+
+        awaitContent("peer1/tls/server.crt", "green");
+    }
+
+    /**
+     * Only the rotated file is replaced:  the rest of the folder is left as it was.
+     */
+    @Test
+    public void testOnlyChangedFilesAreReplaced() throws Exception
+    {
+        update("msp-peer1.yaml", "id: peer1", "tls:", "  server.crt: blue", "  server.key: key");
+        awaitContent("peer1/tls/server.key", "key");
+
+        final Path key = outputDir.resolve("peer1/tls/server.key");
+        final Object inode = Files.readAttributes(key, "unix:ino").get("ino");
+
+        update("msp-peer1.yaml", "id: peer1", "tls:", "  server.crt: green", "  server.key: key");
+        awaitContent("peer1/tls/server.crt", "green");
+
+        assertEquals(inode, Files.readAttributes(key, "unix:ino").get("ino"));
+    }
+
+    /**
+     * Write a new generation of the volume, and swap ..data over to it as the kubelet does.
+     */
+    private void update(final String descriptor, final String... lines) throws IOException
+    {
+        final String timestamped = String.format("..2026_10_16_00_00_00.%09d", ++generation);
+
+        final Path dir = Files.createDirectories(inputDir.resolve(timestamped));
+        Files.write(dir.resolve(descriptor),
+                    String.join("\n", lines).concat("\n").getBytes(StandardCharsets.UTF_8));
+
+        final Path link = Files.createSymbolicLink(inputDir.resolve("..data_tmp"), Path.of(timestamped));
+        Files.move(link, inputDir.resolve("..data"), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void awaitContent(final String path, final String content) throws Exception
+    {
+        final Path file = outputDir.resolve(path);
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+        while (! (Files.isRegularFile(file) && content.equals(Files.readString(file, StandardCharsets.UTF_8))))
+        {
+            assertTrue(watcher.isAlive(), "watcher has stopped");
+
+            if (System.currentTimeMillis() > deadline)
+            {
+                fail(path + " was not unfurled with " + content + " within " + TIMEOUT_MILLIS + " ms");
+            }
+
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.msp;
+
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.hyperledger.fabric.fabctl.v1.SyntheticCryptoConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The MSP pipeline, from a crypto-config tree to config map payloads, for 10 - 10,000 synthetic identities:
+ *
+ * - load:  read each identity's msp/ and tls/ folders into a descriptor, one at a time and with the loader.
+ * - yaml:  render the descriptors as yaml, with inline files and interned (files by digest.)
+ * - config maps:  build the config maps for the yaml (+ blobs) and bundle forms, with the builders TestBase uses.
+ *
+ * The tree is laid out as cryptogen does, 100 peers to an org, with the CA certs shared across an org (see
+ * SyntheticCryptoConfig in src/test.)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MSPPipelineBenchmark
+{
+    private static final YAMLMapper yamlMapper = new YAMLMapper();
+
+    private static final int LOADER_PARALLELISM = 8;
+
+    @Param({ "10", "100", "1000", "10000" })
+    public int identities;
+
+    private Path cryptoConfig;
+
+    private Map<String, File> folders;
+
+    private List<MSPDescriptor> descriptors;
+
+    private MSPDescriptorLoader loader;
+
+    @Setup(Level.Trial)
+    public void generateCryptoConfig() throws IOException
+    {
+        cryptoConfig = Files.createTempDirectory("crypto-config-");
+        folders = SyntheticCryptoConfig.generate(cryptoConfig, identities);
+
+        loader = new MSPDescriptorLoader(LOADER_PARALLELISM);
+        descriptors = new ArrayList<>(loader.loadAll(folders).values());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCryptoConfig() throws IOException
+    {
+        loader.close();
+
+        try (final Stream<Path> paths = Files.walk(cryptoConfig))
+        {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+            {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public void loadDescriptors(final Blackhole blackhole) throws IOException
+    {
+        for (Map.Entry<String, File> e : folders.entrySet())
+        {
+            blackhole.consume(new MSPDescriptor(e.getKey(), e.getValue()));
+        }
+    }
+
+    @Benchmark
+    public Map<String, MSPDescriptor> loadDescriptorsParallel() throws IOException
+    {
+        return loader.loadAll(folders);
+    }
+
+    @Benchmark
+    public long writeYaml() throws IOException
+    {
+        long bytes = 0;
+        for (MSPDescriptor descriptor : descriptors)
+        {
+            bytes += yamlMapper.writeValueAsBytes(descriptor).length;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * The yaml form of a config map carries the interned descriptor.  A new store each time:  interning is part of
+     * the cost.
+     */
+    @Benchmark
+    public long writeInternedYaml() throws IOException
+    {
+        final MSPBlobStore blobStore = new MSPBlobStore();
+
+        long bytes = 0;
+        for (MSPDescriptor descriptor : descriptors)
+        {
+            bytes += yamlMapper.writeValueAsBytes(blobStore.intern(descriptor)).length;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * A config map for each interned descriptor, and one for each distinct blob they refer to.
+     */
+    @Benchmark
+    public void buildYamlConfigMaps(final Blackhole blackhole) throws IOException
+    {
+        final MSPBlobStore blobStore = new MSPBlobStore();
+
+        for (MSPDescriptor descriptor : descriptors)
+        {
+            final String name = descriptor.name + "-" + blobStore.digest(descriptor).substring(0, 10);
+            blackhole.consume(blobStore.buildDescriptorConfigMap(name, descriptor));
+        }
+
+        for (String digest : blobStore.digests(descriptors))
+        {
+            blackhole.consume(blobStore.buildConfigMap(digest));
+        }
+    }
+
+    @Benchmark
+    public void buildBundleConfigMaps(final Blackhole blackhole) throws IOException
+    {
+        for (MSPDescriptor descriptor : descriptors)
+        {
+            final ConfigMap configMap = MSPBundle.buildConfigMap(descriptor, MSPBundle.build(descriptor));
+            blackhole.consume(configMap);
+        }
+    }
+}
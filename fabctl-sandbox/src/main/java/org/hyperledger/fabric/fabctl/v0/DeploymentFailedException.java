@@ -0,0 +1,72 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v0;
+
+/**
+ * A deployment rollout was abandoned.  Where the root cause could be traced to a pod, the pod and container are
+ * carried along with the kubelet's reason (ImagePullBackOff, CrashLoopBackOff, ...) and message.
+ */
+public class DeploymentFailedException extends Exception
+{
+    public final String deploymentName;
+
+    /**
+     * The failing pod, or null if the failure was reported on the deployment itself.
+     */
+    public final String podName;
+
+    /**
+     * The failing container (main, msp-unfurl, ...), or null if the failure was not in a container.
+     */
+    public final String containerName;
+
+    public final String reason;
+
+    public final String detail;
+
+    public DeploymentFailedException(final String deploymentName,
+                                     final String podName,
+                                     final String containerName,
+                                     final String reason,
+                                     final String detail)
+    {
+        super(describe(deploymentName, podName, containerName, reason, detail));
+
+        this.deploymentName = deploymentName;
+        this.podName = podName;
+        this.containerName = containerName;
+        this.reason = reason;
+        this.detail = detail;
+    }
+
+    private static String describe(final String deploymentName,
+                                   final String podName,
+                                   final String containerName,
+                                   final String reason,
+                                   final String detail)
+    {
+        final StringBuilder sb = new StringBuilder("Deployment ").append(deploymentName).append(" failed");
+
+        if (podName != null)
+        {
+            sb.append(": pod ").append(podName);
+        }
+
+        if (containerName != null)
+        {
+            sb.append(" container ").append(containerName);
+        }
+
+        sb.append(" ").append(reason);
+
+        if (detail != null)
+        {
+            sb.append(" (").append(detail).append(")");
+        }
+
+        return sb.toString();
+    }
+}
@@ -6,14 +6,29 @@
 package org.hyperledger.fabric.fabctl.v0;
 
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import io.fabric8.kubernetes.api.model.ContainerStateTerminated;
+import io.fabric8.kubernetes.api.model.ContainerStateWaiting;
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.OwnerReference;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodStatus;
 import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentCondition;
 import io.fabric8.kubernetes.api.model.apps.DeploymentStatus;
+import io.fabric8.kubernetes.api.model.apps.ReplicaSet;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.Watch;
 import io.fabric8.kubernetes.client.Watcher;
 import io.fabric8.kubernetes.client.WatcherException;
-import java.util.concurrent.CountDownLatch;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -24,6 +39,26 @@ public class DeploymentUtil
 {
     private static final YAMLMapper yamlMapper = new YAMLMapper();
 
+    /**
+     * Stamped by the deployment controller on each ReplicaSet, and the pods it creates, from a hash of the template.
+     */
+    static final String POD_TEMPLATE_HASH = "pod-template-hash";
+
+    /**
+     * The rollout revision, on a deployment and on the ReplicaSet that carries that revision's pod template.
+     */
+    static final String REVISION_ANNOTATION = "deployment.kubernetes.io/revision";
+
+    /**
+     * Container waiting reasons that will not resolve without intervention.
+     */
+    private static final Set<String> FATAL_WAITING_REASONS =
+            Set.of("ImagePullBackOff",
+                   "ErrImagePull",
+                   "InvalidImageName",
+                   "CrashLoopBackOff",
+                   "CreateContainerConfigError");
+
     /**
      * Wait a little while for all the pods in a deployment to reach ready status.
      */
@@ -33,77 +68,511 @@ public class DeploymentUtil
                                          final TimeUnit units)
         throws Exception
     {
-        log.info("Waiting {} {} for deployment {} to be available.",
-                 timeout,
-                 units,
-                 deployment.getMetadata().getName());
+        waitForDeployments(client,
+                           Collections.singletonList(deployment),
+                           Instant.now().plusMillis(units.toMillis(timeout)));
+    }
+
+    /**
+     * Wait for a set of deployments to reach ready status, returning as soon as all are ready or any one of them
+     * has failed.  A failure, including a pod that is stuck pulling an image or crash looping, is thrown as a
+     * DeploymentFailedException.
+     *
+     * All of the deployments are tracked through a single watch, selected by the labels the deployments have in
+     * common (e.g. managed-by=fabctl).  The result maps each deployment name to the time it took to become ready,
+     * measured from the start of the wait.
+     *
+     * Pods are only diagnosed once they are known to belong to the deployment's current ReplicaSet (by its
+     * pod-template-hash.)  A pod of an earlier revision, e.g. one still crash looping while it is scaled down, says
+     * nothing about the rollout being waited on.
+     */
+    public static Map<String, Duration> waitForDeployments(final KubernetesClient client,
+                                                           final Collection<Deployment> deployments,
+                                                           final Instant deadline)
+        throws Exception
+    {
+        final Instant start = Instant.now();
+
+        final Set<String> pending = ConcurrentHashMap.newKeySet();
+        final Map<String, Duration> ready = new ConcurrentHashMap<>();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        for (Deployment deployment : deployments)
+        {
+            pending.add(deployment.getMetadata().getName());
+        }
+
+        if (pending.isEmpty())
+        {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, String> selector = commonLabels(deployments);
+
+        //
+        // The root cause of a stalled rollout is in the pod status.  Abort as soon as a pod is stuck pulling an
+        // image, crash looping, or has a failed init container.
+        //
+        final Map<String, Map<String, String>> podSelectors = new HashMap<>();
+        for (Deployment deployment : deployments)
+        {
+            podSelectors.put(deployment.getMetadata().getName(), deployment.getSpec().getSelector().getMatchLabels());
+        }
 
-        final CountDownLatch latch = new CountDownLatch(1);
+        final Map<String, String> podSelector = intersect(templateLabels(deployments));
+
+        //
+        // deployment name -> revision and pod-template-hash of its current ReplicaSet, once the controller has
+        // observed the latest spec.
+        //
+        final Map<String, String> revisions = new ConcurrentHashMap<>();
+        final Map<String, String> templateHashes = new ConcurrentHashMap<>();
+
+        final BiConsumer<String, Pod> checkPod = (name, pod) ->
+        {
+            if (! isCurrent(templateHashes.get(name), pod))
+            {
+                return;
+            }
+
+            final DeploymentFailedException failure = diagnose(name, pod);
+            if (failure != null)
+            {
+                log.info("{}.  abort!", failure.getMessage());
+                done.completeExceptionally(failure);
+            }
+        };
+
+        log.info("Waiting until {} for deployments {} to be available.", deadline, pending);
+
+        //
+        // Update the pending set as deployments come up, completing when all are up or one has failed.
+        //
+        final Watcher<Deployment> watcher = new Watcher<>()
+        {
+            @Override public void eventReceived(Action action, Deployment resource)
+            {
+                final String name = resource.getMetadata().getName();
+                if (! pending.contains(name))
+                {
+                    return;
+                }
+
+                try
+                {
+                    log.debug("action {} {}", action, yamlMapper.writeValueAsString(resource));
+
+                    final DeploymentFailedException failure =
+                            Action.DELETED.equals(action)
+                                    ? new DeploymentFailedException(name, null, null, "Deleted", null)
+                                    : diagnose(resource);
+
+                    if (failure != null)
+                    {
+                        log.info("{}.  abort!", failure.getMessage());
+                        done.completeExceptionally(failure);
+                    }
+                    else if (isReady(resource) && pending.remove(name))
+                    {
+                        final Duration elapsed = Duration.between(start, Instant.now());
+                        ready.put(name, elapsed);
+
+                        log.info("Deployment {} is ready after {} ms.  {} remaining.", name, elapsed.toMillis(), pending.size());
+
+                        if (pending.isEmpty())
+                        {
+                            log.info("All deployments are ready.  Let's go!");
+                            done.complete(null);
+                        }
+                    }
+                    else if (isObserved(resource)
+                            && ! revision(resource).equals(revisions.put(name, revision(resource))))
+                    {
+                        //
+                        // A new revision:  find its ReplicaSet, and check the pods it has already started.
+                        //
+                        final String hash = currentTemplateHash(resource,
+                                                                client.apps()
+                                                                      .replicaSets()
+                                                                      .withLabels(podSelectors.get(name))
+                                                                      .list()
+                                                                      .getItems());
+                        if (hash == null)
+                        {
+                            revisions.remove(name);
+                            return;
+                        }
+
+                        templateHashes.put(name, hash);
+
+                        for (Pod pod : client.pods()
+                                             .withLabels(podSelectors.get(name))
+                                             .withLabel(POD_TEMPLATE_HASH, hash)
+                                             .list()
+                                             .getItems())
+                        {
+                            checkPod.accept(name, pod);
+                        }
+                    }
+                }
+                catch (Exception ex)
+                {
+                    log.error("Could not process callback event", ex);
+                    done.completeExceptionally(ex);
+                }
+            }
+
+            @Override public void onClose(WatcherException cause)
+            {
+                if (cause != null)
+                {
+                    log.error("Watch forcibly closed", cause);
+                }
+
+                done.completeExceptionally(new Exception("Deployment watch was closed", cause));
+            }
+        };
+
+        final Watcher<Pod> podWatcher = new Watcher<>()
+        {
+            @Override public void eventReceived(Action action, Pod resource)
+            {
+                if (Action.DELETED.equals(action))
+                {
+                    return;
+                }
+
+                for (Map.Entry<String, Map<String, String>> e : podSelectors.entrySet())
+                {
+                    if (pending.contains(e.getKey()) && matches(e.getValue(), resource.getMetadata().getLabels()))
+                    {
+                        checkPod.accept(e.getKey(), resource);
+                    }
+                }
+            }
+
+            @Override public void onClose(WatcherException cause)
+            {
+                if (cause != null)
+                {
+                    log.error("Pod watch forcibly closed", cause);
+                    done.completeExceptionally(new Exception("Pod watch was closed", cause));
+                }
+            }
+        };
 
         try (Watch watch = client.apps()
                                  .deployments()
-                                 .withName(deployment.getMetadata().getName())
-                                 .watch(new Watcher<>()
-                                 {
-                                     @Override public void eventReceived(Action action, Deployment resource)
-                                     {
-                                         try
-                                         {
-                                             log.info("action {} {}", action, yamlMapper.writeValueAsString(resource));
-
-                                             final DeploymentStatus status = resource.getStatus();
-                                             if (status == null)
-                                             {
-                                                 log.warn("Deployment has no status?");
-                                                 return;
-                                             }
-
-                                             //
-                                             // release the latch if the deployment is up or deleted.
-                                             //
-                                             if (Action.DELETED.equals(action))
-                                             {
-                                                 log.info("deployment was deleted.  abort!");
-                                                 latch.countDown();
-                                             }
-                                             else if (status.getUnavailableReplicas() == null)
-                                             {
-                                                 log.info("All replicas are ready.  Let's go!");
-                                                 latch.countDown();
-                                             }
-                                         }
-                                         catch (Exception ex)
-                                         {
-                                             log.error("Could not process callback event", ex);
-                                             // todo: this should log the error but trap the exception below, deleting the deployment/service if it was created.
-                                             // todo: this assertion failure is NOT caught by the test runner!
-                                         }
-                                     }
-
-                                     @Override public void onClose(WatcherException cause)
-                                     {
-                                         if (cause != null)
-                                         {
-                                             log.error("Watch forcibly closed", cause);
-                                         }
-
-                                         latch.countDown();
-                                     }
-                                 }))
-        {
-            log.info("Awaiting a maximum of {} {} for deployment.", timeout, units);
-
-            boolean completed = latch.await(timeout, units);
-            if (! completed)
+                                 .withLabels(selector)
+                                 .watch(watcher);
+             Watch podWatch = client.pods()
+                                    .withLabels(podSelector)
+                                    .watch(podWatcher))
+        {
+            //
+            // Deployments that came up before the watch was opened will not generate an event.  Check them here.
+            //
+            for (Deployment deployment : client.apps().deployments().withLabels(selector).list().getItems())
+            {
+                watcher.eventReceived(Watcher.Action.MODIFIED, deployment);
+            }
+
+            for (Pod pod : client.pods().withLabels(podSelector).list().getItems())
+            {
+                podWatcher.eventReceived(Watcher.Action.MODIFIED, pod);
+            }
+
+            final long remaining = Duration.between(Instant.now(), deadline).toMillis();
+
+            try
+            {
+                done.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+            }
+            catch (TimeoutException ex)
             {
                 //
                 // The deployment / services can be removed here, but this will scrub any debugging info from the event history.
-                // TODO: we can detect that the deployment has stalled, but the root cause will be in the POD status conditions...  trap the error here and present to the user.
                 //
-                throw new Exception("Deployment was not ready after " +
-                                            timeout + " " + units +
-                                            ".  Most likely this is an error pulling the Docker image.");
+                throw new DeploymentFailedException(String.join(",", pending),
+                                                    null,
+                                                    null,
+                                                    "Timeout",
+                                                    "not ready by " + deadline);
+            }
+            catch (ExecutionException ex)
+            {
+                throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+            }
+        }
+
+        //
+        // Report the timings in the order the deployments were provided.
+        //
+        final Map<String, Duration> timings = new LinkedHashMap<>();
+        for (Deployment deployment : deployments)
+        {
+            final String name = deployment.getMetadata().getName();
+            timings.put(name, ready.get(name));
+        }
+
+        return timings;
+    }
+
+    /**
+     * A deployment is ready when the controller has observed the latest spec and all of the replicas are available.
+     */
+    static boolean isReady(final Deployment deployment)
+    {
+        final DeploymentStatus status = deployment.getStatus();
+        if (status == null)
+        {
+            return false;
+        }
+
+        final Long generation = deployment.getMetadata().getGeneration();
+        if (generation != null && status.getObservedGeneration() != null && status.getObservedGeneration() < generation)
+        {
+            return false;
+        }
+
+        final int replicas = deployment.getSpec().getReplicas() == null ? 1 : deployment.getSpec().getReplicas();
+        final int available = status.getAvailableReplicas() == null ? 0 : status.getAvailableReplicas();
+
+        return status.getUnavailableReplicas() == null && available >= replicas;
+    }
+
+    /**
+     * The controller has observed the deployment's latest spec, so its revision annotation names the current
+     * ReplicaSet.
+     */
+    static boolean isObserved(final Deployment deployment)
+    {
+        final DeploymentStatus status = deployment.getStatus();
+        final Long generation = deployment.getMetadata().getGeneration();
+
+        return status != null
+                && status.getObservedGeneration() != null
+                && (generation == null || status.getObservedGeneration() >= generation);
+    }
+
+    private static String revision(final Deployment deployment)
+    {
+        final Map<String, String> annotations = deployment.getMetadata().getAnnotations();
+        final String revision = annotations == null ? null : annotations.get(REVISION_ANNOTATION);
+
+        return revision == null ? "" : revision;
+    }
+
+    /**
+     * The pod-template-hash of the deployment's current ReplicaSet:  the one it owns with the deployment's
+     * revision.  Null if the ReplicaSet is not among those given.
+     */
+    static String currentTemplateHash(final Deployment deployment, final Collection<ReplicaSet> replicaSets)
+    {
+        final String revision = revision(deployment);
+
+        for (ReplicaSet replicaSet : replicaSets)
+        {
+            final Map<String, String> annotations = replicaSet.getMetadata().getAnnotations();
+            final Map<String, String> labels = replicaSet.getMetadata().getLabels();
+
+            if (isOwnedBy(replicaSet, deployment)
+                    && annotations != null
+                    && revision.equals(annotations.get(REVISION_ANNOTATION))
+                    && labels != null)
+            {
+                return labels.get(POD_TEMPLATE_HASH);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * A pod is current when it carries the pod-template-hash of the deployment's current ReplicaSet.  Until that
+     * ReplicaSet is known (null hash), no pod is.
+     */
+    static boolean isCurrent(final String templateHash, final Pod pod)
+    {
+        final Map<String, String> labels = pod.getMetadata().getLabels();
+
+        return templateHash != null && labels != null && templateHash.equals(labels.get(POD_TEMPLATE_HASH));
+    }
+
+    private static boolean isOwnedBy(final ReplicaSet replicaSet, final Deployment deployment)
+    {
+        if (replicaSet.getMetadata().getOwnerReferences() == null)
+        {
+            return false;
+        }
+
+        for (OwnerReference owner : replicaSet.getMetadata().getOwnerReferences())
+        {
+            if ("Deployment".equals(owner.getKind()) && deployment.getMetadata().getName().equals(owner.getName()))
+            {
+                return true;
             }
         }
+
+        return false;
+    }
+
+    /**
+     * The deployment controller gives up on a rollout by setting Progressing=False (ProgressDeadlineExceeded) or
+     * ReplicaFailure=True.
+     */
+    static DeploymentFailedException diagnose(final Deployment deployment)
+    {
+        final DeploymentStatus status = deployment.getStatus();
+        if (status == null || status.getConditions() == null)
+        {
+            return null;
+        }
+
+        final String name = deployment.getMetadata().getName();
+
+        for (DeploymentCondition condition : status.getConditions())
+        {
+            if ("Progressing".equals(condition.getType()) && "ProgressDeadlineExceeded".equals(condition.getReason()))
+            {
+                return new DeploymentFailedException(name, null, null, condition.getReason(), condition.getMessage());
+            }
+
+            if ("ReplicaFailure".equals(condition.getType()) && "True".equals(condition.getStatus()))
+            {
+                return new DeploymentFailedException(name, null, null, condition.getReason(), condition.getMessage());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Look for a pod that will never become ready on its own:  an image that can't be pulled, a container in a
+     * crash loop, or an init container (e.g. msp-unfurl) that exited with an error.
+     */
+    static DeploymentFailedException diagnose(final String deploymentName, final Pod pod)
+    {
+        final PodStatus status = pod.getStatus();
+        if (status == null)
+        {
+            return null;
+        }
+
+        final String podName = pod.getMetadata().getName();
+
+        if ("Failed".equals(status.getPhase()))
+        {
+            return new DeploymentFailedException(deploymentName, podName, null, "PodFailed", status.getMessage());
+        }
+
+        if (status.getInitContainerStatuses() != null)
+        {
+            for (ContainerStatus container : status.getInitContainerStatuses())
+            {
+                final ContainerStateTerminated terminated =
+                        container.getState() == null ? null : container.getState().getTerminated();
+                if (terminated != null && terminated.getExitCode() != null && terminated.getExitCode() != 0)
+                {
+                    return new DeploymentFailedException(deploymentName,
+                                                         podName,
+                                                         container.getName(),
+                                                         "InitContainerFailed",
+                                                         "exit code " + terminated.getExitCode() +
+                                                                 (terminated.getMessage() == null ? "" : ": " + terminated.getMessage()));
+                }
+
+                final DeploymentFailedException failure = diagnose(deploymentName, podName, container);
+                if (failure != null)
+                {
+                    return failure;
+                }
+            }
+        }
+
+        if (status.getContainerStatuses() != null)
+        {
+            for (ContainerStatus container : status.getContainerStatuses())
+            {
+                final DeploymentFailedException failure = diagnose(deploymentName, podName, container);
+                if (failure != null)
+                {
+                    return failure;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static DeploymentFailedException diagnose(final String deploymentName,
+                                                      final String podName,
+                                                      final ContainerStatus container)
+    {
+        final ContainerStateWaiting waiting = container.getState() == null ? null : container.getState().getWaiting();
+        if (waiting != null && FATAL_WAITING_REASONS.contains(waiting.getReason()))
+        {
+            return new DeploymentFailedException(deploymentName,
+                                                 podName,
+                                                 container.getName(),
+                                                 waiting.getReason(),
+                                                 waiting.getMessage());
+        }
+
+        return null;
+    }
+
+    private static boolean matches(final Map<String, String> selector, final Map<String, String> labels)
+    {
+        return labels != null && labels.entrySet().containsAll(selector.entrySet());
+    }
+
+    private static List<Map<String, String>> templateLabels(final Collection<Deployment> deployments)
+    {
+        final List<Map<String, String>> labels = new ArrayList<>();
+        for (Deployment deployment : deployments)
+        {
+            labels.add(deployment.getSpec().getTemplate().getMetadata().getLabels());
+        }
+
+        return labels;
+    }
+
+    /**
+     * The labels shared by all of the deployments.  This is the narrowest selector that picks up all of them.
+     */
+    private static Map<String, String> commonLabels(final Collection<Deployment> deployments)
+    {
+        final List<Map<String, String>> labels = new ArrayList<>();
+        for (Deployment deployment : deployments)
+        {
+            labels.add(deployment.getMetadata().getLabels());
+        }
+
+        return intersect(labels);
+    }
+
+    private static Map<String, String> intersect(final List<Map<String, String>> labelSets)
+    {
+        Map<String, String> common = null;
+
+        for (Map<String, String> labels : labelSets)
+        {
+            if (labels == null)
+            {
+                return Collections.emptyMap();
+            }
+
+            if (common == null)
+            {
+                common = new HashMap<>(labels);
+            }
+            else
+            {
+                common.entrySet().retainAll(labels.entrySet());
+            }
+        }
+
+        return common == null ? Collections.emptyMap() : common;
     }
 }
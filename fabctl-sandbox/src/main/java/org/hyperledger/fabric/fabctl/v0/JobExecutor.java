@@ -0,0 +1,143 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v0;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.batch.v1.Job;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Run k8s Jobs asynchronously, capping the number of Jobs in flight at any one time.
+ *
+ * JobUtil.runJob blocks the calling thread until the Job completes, so a sequence of admin commands is strictly
+ * serial.  The executor runs each Job on a bounded worker pool, allowing independent commands (anchor peer
+ * updates, channel joins, chaincode installs, ...) to overlap.  Jobs submitted beyond the concurrency limit are
+ * queued until a worker frees up.
+ *
+ * The [main] container log is streamed while the Job runs (see LogFollower), rather than fetched once the Job has
+ * finished.
+ */
+@Slf4j
+public class JobExecutor implements AutoCloseable
+{
+    private static final long LOG_DRAIN_TIMEOUT = 30;
+
+    private final KubernetesClient client;
+    private final ExecutorService executor;
+    private final long timeout;
+    private final TimeUnit units;
+
+    public JobExecutor(final KubernetesClient client,
+                       final int maxConcurrentJobs,
+                       final long timeout,
+                       final TimeUnit units)
+    {
+        this.client = client;
+        this.timeout = timeout;
+        this.units = units;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxConcurrentJobs, runnable ->
+        {
+            final Thread thread = new Thread(runnable, "fabctl-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Submit a Job, completing the future when the Job has run to completion (or the timeout has expired.)
+     */
+    public CompletableFuture<JobResult> submit(final Job template)
+    {
+        return submit(template, new LogFollower());
+    }
+
+    /**
+     * Submit a Job, streaming the [main] container log through the follower while the Job runs.  Matchers
+     * registered on the follower complete as soon as their line is logged, ahead of the Job's completion.
+     */
+    public CompletableFuture<JobResult> submit(final Job template, final LogFollower follower)
+    {
+        return CompletableFuture.supplyAsync(() ->
+        {
+            try (follower)
+            {
+                return run(template, follower);
+            }
+            catch (Exception ex)
+            {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    private JobResult run(final Job template, final LogFollower follower) throws Exception
+    {
+        final Job job = JobUtil.submitJob(client, template);
+        final String jobName = job.getMetadata().getName();
+
+        final String podName = awaitMainPod(jobName).getMetadata().getName();
+
+        //
+        // [main] never ran (e.g. msp-unfurl failed, or an image can not be pulled.)  Fail the command now, rather
+        // than waiting on a Job that will not complete within the timeout.
+        //
+        if (! follower.follow(client, podName, "main", timeout, units))
+        {
+            return new JobResult(jobName, podName, -1, follower.getLines());
+        }
+
+        JobUtil.waitForJob(client, job, timeout, units);
+
+        //
+        // The log stream ends when the container exits.
+        //
+        final List<String> logs = follower.completion().get(LOG_DRAIN_TIMEOUT, TimeUnit.SECONDS);
+
+        final Pod mainPod = client.pods().withName(podName).get();
+        final int exitCode = JobUtil.getContainerStatusCode(mainPod.getStatus(), "main");
+
+        return new JobResult(jobName, podName, exitCode, logs);
+    }
+
+    /**
+     * The Job controller creates the pod shortly after the Job.  It is picked up by the shared pod informer (see
+     * JobInformer), rather than by listing the Job's pods until one turns up.
+     */
+    private Pod awaitMainPod(final String jobName) throws Exception
+    {
+        try
+        {
+            return JobInformer.forClient(client).waitForMainPod(jobName, timeout, units).get();
+        }
+        catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof TimeoutException)
+            {
+                throw new TimeoutException("Job " + jobName + " has no [main] pod after " + timeout + " " + units);
+            }
+
+            throw ex;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,293 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v0;
+
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.batch.v1.Job;
+import io.fabric8.kubernetes.api.model.batch.v1.JobCondition;
+import io.fabric8.kubernetes.api.model.batch.v1.JobStatus;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.base.OperationContext;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.informers.SharedInformerFactory;
+import io.fabric8.kubernetes.client.informers.cache.Lister;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A single, shared informer tracking the status of all fabctl Jobs in the client's namespace.
+ *
+ * Rather than opening a watch per Job, all waiters are completed from one label-selected informer and its local
+ * cache.  Waiting on N Jobs costs a single list + watch connection to the API server, and a Job that finishes
+ * before the waiter registers is still found in the cache.
+ *
+ * The Jobs' pods are tracked the same way, by a second informer from the same factory, so that a Job's [main] pod
+ * can be found without polling the API server while the Job controller creates it.
+ *
+ * Only Jobs and pods labeled managed-by=fabctl (see JobUtil.submitJob) are visible to the informers.
+ */
+@Slf4j
+public class JobInformer
+{
+    private static final long RESYNC_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
+    private static final String JOB_NAME_INDEX = "job-name";
+
+    private static final Map<KubernetesClient, JobInformer> informers = new ConcurrentHashMap<>();
+
+    private final SharedInformerFactory factory;
+    private final SharedIndexInformer<Job> informer;
+    private final Lister<Job> lister;
+
+    private final SharedIndexInformer<Pod> podInformer;
+
+    private final Map<String, CompletableFuture<Job>> waiters = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletableFuture<Pod>> podWaiters = new ConcurrentHashMap<>();
+
+    /**
+     * Find (or start) the shared Job informer for a client.
+     */
+    public static JobInformer forClient(final KubernetesClient client)
+    {
+        return informers.computeIfAbsent(client, JobInformer::new);
+    }
+
+    /**
+     * Stop the shared Job informer for a client, if one is running.
+     */
+    public static void stop(final KubernetesClient client)
+    {
+        final JobInformer informer = informers.remove(client);
+        if (informer != null)
+        {
+            informer.factory.stopAllRegisteredInformers();
+        }
+    }
+
+    private JobInformer(final KubernetesClient client)
+    {
+        log.info("Starting shared Job informer in namespace {}", client.getNamespace());
+
+        this.factory = client.informers();
+        this.informer =
+                factory.sharedIndexInformerFor(Job.class,
+                                               new OperationContext()
+                                                       .withNamespace(client.getNamespace())
+                                                       .withLabels(Map.of(Labels.MANAGED_BY, Labels.FABCTL)),
+                                               RESYNC_PERIOD);
+
+        informer.addEventHandler(new ResourceEventHandler<>()
+        {
+            @Override
+            public void onAdd(final Job job)
+            {
+                jobChanged(job);
+            }
+
+            @Override
+            public void onUpdate(final Job oldJob, final Job newJob)
+            {
+                jobChanged(newJob);
+            }
+
+            @Override
+            public void onDelete(final Job job, final boolean deletedFinalStateUnknown)
+            {
+                final CompletableFuture<Job> waiter = waiters.remove(job.getMetadata().getName());
+                if (waiter != null)
+                {
+                    waiter.completeExceptionally(
+                            new IllegalStateException("Job " + job.getMetadata().getName() + " was deleted"));
+                }
+            }
+        });
+
+        this.podInformer =
+                factory.sharedIndexInformerFor(Pod.class,
+                                               new OperationContext()
+                                                       .withNamespace(client.getNamespace())
+                                                       .withLabels(Map.of(Labels.MANAGED_BY, Labels.FABCTL)),
+                                               RESYNC_PERIOD);
+
+        //
+        // Index pods on the job-name label set by the Job controller.  Pods of Deployments are not indexed.
+        //
+        podInformer.addIndexers(Map.of(JOB_NAME_INDEX, pod ->
+        {
+            final String jobName = jobNameOf(pod);
+            return jobName == null ? List.of() : List.of(jobName);
+        }));
+
+        podInformer.addEventHandler(new ResourceEventHandler<>()
+        {
+            @Override
+            public void onAdd(final Pod pod)
+            {
+                podChanged(pod);
+            }
+
+            @Override
+            public void onUpdate(final Pod oldPod, final Pod newPod)
+            {
+                podChanged(newPod);
+            }
+
+            @Override
+            public void onDelete(final Pod pod, final boolean deletedFinalStateUnknown)
+            {
+                // A replacement pod is picked up when it is added.
+            }
+        });
+
+        factory.startAllRegisteredInformers();
+
+        this.lister = new Lister<>(informer.getIndexer(), client.getNamespace());
+    }
+
+    /**
+     * Complete when the named Job has succeeded or failed.
+     */
+    public CompletableFuture<Job> waitFor(final String jobName)
+    {
+        final CompletableFuture<Job> waiter = waiters.computeIfAbsent(jobName, name -> new CompletableFuture<>());
+
+        //
+        // The Job may have reached a terminal state before the waiter was registered.  Check the cache.
+        //
+        final Job cached = lister.get(jobName);
+        if (cached != null && isFinished(cached) && waiters.remove(jobName, waiter))
+        {
+            waiter.complete(cached);
+        }
+
+        return waiter;
+    }
+
+    /**
+     * Complete when the named Job has succeeded or failed, or with a TimeoutException after the timeout.  The waiter
+     * is dropped when it completes either way, so a Job that never finishes does not leave it behind.
+     *
+     * Waiters for the same Job share a future:  the first timeout to elapse fails all of them.
+     */
+    public CompletableFuture<Job> waitFor(final String jobName, final long timeout, final TimeUnit units)
+    {
+        final CompletableFuture<Job> waiter = waitFor(jobName);
+
+        waiter.orTimeout(timeout, units)
+              .whenComplete((job, ex) -> waiters.remove(jobName, waiter));
+
+        return waiter;
+    }
+
+    /**
+     * Complete with the named Job's [main] pod as soon as the Job controller has created it, or with a
+     * TimeoutException after the timeout.  A pod created before the waiter registered is found in the cache.
+     */
+    public CompletableFuture<Pod> waitForMainPod(final String jobName, final long timeout, final TimeUnit units)
+    {
+        final CompletableFuture<Pod> waiter = podWaiters.computeIfAbsent(jobName, name -> new CompletableFuture<>());
+
+        for (Pod cached : podInformer.getIndexer().byIndex(JOB_NAME_INDEX, jobName))
+        {
+            if (isMainPod(cached) && podWaiters.remove(jobName, waiter))
+            {
+                waiter.complete(cached);
+            }
+        }
+
+        waiter.orTimeout(timeout, units)
+              .whenComplete((pod, ex) -> podWaiters.remove(jobName, waiter));
+
+        return waiter;
+    }
+
+    private void podChanged(final Pod pod)
+    {
+        final String jobName = jobNameOf(pod);
+        if (jobName == null || ! isMainPod(pod))
+        {
+            return;
+        }
+
+        final CompletableFuture<Pod> waiter = podWaiters.remove(jobName);
+        if (waiter != null)
+        {
+            waiter.complete(pod);
+        }
+    }
+
+    private static String jobNameOf(final Pod pod)
+    {
+        final Map<String, String> labels = pod.getMetadata().getLabels();
+        return labels == null ? null : labels.get(JOB_NAME_INDEX);
+    }
+
+    /**
+     * The Job's pod carries a container named [main] (see JobUtil.findMainPod.)
+     */
+    private static boolean isMainPod(final Pod pod)
+    {
+        for (Container container : pod.getSpec().getContainers())
+        {
+            if ("main".equalsIgnoreCase(container.getName()))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void jobChanged(final Job job)
+    {
+        if (! isFinished(job))
+        {
+            return;
+        }
+
+        final CompletableFuture<Job> waiter = waiters.remove(job.getMetadata().getName());
+        if (waiter != null)
+        {
+            final JobStatus status = job.getStatus();
+            log.info("Job {} finished with {} succeeded, {} failed",
+                     job.getMetadata().getName(),
+                     status.getSucceeded(),
+                     status.getFailed());
+
+            waiter.complete(job);
+        }
+    }
+
+    /**
+     * A Job is finished when it carries a Complete or Failed condition.
+     */
+    public static boolean isFinished(final Job job)
+    {
+        final JobStatus status = job.getStatus();
+        if (status == null || status.getConditions() == null)
+        {
+            return false;
+        }
+
+        for (JobCondition condition : status.getConditions())
+        {
+            if (("Complete".equals(condition.getType()) || "Failed".equals(condition.getType()))
+                    && "True".equals(condition.getStatus()))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,21 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v0;
+
+import java.util.List;
+import lombok.Data;
+
+/**
+ * Final outcome of a Job run by the JobExecutor: the [main] container exit code and its output.
+ */
+@Data
+public class JobResult
+{
+    public final String jobName;
+    public final String podName;
+    public final int exitCode;
+    public final List<String> logs;
+}
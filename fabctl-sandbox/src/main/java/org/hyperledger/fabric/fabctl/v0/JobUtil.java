@@ -8,14 +8,12 @@ package org.hyperledger.fabric.fabctl.v0;
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
 import io.fabric8.kubernetes.api.model.*;
 import io.fabric8.kubernetes.api.model.batch.v1.Job;
-import io.fabric8.kubernetes.api.model.batch.v1.JobStatus;
+import io.fabric8.kubernetes.api.model.batch.v1.JobBuilder;
 import io.fabric8.kubernetes.client.KubernetesClient;
-import io.fabric8.kubernetes.client.Watch;
-import io.fabric8.kubernetes.client.Watcher;
-import io.fabric8.kubernetes.client.WatcherException;
 import java.io.IOException;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -23,13 +21,28 @@ public class JobUtil
 {
     private static final YAMLMapper yamlMapper = new YAMLMapper();
 
+    /**
+     * Create a Job, stamping it and its pod template with the fabctl label so that both are tracked by the shared
+     * JobInformer.
+     */
     public static Job submitJob(final KubernetesClient client, final Job template) throws IOException
     {
         final Job job =
                 client.batch()
                       .v1()
                       .jobs()
-                      .create(template);
+                      .create(new JobBuilder(template)
+                                      .editOrNewMetadata()
+                                      .addToLabels(Labels.MANAGED_BY, Labels.FABCTL)
+                                      .endMetadata()
+                                      .editOrNewSpec()
+                                      .editOrNewTemplate()
+                                      .editOrNewMetadata()
+                                      .addToLabels(Labels.MANAGED_BY, Labels.FABCTL)
+                                      .endMetadata()
+                                      .endTemplate()
+                                      .endSpec()
+                                      .build());
 
         log.info("Created job {}:\n{}",
                  job.getMetadata().getName(),
@@ -50,89 +63,43 @@ public class JobUtil
         return created;  // todo: better to return the final Job status / state
     }
 
+    /**
+     * Block the current thread until the job has succeeded or failed, or a timeout has been reached.
+     *
+     * Job status is read from the shared JobInformer cache, so no per-Job watch is opened.
+     */
     public static void waitForJob(final KubernetesClient client,
                                   final Job job,
                                   final long timeout,
                                   final TimeUnit units)
             throws InterruptedException
     {
-        //
-        // Subscribe to events for the newly created job.
-        //
         final String jobName = job.getMetadata().getName();
-        log.info("Opening watch for job {}", jobName);
-
-        //
-        // Block the current thread until receipt of a success/failed event, or a timeout has been reached.
-        //
-        final CountDownLatch latch = new CountDownLatch(1);
-
-        try (final Watch watch = client.batch()
-                                       .v1()
-                                       .jobs()
-                                       .withName(jobName)
-                                       .watch(new Watcher<Job>()
-                        {
-                           @Override
-                           public void eventReceived(Action action, Job resource)
-                           {
-                               try
-                               {
-                                   log.info("Received Job action {}\n{}",
-                                            action,
-                                            yamlMapper.writeValueAsString(action));
-
-                                   final JobStatus jobStatus = resource.getStatus();
-                                   if (jobStatus == null)
-                                   {
-                                       log.info("Job has no status?");
-                                       return;
-                                   }
-
-                                   //
-                                   // Release the latch if the job succeeded or failed.
-                                   //
-                                   if (Integer.valueOf(1).equals(jobStatus.getActive()))
-                                   {
-                                       log.info("Job started at " + jobStatus.getStartTime());
-                                   }
-                                   else if (Integer.valueOf(1).equals(jobStatus.getFailed()))
-                                   {
-                                       log.info("Job failed with conditions " +
-                                                        yamlMapper.writeValueAsString(jobStatus.getConditions()));
-                                       latch.countDown();
-                                   }
-                                   else if (Integer.valueOf(1).equals(jobStatus.getSucceeded()))
-                                   {
-                                       log.info("Job succeeded at " + jobStatus.getCompletionTime());
-                                       latch.countDown();
-                                   }
-                               }
-                               catch (Exception ex)
-                               {
-                                   log.error("Could not process action event", ex);
-                               }
-                           }
-
-                           @Override
-                           public void onClose(WatcherException cause)
-                           {
-                               if (cause != null)
-                               {
-                                   log.error("Watch was closed with exception", cause);
-                               }
-
-                               latch.countDown();
-                           }
-                        }))
+
+        log.info("Awaiting a maximum of {} {} for job {} completion.", timeout, units, jobName);
+
+        try
         {
-            log.info("Awaiting a maximum of {} {} for job completion.", timeout, units);
+            final Job finished = JobInformer.forClient(client).waitFor(jobName, timeout, units).get();
 
-            boolean completed = latch.await(timeout, units);
-            if (! completed)
+            log.info("Job {} completed with conditions:\n{}",
+                     jobName,
+                     yamlMapper.writeValueAsString(finished.getStatus().getConditions()));
+        }
+        catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof TimeoutException)
             {
                 log.error("Job is still running.  Terminate it here?");
             }
+            else
+            {
+                log.error("Could not wait for job " + jobName, ex.getCause());
+            }
+        }
+        catch (IOException ex)
+        {
+            log.error("Could not process job status", ex);
         }
     }
 
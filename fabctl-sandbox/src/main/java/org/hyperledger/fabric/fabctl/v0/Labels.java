@@ -0,0 +1,25 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v0;
+
+/**
+ * Common labels applied to the k8s resources created by fabctl.
+ */
+public class Labels
+{
+    /**
+     * Everything fabctl creates is stamped with managed-by=fabctl, allowing a single label selector (watch,
+     * informer, list, ...) to pick out the fabctl resources in a namespace.
+     */
+    public static final String MANAGED_BY = "app.kubernetes.io/managed-by";
+
+    public static final String FABCTL = "fabctl";
+
+    /**
+     * The network a resource was reconciled for (see NetworkReconciler.)
+     */
+    public static final String NETWORK = "fabctl.hyperledger.org/network";
+}
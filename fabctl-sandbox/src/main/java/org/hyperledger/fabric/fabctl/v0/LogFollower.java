@@ -0,0 +1,367 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v0;
+
+import io.fabric8.kubernetes.api.model.ContainerState;
+import io.fabric8.kubernetes.api.model.ContainerStateTerminated;
+import io.fabric8.kubernetes.api.model.ContainerStateWaiting;
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodStatus;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.LogWatch;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stream a container's log while it is running, rather than reading the log after the pod has terminated.
+ *
+ * Callers register matchers for tokens of interest (e.g. "Chaincode code package identifier: ") before following
+ * the container.  Each matcher is a future, completed with the remainder of the line the moment the token appears
+ * in the log, so the caller can carry on without waiting for the container to exit.
+ *
+ * Only the most recent [maxLines] lines are retained.  Lines falling out of the buffer are still checked against
+ * the registered matchers.
+ *
+ * A pod that fails before the container starts (e.g. the msp-unfurl init container exits non-zero) has no log to
+ * follow.  The follower gives up as soon as the failure shows in the pod status, rather than waiting out the timeout.
+ */
+@Slf4j
+public class LogFollower implements AutoCloseable
+{
+    public static final int DEFAULT_MAX_LINES = 10_000;
+
+    /**
+     * Container waiting reasons that will not resolve without intervention.  A Job's pods are not restarted, so
+     * CrashLoopBackOff is not one of them.
+     */
+    private static final Set<String> FATAL_WAITING_REASONS =
+            Set.of("ImagePullBackOff",
+                   "ErrImagePull",
+                   "InvalidImageName",
+                   "CreateContainerConfigError");
+
+    private final int maxLines;
+    private final Deque<String> lines = new ArrayDeque<>();
+    private final Map<String, CompletableFuture<String>> matchers = new LinkedHashMap<>();
+    private final CompletableFuture<List<String>> completion = new CompletableFuture<>();
+
+    private long droppedLines;
+    private boolean finished;
+    private LogWatch watch;
+
+    public LogFollower()
+    {
+        this(DEFAULT_MAX_LINES);
+    }
+
+    public LogFollower(final int maxLines)
+    {
+        this.maxLines = maxLines;
+    }
+
+    /**
+     * Register a matcher, completing with the text following the token on the first line containing it.  If the
+     * log ends without the token appearing, the future completes exceptionally.
+     */
+    public CompletableFuture<String> match(final String token)
+    {
+        final CompletableFuture<String> future;
+
+        synchronized (this)
+        {
+            final CompletableFuture<String> existing = matchers.get(token);
+            if (existing != null)
+            {
+                return existing;
+            }
+
+            future = new CompletableFuture<>();
+            matchers.put(token, future);
+
+            //
+            // The line may already have gone by.
+            //
+            for (String line : lines)
+            {
+                if (line.contains(token))
+                {
+                    future.complete(remainder(line, token));
+                    return future;
+                }
+            }
+
+            if (finished)
+            {
+                future.completeExceptionally(new NoSuchElementException("Log ended before \"" + token + "\""));
+            }
+        }
+
+        return future;
+    }
+
+    /**
+     * Wait for the container to start, then follow its log on a background thread until the container exits.
+     *
+     * @return false if the pod failed before the container could start (see failure(Pod).)  There is no log to
+     *         follow:  the follower is finished, and matchers still waiting for their token fail.
+     */
+    public boolean follow(final KubernetesClient client,
+                          final String podName,
+                          final String containerName,
+                          final long timeout,
+                          final TimeUnit units)
+    {
+        final Pod pod = client.pods()
+                              .withName(podName)
+                              .waitUntilCondition(p -> hasStarted(p, containerName) || failure(p) != null,
+                                                  timeout,
+                                                  units);
+
+        if (! hasStarted(pod, containerName))
+        {
+            log.warn("Pod {} failed before container {} started: {}", podName, containerName, failure(pod));
+
+            finish();
+            return false;
+        }
+
+        synchronized (this)
+        {
+            watch = client.pods()
+                          .withName(podName)
+                          .inContainer(containerName)
+                          .watchLog();
+        }
+
+        final Thread reader = new Thread(() -> read(podName), "fabctl-log-" + podName);
+        reader.setDaemon(true);
+        reader.start();
+
+        return true;
+    }
+
+    /**
+     * Completes with the retained log lines when the container's log stream ends.
+     */
+    public CompletableFuture<List<String>> completion()
+    {
+        return completion;
+    }
+
+    public synchronized List<String> getLines()
+    {
+        return new ArrayList<>(lines);
+    }
+
+    /**
+     * The number of lines discarded from the head of the buffer.
+     */
+    public synchronized long getDroppedLines()
+    {
+        return droppedLines;
+    }
+
+    /**
+     * Stop following the log.  Matchers still waiting for their token complete exceptionally, even if the log was
+     * never followed.
+     */
+    @Override
+    public void close()
+    {
+        final LogWatch watch;
+        synchronized (this)
+        {
+            watch = this.watch;
+        }
+
+        if (watch != null)
+        {
+            watch.close();
+        }
+
+        finish();
+    }
+
+    private void read(final String podName)
+    {
+        try (final BufferedReader reader =
+                     new BufferedReader(new InputStreamReader(watch.getOutput(), StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                accept(line);
+            }
+        }
+        catch (IOException ex)
+        {
+            log.warn("Log stream for pod " + podName + " was interrupted", ex);
+        }
+        finally
+        {
+            finish();
+        }
+    }
+
+    void accept(final String line)
+    {
+        final Map<CompletableFuture<String>, String> matched = new HashMap<>();
+
+        synchronized (this)
+        {
+            lines.addLast(line);
+            if (lines.size() > maxLines)
+            {
+                lines.removeFirst();
+                droppedLines++;
+            }
+
+            for (Map.Entry<String, CompletableFuture<String>> e : matchers.entrySet())
+            {
+                if (! e.getValue().isDone() && line.contains(e.getKey()))
+                {
+                    matched.put(e.getValue(), remainder(line, e.getKey()));
+                }
+            }
+        }
+
+        //
+        // Complete outside of the lock: dependent stages may run on this thread.
+        //
+        for (Map.Entry<CompletableFuture<String>, String> e : matched.entrySet())
+        {
+            e.getKey().complete(e.getValue());
+        }
+    }
+
+    void finish()
+    {
+        final List<String> retained;
+        final Map<String, CompletableFuture<String>> unmatched = new LinkedHashMap<>();
+
+        synchronized (this)
+        {
+            //
+            // Once for the end of the log, or for close(), whichever comes first.
+            //
+            if (finished)
+            {
+                return;
+            }
+
+            finished = true;
+            retained = new ArrayList<>(lines);
+
+            for (Map.Entry<String, CompletableFuture<String>> e : matchers.entrySet())
+            {
+                if (! e.getValue().isDone())
+                {
+                    unmatched.put(e.getKey(), e.getValue());
+                }
+            }
+
+            if (droppedLines > 0)
+            {
+                log.warn("Dropped {} log lines beyond the {} line buffer", droppedLines, maxLines);
+            }
+        }
+
+        for (Map.Entry<String, CompletableFuture<String>> e : unmatched.entrySet())
+        {
+            e.getValue().completeExceptionally(new NoSuchElementException("Log ended before \"" + e.getKey() + "\""));
+        }
+
+        completion.complete(retained);
+    }
+
+    private static String remainder(final String line, final String token)
+    {
+        return line.substring(line.indexOf(token) + token.length());
+    }
+
+    /**
+     * Why a pod will never run its containers, or null if it still might.  The pod phase is Failed, an init
+     * container (e.g. msp-unfurl) exited non-zero, or a container is stuck waiting on an image that can not be
+     * pulled.  Any of these leave [main] waiting in PodInitializing (or ContainerCreating) for good.
+     */
+    static String failure(final Pod pod)
+    {
+        if (pod == null || pod.getStatus() == null)
+        {
+            return null;
+        }
+
+        final PodStatus status = pod.getStatus();
+
+        if ("Failed".equals(status.getPhase()))
+        {
+            return "pod phase is Failed" + (status.getMessage() == null ? "" : " (" + status.getMessage() + ")");
+        }
+
+        final List<ContainerStatus> containers = new ArrayList<>();
+        if (status.getInitContainerStatuses() != null)
+        {
+            for (ContainerStatus container : status.getInitContainerStatuses())
+            {
+                final ContainerStateTerminated terminated =
+                        container.getState() == null ? null : container.getState().getTerminated();
+                if (terminated != null && terminated.getExitCode() != null && terminated.getExitCode() != 0)
+                {
+                    return "init container " + container.getName() + " exited with code " + terminated.getExitCode();
+                }
+            }
+
+            containers.addAll(status.getInitContainerStatuses());
+        }
+
+        if (status.getContainerStatuses() != null)
+        {
+            containers.addAll(status.getContainerStatuses());
+        }
+
+        for (ContainerStatus container : containers)
+        {
+            final ContainerStateWaiting waiting =
+                    container.getState() == null ? null : container.getState().getWaiting();
+            if (waiting != null && FATAL_WAITING_REASONS.contains(waiting.getReason()))
+            {
+                return "container " + container.getName() + " " + waiting.getReason()
+                       + (waiting.getMessage() == null ? "" : " (" + waiting.getMessage() + ")");
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * The log can be followed once the container is running (or has already run.)
+     */
+    static boolean hasStarted(final Pod pod, final String containerName)
+    {
+        if (pod == null || pod.getStatus() == null || pod.getStatus().getContainerStatuses() == null)
+        {
+            return false;
+        }
+
+        for (ContainerStatus status : pod.getStatus().getContainerStatuses())
+        {
+            final ContainerState state = status.getState();
+            if (containerName.equals(status.getName()) && state != null)
+            {
+                return state.getRunning() != null || state.getTerminated() != null;
+            }
+        }
+
+        return false;
+    }
+}
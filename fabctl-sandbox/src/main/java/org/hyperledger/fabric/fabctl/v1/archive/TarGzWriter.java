@@ -0,0 +1,90 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.zip.Deflater;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+
+/**
+ * Write a byte-stable tar.gz in memory:  entries in the order they are added, with no timestamps, ownership, or
+ * host details, and a gzip header with no timestamp or OS marker.  The same entries always produce the same bytes.
+ *
+ * Used for the chaincode package (see ChaincodePackage), where the bytes are the package ID, and the MSP bundle
+ * (see MSPBundle), where the bytes name the config map.
+ */
+public class TarGzWriter implements AutoCloseable
+{
+    private static final int FILE_MODE = 0100644;
+
+    private final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    private final TarArchiveOutputStream tos;
+
+    public TarGzWriter() throws IOException
+    {
+        final GzipParameters gzipParameters = new GzipParameters();
+        gzipParameters.setModificationTime(0);
+        gzipParameters.setOperatingSystem(255);   // unknown
+        gzipParameters.setCompressionLevel(Deflater.BEST_COMPRESSION);
+
+        this.tos = new TarArchiveOutputStream(new GzipCompressorOutputStream(baos, gzipParameters));
+        this.tos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+    }
+
+    /**
+     * Write an archive of the entries, in map order.
+     */
+    public static byte[] write(final Map<String, byte[]> entries) throws IOException
+    {
+        try (TarGzWriter writer = new TarGzWriter())
+        {
+            for (Map.Entry<String, byte[]> e : entries.entrySet())
+            {
+                writer.add(e.getKey(), e.getValue());
+            }
+
+            return writer.finish();
+        }
+    }
+
+    public void add(final String path, final byte[] content) throws IOException
+    {
+        final TarArchiveEntry entry = new TarArchiveEntry(path);
+        entry.setSize(content.length);
+        entry.setMode(FILE_MODE);
+        entry.setModTime(0);
+        entry.setUserId(0);
+        entry.setGroupId(0);
+        entry.setUserName("");
+        entry.setGroupName("");
+
+        tos.putArchiveEntry(entry);
+        tos.write(content);
+        tos.closeArchiveEntry();
+    }
+
+    /**
+     * Close the archive and return its bytes.
+     */
+    public byte[] finish() throws IOException
+    {
+        tos.finish();
+        tos.close();
+
+        return baos.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        tos.close();
+    }
+}
@@ -0,0 +1,179 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.bootstrap;
+
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
+import org.hyperledger.fabric.fabctl.v1.network.NetworkConfig;
+import org.hyperledger.fabric.fabctl.v1.network.OrdererConfig;
+import org.hyperledger.fabric.fabctl.v1.network.OrganizationConfig;
+import org.hyperledger.fabric.fabctl.v1.network.PeerConfig;
+
+/**
+ * Derive a task graph for bringing up a network from a NetworkConfig:
+ *
+ * <pre>
+ *   fabric-config, msp/{orgs, orderers}          --> genesis-block
+ *   fabric-config, msp/{orderer}, genesis-block  --> orderer/{name}
+ *   fabric-config, msp/{peer}                    --> peer/{name}
+ *   orderer/*, peer/*                            --> rollout
+ * </pre>
+ *
+ * MSP config maps don't depend on each other or on the genesis block, and peers don't wait for the orderers
+ * to be ready before starting.  Each orderer / peer task launches a deployment, and the rollout task waits for
+ * all of them together, failing as soon as any one of them fails.
+ */
+@Slf4j
+public class NetworkBootstrap
+{
+    public static final String FABRIC_CONFIG = "fabric-config";
+
+    public static final String GENESIS_BLOCK = "genesis-block";
+
+    public static final String ROLLOUT = "rollout";
+
+    private final NetworkConfig network;
+    private final NetworkBootstrapActions actions;
+
+    private final Map<String, Deployment> deployments = new ConcurrentHashMap<>();
+    private final Map<String, Duration> rolloutTimes = new ConcurrentHashMap<>();
+
+    public NetworkBootstrap(final NetworkConfig network, final NetworkBootstrapActions actions)
+    {
+        this.network = network;
+        this.actions = actions;
+    }
+
+    public TaskGraph plan()
+    {
+        final TaskGraph graph = new TaskGraph();
+
+        graph.add(FABRIC_CONFIG, actions::createFabricConfig);
+
+        //
+        // One config map per distinct MSP descriptor.  The same descriptor may be in scope for several nodes.
+        //
+        final Map<String, MSPDescriptor> msps = new LinkedHashMap<>();
+        for (OrganizationConfig org : network.organizations)
+        {
+            collect(msps, org.msps);
+
+            for (OrdererConfig orderer : org.orderers)
+            {
+                collect(msps, orderer.msps);
+            }
+
+            for (PeerConfig peer : org.peers)
+            {
+                collect(msps, peer.msps);
+            }
+        }
+
+        for (MSPDescriptor msp : msps.values())
+        {
+            graph.add(mspTask(msp), () -> actions.createMSPConfigMap(msp));
+        }
+
+        //
+        // configtxgen runs with the org MSPs and the orderer TLS certificates in scope.
+        //
+        final Set<String> genesisDependencies = new LinkedHashSet<>();
+        genesisDependencies.add(FABRIC_CONFIG);
+
+        for (OrganizationConfig org : network.organizations)
+        {
+            genesisDependencies.addAll(mspTasks(org.msps));
+
+            for (OrdererConfig orderer : org.orderers)
+            {
+                genesisDependencies.addAll(mspTasks(orderer.msps));
+            }
+        }
+
+        graph.add(GENESIS_BLOCK, () -> actions.createGenesisBlock(network), genesisDependencies);
+
+        final List<String> nodes = new ArrayList<>();
+
+        //
+        // Orderers boot from the genesis block.  Peers only need their config and MSP context.
+        //
+        for (OrganizationConfig org : network.organizations)
+        {
+            for (OrdererConfig orderer : org.orderers)
+            {
+                final Set<String> dependencies = new LinkedHashSet<>();
+                dependencies.add(FABRIC_CONFIG);
+                dependencies.add(GENESIS_BLOCK);
+                dependencies.addAll(mspTasks(orderer.msps));
+
+                final String task = "orderer/" + orderer.name;
+                graph.add(task, () -> deployments.put(task, actions.launchOrderer(orderer)), dependencies);
+                nodes.add(task);
+            }
+
+            for (PeerConfig peer : org.peers)
+            {
+                final Set<String> dependencies = new LinkedHashSet<>();
+                dependencies.add(FABRIC_CONFIG);
+                dependencies.addAll(mspTasks(peer.msps));
+
+                final String task = "peer/" + peer.name;
+                graph.add(task, () -> deployments.put(task, actions.launchPeer(peer)), dependencies);
+                nodes.add(task);
+            }
+        }
+
+        graph.add(ROLLOUT, () -> rolloutTimes.putAll(actions.waitForDeployments(deployments.values())), nodes);
+
+        return graph;
+    }
+
+    /**
+     * The time taken for each deployment to become ready, measured from the start of the rollout wait.
+     */
+    public Map<String, Duration> getRolloutTimes()
+    {
+        return Collections.unmodifiableMap(rolloutTimes);
+    }
+
+    /**
+     * Bring up the network, running at most [parallelism] steps at a time.
+     */
+    public TaskGraph.Report run(final int parallelism) throws Exception
+    {
+        log.info("Bootstrapping network {}", network.metadata.name);
+
+        return plan().run(parallelism);
+    }
+
+    private static void collect(final Map<String, MSPDescriptor> msps, final List<MSPDescriptor> list)
+    {
+        for (MSPDescriptor msp : list)
+        {
+            msps.putIfAbsent(msp.name, msp);
+        }
+    }
+
+    private static String mspTask(final MSPDescriptor msp)
+    {
+        return "msp/" + msp.name;
+    }
+
+    private static List<String> mspTasks(final List<MSPDescriptor> msps)
+    {
+        final List<String> tasks = new ArrayList<>();
+        for (MSPDescriptor msp : msps)
+        {
+            tasks.add(mspTask(msp));
+        }
+
+        return tasks;
+    }
+}
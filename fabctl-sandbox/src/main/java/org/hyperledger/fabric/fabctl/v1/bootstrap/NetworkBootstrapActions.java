@@ -0,0 +1,39 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.bootstrap;
+
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
+import org.hyperledger.fabric.fabctl.v1.network.NetworkConfig;
+import org.hyperledger.fabric.fabctl.v1.network.OrdererConfig;
+import org.hyperledger.fabric.fabctl.v1.network.PeerConfig;
+
+/**
+ * The individual steps of bringing up a fabric network.  NetworkBootstrap decides when each of these run.
+ */
+public interface NetworkBootstrapActions
+{
+    /**
+     * Create the fabric-config config map (core.yaml, orderer.yaml, configtx.yaml, ...)
+     */
+    void createFabricConfig() throws Exception;
+
+    void createMSPConfigMap(MSPDescriptor msp) throws Exception;
+
+    void createGenesisBlock(NetworkConfig network) throws Exception;
+
+    Deployment launchOrderer(OrdererConfig orderer) throws Exception;
+
+    Deployment launchPeer(PeerConfig peer) throws Exception;
+
+    /**
+     * Wait for all of the network's deployments to be ready, returning the time taken by each.
+     */
+    Map<String, Duration> waitForDeployments(Collection<Deployment> deployments) throws Exception;
+}
@@ -0,0 +1,289 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.bootstrap;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A directed acyclic graph of named tasks.  Each task starts as soon as all of its dependencies have completed,
+ * so independent tasks run concurrently and the overall run takes roughly the length of the longest chain.
+ *
+ * After a run, the Report carries the duration of each task and the critical path: the chain of tasks that
+ * gated the completion of the graph.
+ */
+@Slf4j
+public class TaskGraph
+{
+    @FunctionalInterface
+    public interface Task
+    {
+        void run() throws Exception;
+    }
+
+    @Data
+    public static class Report
+    {
+        public final Duration elapsed;
+        public final Map<String, Duration> durations;
+        public final List<String> criticalPath;
+    }
+
+    private static class Node
+    {
+        private final String name;
+        private final Task task;
+        private final List<String> dependencies;
+
+        private long started;
+        private long finished;
+
+        private Node(final String name, final Task task, final List<String> dependencies)
+        {
+            this.name = name;
+            this.task = task;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+    /**
+     * Add a task to the graph.  Dependencies may be added to the graph later, but must be present before run().
+     */
+    public TaskGraph add(final String name, final Task task, final Collection<String> dependencies)
+    {
+        if (nodes.containsKey(name))
+        {
+            throw new IllegalArgumentException("Duplicate task " + name);
+        }
+
+        nodes.put(name, new Node(name, task, new ArrayList<>(dependencies)));
+
+        return this;
+    }
+
+    public TaskGraph add(final String name, final Task task, final String... dependencies)
+    {
+        return add(name, task, Arrays.asList(dependencies));
+    }
+
+    public Set<String> getTaskNames()
+    {
+        return Collections.unmodifiableSet(nodes.keySet());
+    }
+
+    public List<String> getDependencies(final String name)
+    {
+        return Collections.unmodifiableList(nodes.get(name).dependencies);
+    }
+
+    /**
+     * Run all of the tasks in the graph, with at most [parallelism] tasks running at any time.
+     *
+     * If any task fails, its dependents are not run and the first failure is thrown after the remaining
+     * tasks have settled.
+     */
+    public Report run(final int parallelism) throws Exception
+    {
+        final List<Node> ordered = sort();
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable ->
+        {
+            final Thread thread = new Thread(runnable, "fabctl-task-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final long start = System.nanoTime();
+        final Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+
+        try
+        {
+            for (Node node : ordered)
+            {
+                final CompletableFuture<?>[] upstream =
+                        node.dependencies
+                            .stream()
+                            .map(futures::get)
+                            .toArray(CompletableFuture[]::new);
+
+                futures.put(node.name,
+                            CompletableFuture.allOf(upstream)
+                                             .thenRunAsync(() -> execute(node), executor));
+            }
+
+            //
+            // Let everything settle before reporting the first failure.
+            //
+            Exception failure = null;
+            for (Node node : ordered)
+            {
+                try
+                {
+                    futures.get(node.name).join();
+                }
+                catch (CompletionException ex)
+                {
+                    if (failure == null)
+                    {
+                        failure = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                    }
+                }
+            }
+
+            if (failure != null)
+            {
+                throw failure;
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        final Report report = new Report(Duration.ofNanos(System.nanoTime() - start), durations(ordered), criticalPath());
+
+        log.info("Completed {} tasks in {} ms", ordered.size(), report.elapsed.toMillis());
+        for (String name : report.criticalPath)
+        {
+            log.info("  critical path: {} ({} ms)", name, report.durations.get(name).toMillis());
+        }
+
+        return report;
+    }
+
+    private void execute(final Node node)
+    {
+        log.info("Starting task {}", node.name);
+
+        node.started = System.nanoTime();
+        try
+        {
+            node.task.run();
+        }
+        catch (Exception ex)
+        {
+            log.error("Task " + node.name + " failed", ex);
+            throw new CompletionException(ex);
+        }
+        finally
+        {
+            node.finished = System.nanoTime();
+        }
+
+        log.info("Completed task {} in {} ms", node.name, Duration.ofNanos(node.finished - node.started).toMillis());
+    }
+
+    /**
+     * Topological sort, rejecting missing dependencies and cycles.
+     */
+    private List<Node> sort()
+    {
+        final Map<String, Integer> inDegree = new HashMap<>();
+        final Map<String, List<Node>> dependents = new HashMap<>();
+
+        for (Node node : nodes.values())
+        {
+            inDegree.put(node.name, node.dependencies.size());
+
+            for (String dependency : node.dependencies)
+            {
+                if (! nodes.containsKey(dependency))
+                {
+                    throw new IllegalStateException("Task " + node.name + " depends on unknown task " + dependency);
+                }
+
+                dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(node);
+            }
+        }
+
+        final Deque<Node> ready = new ArrayDeque<>();
+        for (Node node : nodes.values())
+        {
+            if (node.dependencies.isEmpty())
+            {
+                ready.add(node);
+            }
+        }
+
+        final List<Node> ordered = new ArrayList<>();
+        while (! ready.isEmpty())
+        {
+            final Node node = ready.poll();
+            ordered.add(node);
+
+            for (Node dependent : dependents.getOrDefault(node.name, Collections.emptyList()))
+            {
+                if (inDegree.merge(dependent.name, -1, Integer::sum) == 0)
+                {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        if (ordered.size() != nodes.size())
+        {
+            throw new IllegalStateException("Task graph contains a cycle");
+        }
+
+        return ordered;
+    }
+
+    private static Map<String, Duration> durations(final List<Node> ordered)
+    {
+        final Map<String, Duration> durations = new LinkedHashMap<>();
+        for (Node node : ordered)
+        {
+            durations.put(node.name, Duration.ofNanos(node.finished - node.started));
+        }
+
+        return durations;
+    }
+
+    /**
+     * Walk backwards from the last task to finish, following the dependency that finished last at each step.
+     */
+    private List<String> criticalPath()
+    {
+        final LinkedList<String> path = new LinkedList<>();
+
+        Node node = latest(nodes.values());
+        while (node != null)
+        {
+            path.addFirst(node.name);
+
+            final List<Node> upstream = new ArrayList<>();
+            for (String dependency : node.dependencies)
+            {
+                upstream.add(nodes.get(dependency));
+            }
+
+            node = latest(upstream);
+        }
+
+        return path;
+    }
+
+    private static Node latest(final Collection<Node> candidates)
+    {
+        Node latest = null;
+        for (Node node : candidates)
+        {
+            if (latest == null || node.finished > latest.finished)
+            {
+                latest = node;
+            }
+        }
+
+        return latest;
+    }
+}
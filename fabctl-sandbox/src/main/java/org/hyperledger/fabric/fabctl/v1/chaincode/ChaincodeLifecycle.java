@@ -0,0 +1,311 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.chaincode;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.fabric.fabctl.v0.JobResult;
+import org.hyperledger.fabric.fabctl.v0.command.PeerCommand;
+import org.hyperledger.fabric.fabctl.v1.network.NetworkConfig;
+import org.hyperledger.fabric.fabctl.v1.network.OrganizationConfig;
+import org.hyperledger.fabric.fabctl.v1.network.PeerConfig;
+
+/**
+ * Install, approve, and commit a chaincode package across all of the peers in a network:
+ *
+ * <pre>
+ *   install (every peer, in parallel)  -->  approveformyorg (once per org)  -->  commit (once)
+ * </pre>
+ *
+ * An org approves as soon as its own peers have the package installed, without waiting for the other orgs.  Before
+ * installing, each peer is asked for its installed packages, and the install is skipped if the package ID is
+ * already present.  (With a deterministic ChaincodePackage, re-deploying an unchanged chaincode installs nothing.)
+ *
+ * Commands are run through a LifecycleRunner, which supplies the admin context for each org.
+ */
+@Slf4j
+public class ChaincodeLifecycle
+{
+    /**
+     * The runner mounts the chaincode package here for `peer lifecycle chaincode install`
+     */
+    public static final String PACKAGE_PATH = "/var/hyperledger/fabric/chaincode/" + ChaincodePackage.ARCHIVE_NAME;
+
+    @Data
+    public static class Report
+    {
+        public final Duration elapsed;
+
+        /**
+         * Per-peer time to query + install the package.
+         */
+        public final Map<String, Duration> installs;
+
+        /**
+         * Peers that already had the package installed.
+         */
+        public final Set<String> skipped;
+
+        /**
+         * Per-org time to approve, once the org's installs have completed.
+         */
+        public final Map<String, Duration> approvals;
+
+        public final Duration commit;
+    }
+
+    private final NetworkConfig network;
+    private final LifecycleRunner runner;
+    private final String channelID;
+    private final String ordererAddress;
+    private final String ordererTLSCAFile;
+
+    public ChaincodeLifecycle(final NetworkConfig network,
+                              final LifecycleRunner runner,
+                              final String channelID,
+                              final String ordererAddress,
+                              final String ordererTLSCAFile)
+    {
+        this.network = network;
+        this.runner = runner;
+        this.channelID = channelID;
+        this.ordererAddress = ordererAddress;
+        this.ordererTLSCAFile = ordererTLSCAFile;
+    }
+
+    /**
+     * Install the package on all peers, approve for every peer org, and commit the chaincode definition.
+     */
+    public Report deploy(final ChaincodePackage ccPackage,
+                         final String name,
+                         final String version,
+                         final int sequence)
+            throws Exception
+    {
+        final long start = System.nanoTime();
+
+        final Map<String, Duration> installs = new ConcurrentHashMap<>();
+        final Set<String> skipped = ConcurrentHashMap.newKeySet();
+        final Map<String, Duration> approvals = new ConcurrentHashMap<>();
+
+        final List<OrganizationConfig> peerOrgs = peerOrgs();
+
+        log.info("Deploying chaincode {} ({}) to {} orgs", name, ccPackage.packageID, peerOrgs.size());
+
+        //
+        // Fan out the installs, with each org's approval chained on its own peers.
+        //
+        final List<CompletableFuture<Void>> approved = new ArrayList<>();
+        for (OrganizationConfig org : peerOrgs)
+        {
+            final List<CompletableFuture<Void>> orgInstalls = new ArrayList<>();
+            for (PeerConfig peer : org.peers)
+            {
+                orgInstalls.add(install(org, peer, ccPackage, installs, skipped));
+            }
+
+            final PeerConfig approver = org.peers.get(0);
+
+            approved.add(CompletableFuture.allOf(orgInstalls.toArray(new CompletableFuture[0]))
+                                          .thenCompose(v -> timed("approve for " + org.name,
+                                                                  org.name,
+                                                                  approvals,
+                                                                  runner.execute(org,
+                                                                                 approver,
+                                                                                 approveCommand(ccPackage, name, version, sequence)))));
+        }
+
+        CompletableFuture.allOf(approved.toArray(new CompletableFuture[0])).get();
+
+        //
+        // Commit once, through the first peer org, with an endorsement from the approving peer of every org.
+        //
+        final OrganizationConfig committer = peerOrgs.get(0);
+        final long commitStart = System.nanoTime();
+
+        check("commit", runner.execute(committer,
+                                       committer.peers.get(0),
+                                       commitCommand(name, version, sequence),
+                                       endorsers(peerOrgs)).get());
+
+        final Duration commit = Duration.ofNanos(System.nanoTime() - commitStart);
+
+        final Report report = new Report(Duration.ofNanos(System.nanoTime() - start),
+                                         new TreeMap<>(installs),
+                                         new TreeSet<>(skipped),
+                                         new TreeMap<>(approvals),
+                                         commit);
+
+        log.info("Deployed chaincode {} in {} ms", name, report.elapsed.toMillis());
+        for (Map.Entry<String, Duration> e : report.installs.entrySet())
+        {
+            log.info("  install {}: {} ms{}",
+                     e.getKey(),
+                     e.getValue().toMillis(),
+                     report.skipped.contains(e.getKey()) ? " (already installed)" : "");
+        }
+        for (Map.Entry<String, Duration> e : report.approvals.entrySet())
+        {
+            log.info("  approve {}: {} ms", e.getKey(), e.getValue().toMillis());
+        }
+        log.info("  commit: {} ms", report.commit.toMillis());
+
+        return report;
+    }
+
+    /**
+     * Query the peer's installed packages, installing only if the package ID is not already there.
+     */
+    private CompletableFuture<Void> install(final OrganizationConfig org,
+                                            final PeerConfig peer,
+                                            final ChaincodePackage ccPackage,
+                                            final Map<String, Duration> installs,
+                                            final Set<String> skipped)
+    {
+        final long start = System.nanoTime();
+
+        return runner.execute(org, peer, new PeerCommand("peer", "lifecycle", "chaincode", "queryinstalled"))
+                     .thenCompose(query ->
+                     {
+                         check("queryinstalled on " + peer.name, query);
+
+                         if (isInstalled(query, ccPackage.packageID))
+                         {
+                             log.info("Peer {} already has package {}", peer.name, ccPackage.packageID);
+                             skipped.add(peer.name);
+                             return CompletableFuture.completedFuture(query);
+                         }
+
+                         return runner.execute(org,
+                                               peer,
+                                               new PeerCommand("peer", "lifecycle", "chaincode", "install", PACKAGE_PATH),
+                                               ccPackage);
+                     })
+                     .thenAccept(result ->
+                     {
+                         check("install on " + peer.name, result);
+                         installs.put(peer.name, Duration.ofNanos(System.nanoTime() - start));
+                     });
+    }
+
+    private static CompletableFuture<Void> timed(final String step,
+                                                 final String key,
+                                                 final Map<String, Duration> timings,
+                                                 final CompletableFuture<JobResult> command)
+    {
+        final long start = System.nanoTime();
+
+        return command.thenAccept(result ->
+        {
+            check(step, result);
+            timings.put(key, Duration.ofNanos(System.nanoTime() - start));
+        });
+    }
+
+    private PeerCommand approveCommand(final ChaincodePackage ccPackage,
+                                       final String name,
+                                       final String version,
+                                       final int sequence)
+    {
+        return new PeerCommand("peer", "lifecycle",
+                               "chaincode", "approveformyorg",
+                               "-o", ordererAddress,
+                               "--channelID", channelID,
+                               "--name", name,
+                               "--version", version,
+                               "--package-id", ccPackage.packageID,
+                               "--sequence", String.valueOf(sequence),
+                               "--tls",
+                               "--cafile", ordererTLSCAFile);
+    }
+
+    /**
+     * The commit is endorsed by the approving (first) peer of each org, so that it meets the channel's
+     * LifecycleEndorsement policy (by default, a MAJORITY of the orgs.)
+     */
+    public PeerCommand commitCommand(final String name, final String version, final int sequence)
+    {
+        final List<String> command = new ArrayList<>(List.of("peer", "lifecycle",
+                                                             "chaincode", "commit",
+                                                             "-o", ordererAddress,
+                                                             "--channelID", channelID,
+                                                             "--name", name,
+                                                             "--version", version,
+                                                             "--sequence", String.valueOf(sequence),
+                                                             "--tls",
+                                                             "--cafile", ordererTLSCAFile));
+
+        for (OrganizationConfig org : peerOrgs())
+        {
+            final PeerConfig endorser = org.peers.get(0);
+
+            command.add("--peerAddresses");
+            command.add(endorser.environment.get("CORE_PEER_ADDRESS"));
+            command.add("--tlsRootCertFiles");
+            command.add(runner.tlsRootCertFile(org, endorser));
+        }
+
+        return new PeerCommand(command.toArray(new String[0]));
+    }
+
+    private List<OrganizationConfig> peerOrgs()
+    {
+        final List<OrganizationConfig> peerOrgs = new ArrayList<>();
+        for (OrganizationConfig org : network.organizations)
+        {
+            if (! org.peers.isEmpty())
+            {
+                peerOrgs.add(org);
+            }
+        }
+
+        if (peerOrgs.isEmpty())
+        {
+            throw new IllegalArgumentException("Network " + network.metadata.name + " has no peers");
+        }
+
+        return peerOrgs;
+    }
+
+    private static List<PeerConfig> endorsers(final List<OrganizationConfig> peerOrgs)
+    {
+        final List<PeerConfig> endorsers = new ArrayList<>();
+        for (OrganizationConfig org : peerOrgs)
+        {
+            endorsers.add(org.peers.get(0));
+        }
+
+        return endorsers;
+    }
+
+    /**
+     * queryinstalled prints a line "Package ID: label:hash, Label: label" for each installed package.
+     */
+    public static boolean isInstalled(final JobResult query, final String packageID)
+    {
+        for (String line : query.getLogs())
+        {
+            if (line.contains("Package ID: " + packageID + ","))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void check(final String step, final JobResult result)
+    {
+        if (result.getExitCode() != 0)
+        {
+            throw new IllegalStateException("Chaincode " + step + " failed with exit code " + result.getExitCode());
+        }
+    }
+}
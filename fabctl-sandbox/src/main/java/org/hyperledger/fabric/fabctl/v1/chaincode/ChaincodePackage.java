@@ -0,0 +1,175 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.chaincode;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.hyperledger.fabric.fabctl.v1.archive.TarGzWriter;
+
+/**
+ * A chaincode package archive (chaincode.tar.gz) built from a chaincode descriptor.
+ *
+ * The peer identifies an installed package as label:sha256(package bytes).  Since fabctl builds the package, the
+ * package ID can be computed here rather than scraped from the output of `peer lifecycle chaincode install`.  This
+ * means that the CCaaS deployment (which needs CHAINCODE_ID) can start before the install has completed.
+ *
+ * The archive is built deterministically (see TarGzWriter.)  The same descriptor always produces the same bytes, and
+ * therefore the same package ID, so rebuilding an unchanged chaincode never looks like a new package to the peer.
+ */
+public class ChaincodePackage
+{
+    public static final String ARCHIVE_NAME = "chaincode.tar.gz";
+
+    /**
+     * The full package ID is carried as an annotation: it has a ':' and is too long for a label value.
+     */
+    public static final String PACKAGE_ID_ANNOTATION = "chaincode-id";
+
+    /**
+     * Label values are limited to 63 characters, so the label carries a prefix of the package hash for selectors.
+     */
+    public static final String PACKAGE_HASH_LABEL = "chaincode-hash";
+
+    private static final int PACKAGE_HASH_LABEL_LENGTH = 32;
+
+    /**
+     * Bump this when the archive layout changes, invalidating any cached archives.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public final ChaincodeDescriptor descriptor;
+    public final byte[] archive;
+    public final String hash;
+    public final String packageID;
+
+    public ChaincodePackage(final ChaincodeDescriptor descriptor) throws IOException
+    {
+        this(descriptor, createChaincodeArchive(descriptor));
+    }
+
+    /**
+     * Wrap an archive previously built for the descriptor (e.g. from ChaincodePackageCache.)
+     */
+    ChaincodePackage(final ChaincodeDescriptor descriptor, final byte[] archive)
+    {
+        this.descriptor = descriptor;
+        this.archive = archive;
+        this.hash = DigestUtils.sha256Hex(archive);
+        this.packageID = descriptor.metadata.label + ":" + hash;
+    }
+
+    /**
+     * A hash over the descriptor fields that end up in the archive.  Descriptors with the same hash produce
+     * identical archives.
+     */
+    public static String descriptorHash(final ChaincodeDescriptor descriptor) throws IOException
+    {
+        final ObjectNode node = objectMapper.createObjectNode();
+        node.put("format", FORMAT_VERSION);
+        node.set("metadata", metadataJson(descriptor));
+        node.set("connection", connectionJson(descriptor));
+
+        return DigestUtils.sha256Hex(objectMapper.writeValueAsBytes(node));
+    }
+
+    /**
+     * Build a configmap with the embedded chaincode package archive, stamped with the package ID.
+     */
+    public ConfigMap buildConfigMap()
+    {
+        final Map<String, String> binaryData = new TreeMap<>();
+        binaryData.put(ARCHIVE_NAME, Base64.getEncoder().encodeToString(archive));
+
+        return new ConfigMapBuilder()
+                .withNewMetadata()
+                .withGenerateName(descriptor.metadata.name + "-")
+                .addToLabels("chaincode-type", descriptor.metadata.type)
+                .addToLabels("chaincode-name", descriptor.metadata.name)
+                .addToLabels("chaincode-label", descriptor.metadata.label)
+                .addToLabels(PACKAGE_HASH_LABEL, hash.substring(0, PACKAGE_HASH_LABEL_LENGTH))
+                .addToAnnotations(PACKAGE_ID_ANNOTATION, packageID)
+                .endMetadata()
+                .withBinaryData(binaryData)
+                .build();
+    }
+
+    /**
+     * Create a byte array for a tar.gz containing metadata.json and code.tar.gz (connection.json)
+     */
+    private static byte[] createChaincodeArchive(final ChaincodeDescriptor descriptor) throws IOException
+    {
+        final byte[] metaBytes =
+                objectMapper.writerWithDefaultPrettyPrinter()
+                            .writeValueAsBytes(metadataJson(descriptor));
+
+        final byte[] codeArchiveBytes = createCodeArchive(descriptor);
+
+        //
+        // cc.tgz:
+        //   metadata.json
+        //   code.tar.gz
+        //
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("metadata.json", metaBytes);
+        entries.put("code.tar.gz", codeArchiveBytes);
+
+        return TarGzWriter.write(entries);
+    }
+
+    /**
+     * Create a code.tar.gz archive containing connection.json
+     */
+    private static byte[] createCodeArchive(final ChaincodeDescriptor descriptor) throws IOException
+    {
+        final byte[] connectionBytes =
+                objectMapper.writerWithDefaultPrettyPrinter()
+                            .writeValueAsBytes(connectionJson(descriptor));
+
+        return TarGzWriter.write(Map.of("connection.json", connectionBytes));
+    }
+
+    /**
+     * metadata.json
+     */
+    private static ObjectNode metadataJson(final ChaincodeDescriptor descriptor)
+    {
+        final ObjectNode metadata = objectMapper.createObjectNode();
+        metadata.put("type", descriptor.metadata.type);
+        metadata.put("label", descriptor.metadata.label);
+
+        return metadata;
+    }
+
+    /**
+     * connection.json
+     * {
+     *   "address": "host.docker.internal:9999",
+     *   "dial_timeout": "10s",
+     *   "tls_required": false
+     * }
+     *
+     * todo: would it be better just to serialize descriptor.connection as json?
+     */
+    private static ObjectNode connectionJson(final ChaincodeDescriptor descriptor)
+    {
+        final ObjectNode connection = objectMapper.createObjectNode();
+        connection.put("address", descriptor.connection.address);
+        connection.put("dial_timeout", descriptor.connection.dial_timeout);
+        connection.put("tls_required", descriptor.connection.tls_required);
+
+        return connection;
+    }
+}
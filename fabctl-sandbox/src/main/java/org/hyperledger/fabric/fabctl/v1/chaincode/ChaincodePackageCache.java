@@ -0,0 +1,135 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.chaincode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A content-addressed cache of chaincode package archives, keyed by the descriptor hash.
+ *
+ * Archives are held in memory and, if a directory is provided, saved as [descriptor hash].tar.gz so that they
+ * survive across runs.  Re-deploying an unchanged chaincode re-uses the archive without rebuilding it.  Since the
+ * archive is deterministic, a rebuilt archive carries the same package ID as a cached one.
+ *
+ * Only the archive bytes are cached.  The descriptor hash covers what goes into the archive, not e.g. the chaincode
+ * name, so each package is wrapped around the caller's own descriptor.
+ */
+@Slf4j
+public class ChaincodePackageCache
+{
+    private final File directory;
+
+    private final Map<String, byte[]> archives = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * An in-memory cache.
+     */
+    public ChaincodePackageCache()
+    {
+        this(null);
+    }
+
+    public ChaincodePackageCache(final File directory)
+    {
+        this.directory = directory;
+    }
+
+    public ChaincodePackage get(final ChaincodeDescriptor descriptor) throws IOException
+    {
+        final String key = ChaincodePackage.descriptorHash(descriptor);
+
+        final byte[] cached = archives.get(key);
+        if (cached != null)
+        {
+            hits.incrementAndGet();
+            return new ChaincodePackage(descriptor, cached);
+        }
+
+        byte[] archive = load(key);
+        if (archive != null)
+        {
+            hits.incrementAndGet();
+        }
+        else
+        {
+            misses.incrementAndGet();
+            final ChaincodePackage ccPackage = new ChaincodePackage(descriptor);
+            save(key, ccPackage.archive);
+            archive = ccPackage.archive;
+
+            log.info("Built chaincode package {}", ccPackage.packageID);
+        }
+
+        final byte[] existing = archives.putIfAbsent(key, archive);
+        return new ChaincodePackage(descriptor, existing != null ? existing : archive);
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    private byte[] load(final String key) throws IOException
+    {
+        if (directory == null)
+        {
+            return null;
+        }
+
+        final Path path = archivePath(key);
+        if (! Files.isRegularFile(path))
+        {
+            return null;
+        }
+
+        return Files.readAllBytes(path);
+    }
+
+    /**
+     * Write to a temp file and move it into place, so a concurrent reader never sees a partial archive.
+     */
+    private void save(final String key, final byte[] archive) throws IOException
+    {
+        if (directory == null)
+        {
+            return;
+        }
+
+        Files.createDirectories(directory.toPath());
+
+        final Path temp = Files.createTempFile(directory.toPath(), key, ".tmp");
+        try
+        {
+            Files.write(temp, archive);
+            Files.move(temp, archivePath(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path archivePath(final String key)
+    {
+        return directory.toPath().resolve(key + ".tar.gz");
+    }
+}
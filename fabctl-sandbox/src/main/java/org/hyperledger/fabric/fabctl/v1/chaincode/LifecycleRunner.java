@@ -0,0 +1,46 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.chaincode;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.hyperledger.fabric.fabctl.v0.JobResult;
+import org.hyperledger.fabric.fabctl.v0.command.PeerCommand;
+import org.hyperledger.fabric.fabctl.v1.network.OrganizationConfig;
+import org.hyperledger.fabric.fabctl.v1.network.PeerConfig;
+
+/**
+ * Runs `peer lifecycle` admin commands for ChaincodeLifecycle.  The runner decides how a command reaches the peer
+ * (Job, warm shell, ...) and supplies the org admin context (environment + MSPs) for the target peer.
+ */
+public interface LifecycleRunner
+{
+    /**
+     * Run a peer admin command against a peer, in the admin context of the peer's organization.
+     */
+    CompletableFuture<JobResult> execute(OrganizationConfig org, PeerConfig peer, PeerCommand command);
+
+    /**
+     * As above, with the chaincode package archive available at ChaincodeLifecycle.PACKAGE_PATH.
+     */
+    CompletableFuture<JobResult> execute(OrganizationConfig org,
+                                         PeerConfig peer,
+                                         PeerCommand command,
+                                         ChaincodePackage ccPackage);
+
+    /**
+     * As above, with the TLS root certs of the endorsing peers available at tlsRootCertFile(...)
+     */
+    CompletableFuture<JobResult> execute(OrganizationConfig org,
+                                         PeerConfig peer,
+                                         PeerCommand command,
+                                         List<PeerConfig> endorsers);
+
+    /**
+     * Where a peer's TLS root cert is found when a command is run with the peer as an endorser.
+     */
+    String tlsRootCertFile(OrganizationConfig org, PeerConfig peer);
+}
@@ -0,0 +1,422 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.msp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.BinaryNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import io.fabric8.kubernetes.api.model.*;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.batch.v1.Job;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.hyperledger.fabric.fabctl.v0.Labels;
+
+/**
+ * A content-addressed store for the files in MSP descriptors, keyed by SHA-256.
+ *
+ * Every peer, orderer, and admin descriptor carries its own copy of the org's CA certs (cacerts/, tlscacerts/,
+ * tls/ca.crt, ...)  Interning a descriptor replaces each file with the hex digest of its contents, and the contents
+ * are held here exactly once.  Each distinct blob is uploaded to the namespace as a single, immutable config map
+ * (msp-blob-[sha256]) and projected into the msp-unfurl init container at BLOB_FOLDER, where the unfurler copies
+ * it into place.
+ *
+ * An interned descriptor is marked with refs: sha256.  Descriptors without the marker still carry their files
+ * inline, and the unfurler handles either form.
+ *
+ * The blobs may also be projected straight into the MSP folder structure (buildMSPVolume), skipping the unfurler.
+ *
+ * Blob config maps outlive the pods that mount them.  prune() deletes the ones that are no longer mounted.
+ */
+@Slf4j
+public class MSPBlobStore
+{
+    public static final String REFS_SHA256 = "sha256";
+
+    public static final String CONFIG_MAP_PREFIX = "msp-blob-";
+
+    /**
+     * The key of an interned yaml descriptor in its config map is [descriptor name].yaml
+     */
+    public static final String DESCRIPTOR_SUFFIX = ".yaml";
+
+    /**
+     * Where the msp-unfurl init container finds the blobs, one file per digest.
+     */
+    public static final String BLOB_FOLDER = "/var/hyperledger/fabric/msp-blobs";
+
+    private static final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
+
+    private static final YAMLMapper yamlMapper = new YAMLMapper();
+
+    private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+
+    /**
+     * namespace/digest for each blob known to be in the cluster.
+     */
+    private final Set<String> uploaded = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Render a descriptor with each file replaced by the digest of its content, adding the content to the store.
+     * Interning an interned descriptor returns it unchanged.
+     */
+    public MSPDescriptor intern(final MSPDescriptor descriptor)
+    {
+        if (REFS_SHA256.equals(descriptor.refs))
+        {
+            return descriptor;
+        }
+
+        return new MSPDescriptor(descriptor.name,
+                                 descriptor.id,
+                                 intern(descriptor.msp),
+                                 intern(descriptor.tls),
+                                 REFS_SHA256);
+    }
+
+    /**
+     * The distinct blobs referenced by a set of descriptors, in digest order.
+     */
+    public SortedSet<String> digests(final Collection<MSPDescriptor> descriptors)
+    {
+        final SortedSet<String> digests = new TreeSet<>();
+        for (MSPDescriptor descriptor : descriptors)
+        {
+            final MSPDescriptor interned = intern(descriptor);
+            collect(interned.msp, digests);
+            collect(interned.tls, digests);
+        }
+
+        return digests;
+    }
+
+    /**
+     * The SHA-256 of a descriptor's content:  its id, and the digest and path of each of its files (in sha256sum
+     * format, like the unfurler's manifest.)  Descriptors with the same digest unfurl to the same MSP folder.
+     */
+    public String digest(final MSPDescriptor descriptor)
+    {
+        final MSPDescriptor interned = intern(descriptor);
+
+        final StringBuilder manifest = new StringBuilder(interned.id).append('\n');
+        manifest(interned.id + "/msp", interned.msp, manifest);
+        manifest(interned.id + "/tls", interned.tls, manifest);
+
+        return DigestUtils.sha256Hex(manifest.toString());
+    }
+
+    public byte[] get(final String digest)
+    {
+        final byte[] blob = blobs.get(digest);
+        if (blob == null)
+        {
+            throw new IllegalArgumentException("No MSP blob with digest " + digest);
+        }
+
+        return blob;
+    }
+
+    public int size()
+    {
+        return blobs.size();
+    }
+
+    /**
+     * Create the config maps for any blobs referenced by the descriptors that this store has not already put in the
+     * client's namespace.  Blob config maps are immutable and never replaced:  the name is the content, so a blob
+     * that is already there (from an earlier run, or a concurrent upload) is simply a conflict on create.
+     */
+    public void upload(final KubernetesClient client, final Collection<MSPDescriptor> descriptors)
+    {
+        int created = 0;
+
+        for (String digest : digests(descriptors))
+        {
+            final String key = client.getNamespace() + "/" + digest;
+            if (uploaded.contains(key))
+            {
+                continue;
+            }
+
+            try
+            {
+                client.configMaps().create(buildConfigMap(digest));
+                created++;
+            }
+            catch (KubernetesClientException ex)
+            {
+                //
+                // Already in the namespace.  That's fine - it has the same content.
+                //
+                if (ex.getCode() != HttpURLConnection.HTTP_CONFLICT)
+                {
+                    throw ex;
+                }
+            }
+
+            uploaded.add(key);
+        }
+
+        if (created > 0)
+        {
+            log.info("Uploaded {} MSP blobs to namespace {}", created, client.getNamespace());
+        }
+    }
+
+    /**
+     * Delete the blob config maps in the client's namespace that nothing mounts any more:  those not referenced by
+     * a pod, by the pod template of a deployment or Job, or by the descriptors to keep (e.g. those of a command
+     * that has been submitted but has no pod yet.)  A blob that is deleted is uploaded again if it is needed later.
+     *
+     * @return the number of config maps deleted.
+     */
+    public int prune(final KubernetesClient client, final Collection<MSPDescriptor> keep)
+    {
+        final Set<String> inUse = new HashSet<>();
+        for (String digest : digests(keep))
+        {
+            inUse.add(configMapName(digest));
+        }
+
+        for (Deployment deployment : client.apps().deployments().list().getItems())
+        {
+            collect(deployment.getSpec().getTemplate().getSpec(), inUse);
+        }
+
+        for (Job job : client.batch().v1().jobs().list().getItems())
+        {
+            collect(job.getSpec().getTemplate().getSpec(), inUse);
+        }
+
+        for (Pod pod : client.pods().list().getItems())
+        {
+            collect(pod.getSpec(), inUse);
+        }
+
+        int deleted = 0;
+
+        for (ConfigMap cm : client.configMaps().withLabel(Labels.MANAGED_BY, Labels.FABCTL).list().getItems())
+        {
+            final String name = cm.getMetadata().getName();
+            if (! name.startsWith(CONFIG_MAP_PREFIX) || inUse.contains(name))
+            {
+                continue;
+            }
+
+            client.configMaps().withName(name).delete();
+            uploaded.remove(client.getNamespace() + "/" + name.substring(CONFIG_MAP_PREFIX.length()));
+            deleted++;
+        }
+
+        if (deleted > 0)
+        {
+            log.info("Deleted {} unused MSP blobs from namespace {}", deleted, client.getNamespace());
+        }
+
+        return deleted;
+    }
+
+    public ConfigMap buildConfigMap(final String digest)
+    {
+        return new ConfigMapBuilder()
+                .withNewMetadata()
+                .withName(configMapName(digest))
+                .addToLabels(Labels.MANAGED_BY, Labels.FABCTL)
+                .endMetadata()
+                .withImmutable(true)
+                .withBinaryData(Map.of(digest, Base64.getEncoder().encodeToString(get(digest))))
+                .build();
+    }
+
+    /**
+     * Build the immutable config map for a descriptor in yaml form, with its files interned.  The yaml is carried as
+     * binaryData, so the kubelet writes its UTF-8 bytes to the volume as they are.  The blobs it refers to are
+     * carried by their own config maps (see buildConfigMap(digest).)
+     */
+    public ConfigMap buildDescriptorConfigMap(final String name, final MSPDescriptor descriptor) throws IOException
+    {
+        final byte[] yaml = yamlMapper.writeValueAsBytes(intern(descriptor));
+
+        return new ConfigMapBuilder()
+                .withNewMetadata()
+                .withName(name)
+                .addToLabels(Labels.MANAGED_BY, Labels.FABCTL)
+                .endMetadata()
+                .withImmutable(true)
+                .withBinaryData(Map.of(descriptor.name + DESCRIPTOR_SUFFIX, Base64.getEncoder().encodeToString(yaml)))
+                .build();
+    }
+
+    /**
+     * Build a volume projecting every blob referenced by the descriptors into a single folder, to be mounted at
+     * BLOB_FOLDER in the msp-unfurl init container.
+     */
+    public Volume buildVolume(final String volumeName, final Collection<MSPDescriptor> descriptors)
+    {
+        final List<VolumeProjection> sources = new ArrayList<>();
+        for (String digest : digests(descriptors))
+        {
+            sources.add(new VolumeProjectionBuilder()
+                                .withNewConfigMap()
+                                .withName(configMapName(digest))
+                                .addNewItem()
+                                .withKey(digest)
+                                .withPath(digest)
+                                .endItem()
+                                .endConfigMap()
+                                .build());
+        }
+
+        return new VolumeBuilder()
+                .withName(volumeName)
+                .withNewProjected()
+                .withSources(sources)
+                .endProjected()
+                .build();
+    }
+
+    /**
+     * Build a volume projecting the MSP folder structure ([id]/msp/..., [id]/tls/...) of each descriptor straight
+     * from the blob config maps.  Mounted where the unfurler would write, this replaces the msp-unfurl init
+     * container.  See MSPDescriptor.toProjectedVolumeSource()
+     */
+    public Volume buildMSPVolume(final String volumeName, final Collection<MSPDescriptor> descriptors)
+    {
+        final List<VolumeProjection> sources = new ArrayList<>();
+        for (MSPDescriptor descriptor : descriptors)
+        {
+            sources.addAll(intern(descriptor).toProjectedVolumeSource().getSources());
+        }
+
+        return new VolumeBuilder()
+                .withName(volumeName)
+                .withNewProjected()
+                .withSources(sources)
+                .endProjected()
+                .build();
+    }
+
+    public static String configMapName(final String digest)
+    {
+        return CONFIG_MAP_PREFIX + digest;
+    }
+
+    private JsonNode intern(final JsonNode node)
+    {
+        if (node == null || node.isNull())
+        {
+            return node;
+        }
+
+        if (node.isBinary() || node.isTextual())
+        {
+            //
+            // Descriptors assembled by hand may still carry text.
+            //
+            final byte[] content = node.isBinary()
+                    ? ((BinaryNode) node).binaryValue()
+                    : node.textValue().getBytes(StandardCharsets.UTF_8);
+
+            final String digest = DigestUtils.sha256Hex(content);
+
+            //
+            // Keep a single array for each distinct content, so that identical certs are held once on the heap.
+            //
+            blobs.putIfAbsent(digest, content);
+
+            return nodeFactory.textNode(digest);
+        }
+
+        final ObjectNode interned = nodeFactory.objectNode();
+        final Iterator<Map.Entry<String, JsonNode>> i = node.fields();
+        while (i.hasNext())
+        {
+            final Map.Entry<String, JsonNode> e = i.next();
+            interned.set(e.getKey(), intern(e.getValue()));
+        }
+
+        return interned;
+    }
+
+    private static void manifest(final String path, final JsonNode node, final StringBuilder manifest)
+    {
+        if (node == null || node.isNull())
+        {
+            return;
+        }
+
+        if (node.isTextual())
+        {
+            manifest.append(node.textValue()).append("  ").append(path).append('\n');
+            return;
+        }
+
+        final Iterator<Map.Entry<String, JsonNode>> i = node.fields();
+        while (i.hasNext())
+        {
+            final Map.Entry<String, JsonNode> e = i.next();
+            manifest(path + "/" + e.getKey(), e.getValue(), manifest);
+        }
+    }
+
+    /**
+     * The config maps mounted by a pod, either directly or as projected volume sources.
+     */
+    private static void collect(final PodSpec spec, final Set<String> configMaps)
+    {
+        if (spec == null || spec.getVolumes() == null)
+        {
+            return;
+        }
+
+        for (Volume volume : spec.getVolumes())
+        {
+            if (volume.getConfigMap() != null)
+            {
+                configMaps.add(volume.getConfigMap().getName());
+            }
+
+            if (volume.getProjected() != null && volume.getProjected().getSources() != null)
+            {
+                for (VolumeProjection source : volume.getProjected().getSources())
+                {
+                    if (source.getConfigMap() != null)
+                    {
+                        configMaps.add(source.getConfigMap().getName());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void collect(final JsonNode node, final Set<String> digests)
+    {
+        if (node == null || node.isNull())
+        {
+            return;
+        }
+
+        if (node.isTextual())
+        {
+            digests.add(node.textValue());
+            return;
+        }
+
+        for (JsonNode child : node)
+        {
+            collect(child, digests);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.msp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Function;
+import org.hyperledger.fabric.fabctl.v0.Labels;
+import org.hyperledger.fabric.fabctl.v1.archive.TarGzWriter;
+
+/**
+ * An MSP bundle is a single tar.gz of an identity's MSP folder structure:
+ *
+ * <pre>
+ *   [id]/msp/cacerts/...
+ *   [id]/msp/keystore/...
+ *   ...
+ *   [id]/tls/ca.crt
+ *   ...
+ * </pre>
+ *
+ * The bundle is stored as one binaryData key ([name].tar.gz) in the identity's config map, and the msp-unfurler
+ * extracts it in a single sequential stream.  Compared with the yaml descriptor (base64 scalars in a yaml tree,)
+ * the config map is several times smaller.
+ *
+ * Like the chaincode package, the archive is byte-stable (see TarGzWriter):  the same descriptor always produces
+ * the same bundle.
+ */
+public class MSPBundle
+{
+    public static final String SUFFIX = ".tar.gz";
+
+    /**
+     * Bundle a descriptor that carries its files inline.
+     */
+    public static byte[] build(final MSPDescriptor descriptor) throws IOException
+    {
+        return build(descriptor, digest ->
+        {
+            throw new IllegalArgumentException("Descriptor " + descriptor.name + " refers to blobs by digest");
+        });
+    }
+
+    /**
+     * Bundle a descriptor, resolving any blob references (e.g. MSPBlobStore::get)
+     */
+    public static byte[] build(final MSPDescriptor descriptor, final Function<String, byte[]> blobs)
+            throws IOException
+    {
+        final boolean refs = MSPBlobStore.REFS_SHA256.equals(descriptor.refs);
+
+        try (TarGzWriter writer = new TarGzWriter())
+        {
+            write(writer, descriptor.id + "/msp", descriptor.msp, refs ? blobs : null);
+            write(writer, descriptor.id + "/tls", descriptor.tls, refs ? blobs : null);
+
+            return writer.finish();
+        }
+    }
+
+    /**
+     * The bundle is carried under a single key, named for the descriptor.
+     */
+    public static ConfigMap buildConfigMap(final MSPDescriptor descriptor, final byte[] bundle)
+    {
+        return buildConfigMap(descriptor.name, descriptor, bundle);
+    }
+
+    /**
+     * Build the config map under another name (e.g. one naming its content.)  The key is still named for the
+     * descriptor.
+     */
+    public static ConfigMap buildConfigMap(final String name, final MSPDescriptor descriptor, final byte[] bundle)
+    {
+        return buildConfigMap(name, descriptor, bundle, true);
+    }
+
+    /**
+     * A mutable config map may be updated in place, e.g. to rotate the certificates of a pod running the
+     * msp-unfurler as a watching sidecar.  The bundle carries its own files, so the pod needs no other volume to
+     * pick up the change.
+     */
+    public static ConfigMap buildConfigMap(final String name,
+                                           final MSPDescriptor descriptor,
+                                           final byte[] bundle,
+                                           final boolean immutable)
+    {
+        return new ConfigMapBuilder()
+                .withNewMetadata()
+                .withName(name)
+                .addToLabels(Labels.MANAGED_BY, Labels.FABCTL)
+                .endMetadata()
+                .withImmutable(immutable ? Boolean.TRUE : null)
+                .withBinaryData(Map.of(descriptor.name + SUFFIX, Base64.getEncoder().encodeToString(bundle)))
+                .build();
+    }
+
+    private static void write(final TarGzWriter writer,
+                              final String path,
+                              final JsonNode node,
+                              final Function<String, byte[]> blobs)
+            throws IOException
+    {
+        if (node == null || node.isNull())
+        {
+            return;
+        }
+
+        if (node.isObject())
+        {
+            final Iterator<Map.Entry<String, JsonNode>> i = node.fields();
+            while (i.hasNext())
+            {
+                final Map.Entry<String, JsonNode> e = i.next();
+                write(writer, path + "/" + e.getKey(), e.getValue(), blobs);
+            }
+
+            return;
+        }
+
+        final byte[] content;
+        if (blobs != null)
+        {
+            content = blobs.apply(node.textValue());
+        }
+        else if (node.isBinary())
+        {
+            content = node.binaryValue();
+        }
+        else if (node.isTextual())
+        {
+            content = node.textValue().getBytes(StandardCharsets.UTF_8);
+        }
+        else
+        {
+            throw new IllegalArgumentException("can not bundle node " + path);
+        }
+
+        writer.add(path, content);
+    }
+}
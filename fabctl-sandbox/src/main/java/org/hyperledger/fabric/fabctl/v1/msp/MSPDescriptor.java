@@ -5,65 +5,143 @@
  */
 package org.hyperledger.fabric.fabctl.v1.msp;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import java.io.ByteArrayOutputStream;
+import io.fabric8.kubernetes.api.model.KeyToPath;
+import io.fabric8.kubernetes.api.model.KeyToPathBuilder;
+import io.fabric8.kubernetes.api.model.ProjectedVolumeSource;
+import io.fabric8.kubernetes.api.model.ProjectedVolumeSourceBuilder;
+import io.fabric8.kubernetes.api.model.VolumeProjection;
+import io.fabric8.kubernetes.api.model.VolumeProjectionBuilder;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import lombok.Data;
-import org.apache.commons.compress.utils.IOUtils;
 
 /**
  * An MSP descriptor is a json / yaml rendering of an MSP folder structure
  *
+ * File contents are binary nodes, carrying the raw bytes from disk.  In yaml they are written as !!binary (base64)
+ * scalars, which the unfurler writes back to disk without any charset conversion.
+ *
  * Still stirring the pot.  Nothing final in here...
  */
 @Data
+@JsonPropertyOrder({ "name", "id", "refs", "msp", "tls" })   // the unfurler streams msp and tls once it has id and refs
 public class MSPDescriptor
 {
-    private static final ObjectMapper objectMapper = new ObjectMapper();
-
     public final String name;
     public final String id;
     public final JsonNode msp;
     public final JsonNode tls;
 
+    /**
+     * When set (see MSPBlobStore), files are references to blobs by digest rather than inline content.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public final String refs;
+
+    /**
+     * Read an MSP folder (msp/ and tls/) into a descriptor.  See MSPDescriptorLoader for loading many at once.
+     */
     public MSPDescriptor(final String name, final File basedir) throws IOException
+    {
+        this(name,
+             basedir.getName(),
+             MSPDescriptorLoader.walk(basedir.toPath().resolve("msp")),
+             MSPDescriptorLoader.walk(basedir.toPath().resolve("tls")));
+    }
+
+    public MSPDescriptor(final String name, final String id, final JsonNode msp, final JsonNode tls)
+    {
+        this(name, id, msp, tls, null);
+    }
+
+    public MSPDescriptor(final String name,
+                         final String id,
+                         final JsonNode msp,
+                         final JsonNode tls,
+                         final String refs)
     {
         this.name = name;
-        this.id = basedir.getName();
-        this.msp = helper(new File(basedir, "msp"));
-        this.tls = helper(new File(basedir, "tls"));
+        this.id = id;
+        this.msp = msp;
+        this.tls = tls;
+        this.refs = refs;
+    }
+
+    /**
+     * Render the descriptor as a single tar.gz bundle.  See MSPBundle.
+     */
+    public byte[] toBundle() throws IOException
+    {
+        return MSPBundle.build(this);
     }
 
-    private JsonNode helper(final File f) throws IOException
+    /**
+     * Project the descriptor's files straight into a volume, with no need to unfurl them.  Each file is an item
+     * of its blob's config map (see MSPBlobStore) with a path of [id]/msp/... or [id]/tls/..., so the kubelet
+     * materializes the same folder structure as the unfurler.
+     *
+     * Only an interned descriptor can be projected.  Empty folders are not materialized.
+     */
+    public ProjectedVolumeSource toProjectedVolumeSource()
     {
-        if (! f.exists())
+        if (! MSPBlobStore.REFS_SHA256.equals(refs))
         {
-            // e.g.. no 'tls' folder under root folder.
-            return null;
+            throw new IllegalArgumentException("Descriptor " + name + " must be interned to be projected");
         }
-        else if (f.isDirectory())
+
+        //
+        // digest -> paths.  Files with the same content (e.g. cacerts and tls/ca.crt) share a single source.
+        //
+        final Map<String, List<KeyToPath>> items = new TreeMap<>();
+        collect(id + "/msp", msp, items);
+        collect(id + "/tls", tls, items);
+
+        final List<VolumeProjection> sources = new ArrayList<>();
+        for (Map.Entry<String, List<KeyToPath>> e : items.entrySet())
         {
-            final ObjectNode node = objectMapper.createObjectNode();
+            sources.add(new VolumeProjectionBuilder()
+                                .withNewConfigMap()
+                                .withName(MSPBlobStore.configMapName(e.getKey()))
+                                .withItems(e.getValue())
+                                .endConfigMap()
+                                .build());
+        }
 
-            for (File child : f.listFiles())
-            {
-                node.set(child.getName(), helper(child));
-            }
+        return new ProjectedVolumeSourceBuilder()
+                .withSources(sources)
+                .build();
+    }
 
-            return node;
+    private static void collect(final String path, final JsonNode node, final Map<String, List<KeyToPath>> items)
+    {
+        if (node == null || node.isNull())
+        {
+            return;
         }
-        else
+
+        if (node.isTextual())
+        {
+            items.computeIfAbsent(node.textValue(), digest -> new ArrayList<>())
+                 .add(new KeyToPathBuilder()
+                              .withKey(node.textValue())
+                              .withPath(path)
+                              .build());
+            return;
+        }
+
+        final Iterator<Map.Entry<String, JsonNode>> i = node.fields();
+        while (i.hasNext())
         {
-            // copy file contents directly as a string.  maybe need some b64 encoding here?
-            try (final ByteArrayOutputStream baos = new ByteArrayOutputStream())
-            {
-                IOUtils.copy(f, baos);
-                return objectMapper.getNodeFactory().textNode(baos.toString(Charset.defaultCharset()));
-            }
+            final Map.Entry<String, JsonNode> e = i.next();
+            collect(path + "/" + e.getKey(), e.getValue(), items);
         }
     }
 }
@@ -0,0 +1,183 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.msp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Build MSP descriptors from local MSP folders with NIO, capturing many descriptors in parallel.
+ *
+ * Each folder is walked once with Files.walkFileTree, and each file is read directly into a byte array.  File
+ * contents are never decoded:  keys, keystores, and other binary assets are carried exactly as they are on disk.
+ * Directory entries are sorted by name, so the same folder always renders the same descriptor.
+ */
+@Slf4j
+public class MSPDescriptorLoader implements AutoCloseable
+{
+    private static final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
+
+    private final ExecutorService executor;
+
+    public MSPDescriptorLoader(final int parallelism)
+    {
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable ->
+        {
+            final Thread thread = new Thread(runnable, "fabctl-msp-loader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Load a descriptor on the loader's pool.
+     */
+    public CompletableFuture<MSPDescriptor> submit(final String name, final File basedir)
+    {
+        return CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return load(name, basedir.toPath());
+            }
+            catch (IOException ex)
+            {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    /**
+     * Load a set of descriptors (name -> MSP base folder) in parallel, returning them in the same order.
+     */
+    public Map<String, MSPDescriptor> loadAll(final Map<String, File> folders) throws IOException
+    {
+        final long start = System.currentTimeMillis();
+
+        final Map<String, CompletableFuture<MSPDescriptor>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, File> e : folders.entrySet())
+        {
+            futures.put(e.getKey(), submit(e.getKey(), e.getValue()));
+        }
+
+        final Map<String, MSPDescriptor> descriptors = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<MSPDescriptor>> e : futures.entrySet())
+        {
+            try
+            {
+                descriptors.put(e.getKey(), e.getValue().join());
+            }
+            catch (CompletionException ex)
+            {
+                if (ex.getCause() instanceof IOException)
+                {
+                    throw (IOException) ex.getCause();
+                }
+
+                throw ex;
+            }
+        }
+
+        log.info("Loaded {} MSP descriptors in {} ms", descriptors.size(), System.currentTimeMillis() - start);
+
+        return descriptors;
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Load a single descriptor on the calling thread.
+     */
+    public static MSPDescriptor load(final String name, final Path basedir) throws IOException
+    {
+        return new MSPDescriptor(name,
+                                 basedir.getFileName().toString(),
+                                 walk(basedir.resolve("msp")),
+                                 walk(basedir.resolve("tls")));
+    }
+
+    /**
+     * Render a folder as a tree of object nodes, with file contents as binary leaves.
+     */
+    static JsonNode walk(final Path root) throws IOException
+    {
+        if (! Files.exists(root))
+        {
+            // e.g.. no 'tls' folder under root folder.
+            return null;
+        }
+
+        if (! Files.isDirectory(root))
+        {
+            return nodeFactory.binaryNode(Files.readAllBytes(root));
+        }
+
+        final Deque<SortedMap<String, JsonNode>> stack = new ArrayDeque<>();
+        final ObjectNode[] result = new ObjectNode[1];
+
+        //
+        // Follow links, as File.isDirectory() / File.listFiles() did.
+        //
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+            {
+                stack.push(new TreeMap<>());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException
+            {
+                stack.peek().put(file.getFileName().toString(), nodeFactory.binaryNode(Files.readAllBytes(file)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException ex) throws IOException
+            {
+                if (ex != null)
+                {
+                    throw ex;
+                }
+
+                final ObjectNode node = nodeFactory.objectNode();
+                node.setAll(stack.pop());
+
+                if (stack.isEmpty())
+                {
+                    result[0] = node;
+                }
+                else
+                {
+                    stack.peek().put(dir.getFileName().toString(), node);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return result[0];
+    }
+}
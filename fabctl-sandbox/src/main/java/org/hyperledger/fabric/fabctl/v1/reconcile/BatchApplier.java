@@ -0,0 +1,287 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.reconcile;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Write a batch of resources with server-side apply, concurrently, on a bounded pool.
+ *
+ * Each resource is sent as a single apply patch (field manager "fabctl") rather than a get + create / replace, so
+ * the same request covers a new resource and an update, and fabctl manages the fields of the resources it creates
+ * as well as those it updates.  With the whole batch in flight at once, a batch of N resources takes about
+ * N / parallelism round trips instead of N.
+ *
+ * The patch is sent on the client's HTTP connection rather than through patch() in the resource DSL:  the 5.x
+ * client reads the resource before patching it, failing with a 404 for a new resource, and its create() can not
+ * name a field manager.
+ *
+ * The apply is forced:  fabctl owns the fields it renders, and takes them back from anyone who has edited them by
+ * hand (kubectl edit, scale, ...)  Fields that fabctl does not render are left alone.
+ *
+ * A failure does not stop the batch.  The report carries the outcome of every resource.
+ */
+@Slf4j
+public class BatchApplier implements AutoCloseable
+{
+    public static final String FIELD_MANAGER = "fabctl";
+
+    private static final MediaType APPLY_PATCH = MediaType.parse("application/apply-patch+yaml");
+
+    /**
+     * The API path of each kind of resource that can be applied, by namespace.
+     */
+    private static final Map<String, String> COLLECTIONS =
+            Map.of("ConfigMap", "api/v1/namespaces/%s/configmaps",
+                   "Service", "api/v1/namespaces/%s/services",
+                   "Deployment", "apis/apps/v1/namespaces/%s/deployments");
+
+    public enum Status
+    {
+        APPLIED,
+        DELETED,
+        FAILED
+    }
+
+    @Data
+    public static class Outcome
+    {
+        public final String key;
+        public final Status status;
+
+        /**
+         * The resource as returned by the server, if it was applied.
+         */
+        public final HasMetadata resource;
+
+        public final Exception error;
+        public final Duration elapsed;
+    }
+
+    @Data
+    public static class Report
+    {
+        public final Duration elapsed;
+        public final Map<String, Outcome> outcomes;
+
+        public List<Outcome> getFailures()
+        {
+            final List<Outcome> failures = new ArrayList<>();
+            for (Outcome outcome : outcomes.values())
+            {
+                if (outcome.status == Status.FAILED)
+                {
+                    failures.add(outcome);
+                }
+            }
+
+            return failures;
+        }
+
+        /**
+         * Throw if any resource in the batch failed, with the first failure as the cause.
+         */
+        public Report check()
+        {
+            final List<Outcome> failures = getFailures();
+            if (failures.isEmpty())
+            {
+                return this;
+            }
+
+            final IllegalStateException ex =
+                    new IllegalStateException(failures.size() + " of " + outcomes.size()
+                                              + " resources failed to apply, starting with " + failures.get(0).key,
+                                              failures.get(0).error);
+
+            for (Outcome failure : failures.subList(1, failures.size()))
+            {
+                ex.addSuppressed(failure.error);
+            }
+
+            throw ex;
+        }
+
+        /**
+         * The server's copy of an applied resource.
+         */
+        @SuppressWarnings("unchecked")
+        public <T extends HasMetadata> T applied(final T resource)
+        {
+            final Outcome outcome = outcomes.get(key(resource));
+            return outcome == null ? null : (T) outcome.resource;
+        }
+    }
+
+    private final KubernetesClient client;
+    private final OkHttpClient httpClient;
+    private final ExecutorService executor;
+
+    public BatchApplier(final KubernetesClient client, final int parallelism)
+    {
+        this.client = client;
+        this.httpClient = ((HttpClientAware) client).getHttpClient();
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable ->
+        {
+            final Thread thread = new Thread(runnable, "fabctl-apply-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Server-side apply each resource, returning when all of them have been applied or failed.
+     */
+    public Report apply(final Collection<? extends HasMetadata> resources)
+    {
+        return run(Status.APPLIED, resources, this::apply);
+    }
+
+    /**
+     * Delete each resource, returning when all of them have been deleted or failed.
+     */
+    public Report delete(final Collection<? extends HasMetadata> resources)
+    {
+        return run(Status.DELETED, resources, resource ->
+        {
+            client.resource(resource).inNamespace(client.getNamespace()).delete();
+            return null;
+        });
+    }
+
+    /**
+     * Server-side apply a single resource on the calling thread, creating it if it is not there yet.
+     */
+    public HasMetadata apply(final HasMetadata resource) throws IOException
+    {
+        final String collection = COLLECTIONS.get(resource.getKind());
+        if (collection == null)
+        {
+            throw new IllegalArgumentException("Can not apply a " + resource.getKind());
+        }
+
+        final HttpUrl url =
+                HttpUrl.parse(client.getMasterUrl().toString())
+                       .newBuilder()
+                       .addPathSegments(String.format(collection, client.getNamespace()))
+                       .addPathSegment(resource.getMetadata().getName())
+                       .addQueryParameter("fieldManager", FIELD_MANAGER)
+                       .addQueryParameter("force", "true")
+                       .build();
+
+        //
+        // Json is yaml.
+        //
+        final Request request =
+                new Request.Builder()
+                        .url(url)
+                        .patch(RequestBody.create(APPLY_PATCH, Serialization.asJson(resource)))
+                        .build();
+
+        try (final Response response = httpClient.newCall(request).execute())
+        {
+            final String body = response.body() == null ? "" : response.body().string();
+            if (! response.isSuccessful())
+            {
+                throw new KubernetesClientException("Apply of " + key(resource) + " failed with HTTP "
+                                                    + response.code() + ": " + body,
+                                                    response.code(),
+                                                    null);
+            }
+
+            return Serialization.unmarshal(body, resource.getClass());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operation
+    {
+        HasMetadata run(HasMetadata resource) throws Exception;
+    }
+
+    private Report run(final Status status,
+                       final Collection<? extends HasMetadata> resources,
+                       final Operation operation)
+    {
+        final long start = System.nanoTime();
+
+        final Map<String, CompletableFuture<Outcome>> futures = new LinkedHashMap<>();
+        for (HasMetadata resource : resources)
+        {
+            futures.put(key(resource), CompletableFuture.supplyAsync(() ->
+            {
+                final long begin = System.nanoTime();
+                try
+                {
+                    final HasMetadata result = operation.run(resource);
+                    return new Outcome(key(resource), status, result, null, since(begin));
+                }
+                catch (Exception ex)
+                {
+                    log.warn("{} failed for {}: {}", status, key(resource), ex.getMessage());
+                    return new Outcome(key(resource), Status.FAILED, null, ex, since(begin));
+                }
+            }, executor));
+        }
+
+        final Map<String, Outcome> outcomes = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<Outcome>> e : futures.entrySet())
+        {
+            outcomes.put(e.getKey(), e.getValue().join());
+        }
+
+        final Report report = new Report(since(start), outcomes);
+
+        log.info("{} {} resources in {} ms with {} failures",
+                 status,
+                 outcomes.size(),
+                 report.elapsed.toMillis(),
+                 report.getFailures().size());
+
+        return report;
+    }
+
+    private static Duration since(final long nanos)
+    {
+        return Duration.ofNanos(System.nanoTime() - nanos);
+    }
+
+    static String key(final HasMetadata resource)
+    {
+        return resource.getClass().getSimpleName() + "/" + resource.getMetadata().getName();
+    }
+}
@@ -0,0 +1,34 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.reconcile;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import java.util.List;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
+import org.hyperledger.fabric.fabctl.v1.network.OrdererConfig;
+import org.hyperledger.fabric.fabctl.v1.network.PeerConfig;
+
+/**
+ * The k8s resources making up each part of a network.  Building a manifest must not touch the cluster:  the
+ * NetworkReconciler decides which of them need to be written.
+ */
+public interface NetworkManifests
+{
+    /**
+     * The config maps carrying an MSP context, including any blobs the descriptor refers to.
+     */
+    List<HasMetadata> buildMSP(MSPDescriptor msp) throws Exception;
+
+    /**
+     * The orderer's deployment and service.
+     */
+    List<HasMetadata> buildOrderer(OrdererConfig orderer) throws Exception;
+
+    /**
+     * The peer's deployment and service.
+     */
+    List<HasMetadata> buildPeer(PeerConfig peer) throws Exception;
+}
@@ -0,0 +1,471 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.reconcile;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.base.OperationContext;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.informers.SharedInformerFactory;
+import io.fabric8.kubernetes.client.informers.cache.Lister;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.hyperledger.fabric.fabctl.v0.Labels;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
+import org.hyperledger.fabric.fabctl.v1.network.NetworkConfig;
+import org.hyperledger.fabric.fabctl.v1.network.OrdererConfig;
+import org.hyperledger.fabric.fabctl.v1.network.OrganizationConfig;
+import org.hyperledger.fabric.fabctl.v1.network.PeerConfig;
+
+/**
+ * Bring the cluster in line with a NetworkConfig, writing only the resources that differ.
+ *
+ * The current state is read from label-selected informer caches (config maps, deployments and services marked
+ * managed-by=fabctl), not from a round of GETs.  Each desired resource is stamped with the SHA-256 of its rendered
+ * spec, and a resource is only written when it is missing from the cache or its stamp differs.  Adding one peer to
+ * a 50 peer network writes the peer's deployment, service and MSP config map, and nothing else.
+ *
+ * Resources are also labeled with the network name.  A deployment or service carrying the label that is no longer
+ * in the network is deleted.  MSP config maps and blobs are immutable and named for their content, so they are
+ * never updated, and are left in place when no longer in use:  a rolling pod may still refer to them.  (Unmounted
+ * blobs are deleted by MSPBlobStore.prune.)  A mutable config map (e.g. one watched by an msp-unfurler sidecar) is
+ * updated in place when its content changes.
+ *
+ * Changes are written with server-side apply, in concurrent batches (see BatchApplier.)
+ *
+ * The reconciler covers the long-running parts of the network.  The genesis block and fabric-config are still
+ * created by NetworkBootstrap on the first run.
+ */
+@Slf4j
+public class NetworkReconciler implements AutoCloseable
+{
+    /**
+     * The SHA-256 of the resource as rendered, before any stamps were applied.
+     */
+    public static final String SPEC_HASH = "fabctl.hyperledger.org/spec-hash";
+
+    private static final long RESYNC_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Duration SYNC_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * Plans list changes in this order:  pods need their config maps, and a service is cheap.  Deletes run in reverse.
+     */
+    private static final List<String> KINDS = List.of("ConfigMap", "Service", "Deployment");
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public enum Action
+    {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+
+    @Data
+    public static class Change
+    {
+        public final Action action;
+        public final HasMetadata resource;
+    }
+
+    @Data
+    public static class Plan
+    {
+        public final String network;
+        public final List<Change> changes;
+        public final int unchanged;
+
+        public boolean isEmpty()
+        {
+            return changes.isEmpty();
+        }
+
+        public int count(final Action action)
+        {
+            return (int) changes.stream().filter(c -> c.action == action).count();
+        }
+
+        /**
+         * The deployments created or updated by the plan:  these are the ones to wait on after applying it.
+         */
+        public List<Deployment> getRollouts()
+        {
+            final List<Deployment> rollouts = new ArrayList<>();
+            for (Change change : changes)
+            {
+                if (change.action != Action.DELETE && change.resource instanceof Deployment)
+                {
+                    rollouts.add((Deployment) change.resource);
+                }
+            }
+
+            return rollouts;
+        }
+    }
+
+    private final KubernetesClient client;
+    private final NetworkManifests manifests;
+    private final BatchApplier applier;
+
+    private final SharedInformerFactory factory;
+    private final List<SharedIndexInformer<? extends HasMetadata>> informers = new ArrayList<>();
+    private final List<Lister<? extends HasMetadata>> listers = new ArrayList<>();
+
+    public NetworkReconciler(final KubernetesClient client,
+                             final NetworkManifests manifests,
+                             final BatchApplier applier)
+    {
+        this.client = client;
+        this.manifests = manifests;
+        this.applier = applier;
+
+        log.info("Starting reconciler informers in namespace {}", client.getNamespace());
+
+        this.factory = client.informers();
+
+        informers.add(factory.sharedIndexInformerFor(ConfigMap.class, context(), RESYNC_PERIOD));
+        informers.add(factory.sharedIndexInformerFor(Deployment.class, context(), RESYNC_PERIOD));
+        informers.add(factory.sharedIndexInformerFor(Service.class, context(), RESYNC_PERIOD));
+
+        factory.startAllRegisteredInformers();
+
+        for (SharedIndexInformer<? extends HasMetadata> informer : informers)
+        {
+            listers.add(new Lister<>(informer.getIndexer(), client.getNamespace()));
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        factory.stopAllRegisteredInformers();
+    }
+
+    /**
+     * Plan and apply the changes for a network.
+     */
+    public Plan reconcile(final NetworkConfig network) throws Exception
+    {
+        final Plan plan = plan(network);
+        apply(plan);
+
+        return plan;
+    }
+
+    /**
+     * Compare the network's resources with the informer caches.  This does not write to the cluster.
+     */
+    public Plan plan(final NetworkConfig network) throws Exception
+    {
+        awaitSync();
+
+        final List<HasMetadata> current = new ArrayList<>();
+        for (Lister<? extends HasMetadata> lister : listers)
+        {
+            current.addAll(lister.list());
+        }
+
+        final Plan plan = diff(network.metadata.name, render(network, manifests), current);
+
+        log.info("Network {}: {} to create, {} to update, {} to delete, {} unchanged",
+                 plan.network,
+                 plan.count(Action.CREATE),
+                 plan.count(Action.UPDATE),
+                 plan.count(Action.DELETE),
+                 plan.unchanged);
+
+        return plan;
+    }
+
+    /**
+     * Write the changes in three batches:  config maps, then deployments and services, then deletes.  Creates and
+     * updates are both server-side applies, so a cache that is a step behind the cluster does no harm.
+     */
+    public void apply(final Plan plan)
+    {
+        final long start = System.currentTimeMillis();
+
+        final List<HasMetadata> configMaps = new ArrayList<>();
+        final List<HasMetadata> nodes = new ArrayList<>();
+        final List<HasMetadata> deletes = new ArrayList<>();
+
+        for (Change change : plan.changes)
+        {
+            log.info("{} {}", change.action, key(change.resource));
+
+            if (change.action == Action.DELETE)
+            {
+                deletes.add(change.resource);
+            }
+            else if (change.resource instanceof ConfigMap)
+            {
+                configMaps.add(change.resource);
+            }
+            else
+            {
+                nodes.add(change.resource);
+            }
+        }
+
+        if (! configMaps.isEmpty())
+        {
+            applier.apply(configMaps).check();
+        }
+
+        if (! nodes.isEmpty())
+        {
+            applier.apply(nodes).check();
+        }
+
+        if (! deletes.isEmpty())
+        {
+            applier.delete(deletes).check();
+        }
+
+        log.info("Applied {} changes to network {} in {} ms",
+                 plan.changes.size(),
+                 plan.network,
+                 System.currentTimeMillis() - start);
+    }
+
+    /**
+     * All of the resources for a network, without duplicates:  an MSP context or blob may be in scope for several
+     * nodes, but it is one resource.
+     */
+    public static List<HasMetadata> render(final NetworkConfig network, final NetworkManifests manifests)
+            throws Exception
+    {
+        final Map<String, MSPDescriptor> msps = new LinkedHashMap<>();
+        for (OrganizationConfig org : network.organizations)
+        {
+            collect(msps, org.msps);
+
+            for (OrdererConfig orderer : org.orderers)
+            {
+                collect(msps, orderer.msps);
+            }
+
+            for (PeerConfig peer : org.peers)
+            {
+                collect(msps, peer.msps);
+            }
+        }
+
+        final Map<String, HasMetadata> resources = new LinkedHashMap<>();
+
+        for (MSPDescriptor msp : msps.values())
+        {
+            collect(resources, manifests.buildMSP(msp));
+        }
+
+        for (OrganizationConfig org : network.organizations)
+        {
+            for (OrdererConfig orderer : org.orderers)
+            {
+                collect(resources, manifests.buildOrderer(orderer));
+            }
+
+            for (PeerConfig peer : org.peers)
+            {
+                collect(resources, manifests.buildPeer(peer));
+            }
+        }
+
+        return new ArrayList<>(resources.values());
+    }
+
+    /**
+     * Compute the changes taking the current resources to the desired ones.  The desired resources are stamped with
+     * their spec hash and network label, ready to be written.
+     */
+    public static Plan diff(final String network,
+                            final Collection<HasMetadata> desired,
+                            final Collection<? extends HasMetadata> current)
+    {
+        final Map<String, HasMetadata> existing = new HashMap<>();
+        for (HasMetadata resource : current)
+        {
+            existing.put(key(resource), resource);
+        }
+
+        final List<Change> changes = new ArrayList<>();
+        int unchanged = 0;
+
+        for (HasMetadata resource : desired)
+        {
+            final String hash = annotation(stamp(network, resource), SPEC_HASH);
+
+            final HasMetadata found = existing.remove(key(resource));
+            if (found == null)
+            {
+                changes.add(new Change(Action.CREATE, resource));
+            }
+            else if (isImmutable(found) || hash.equals(annotation(found, SPEC_HASH)))
+            {
+                unchanged++;
+            }
+            else
+            {
+                changes.add(new Change(Action.UPDATE, resource));
+            }
+        }
+
+        //
+        // Whatever is left over was written for this network, but is no longer part of it.
+        //
+        final List<Change> deletes = new ArrayList<>();
+        for (HasMetadata resource : existing.values())
+        {
+            if (network.equals(label(resource, Labels.NETWORK)) && ! isImmutable(resource))
+            {
+                deletes.add(new Change(Action.DELETE, resource));
+            }
+        }
+
+        final Comparator<Change> byKind = Comparator.comparingInt(c -> KINDS.indexOf(kind(c.resource)));
+
+        changes.sort(byKind);
+        deletes.sort(byKind.reversed());
+        changes.addAll(deletes);
+
+        return new Plan(network, changes, unchanged);
+    }
+
+    /**
+     * Label a freshly built resource with its network and spec hash, as the reconciler writes it.  A resource created
+     * outside of the reconciler (e.g. by NetworkBootstrap) and stamped in the same way is not rewritten on the next
+     * reconcile.
+     */
+    public static <T extends HasMetadata> T stamp(final String network, final T resource)
+    {
+        stamp(resource, network, specHash(resource));
+
+        return resource;
+    }
+
+    public static String specHash(final HasMetadata resource)
+    {
+        try
+        {
+            return DigestUtils.sha256Hex(objectMapper.writeValueAsBytes(resource));
+        }
+        catch (JsonProcessingException ex)
+        {
+            throw new IllegalArgumentException("Could not render " + key(resource), ex);
+        }
+    }
+
+    private static void stamp(final HasMetadata resource, final String network, final String hash)
+    {
+        final ObjectMeta metadata = resource.getMetadata();
+
+        final Map<String, String> labels = new LinkedHashMap<>();
+        if (metadata.getLabels() != null)
+        {
+            labels.putAll(metadata.getLabels());
+        }
+        labels.put(Labels.MANAGED_BY, Labels.FABCTL);
+        labels.put(Labels.NETWORK, network);
+        metadata.setLabels(labels);
+
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        if (metadata.getAnnotations() != null)
+        {
+            annotations.putAll(metadata.getAnnotations());
+        }
+        annotations.put(SPEC_HASH, hash);
+        metadata.setAnnotations(annotations);
+    }
+
+    /**
+     * MSP and blob config maps are named for their content:  same name, same content.
+     */
+    private static boolean isImmutable(final HasMetadata resource)
+    {
+        return resource instanceof ConfigMap && Boolean.TRUE.equals(((ConfigMap) resource).getImmutable());
+    }
+
+    private static String label(final HasMetadata resource, final String name)
+    {
+        final Map<String, String> labels = resource.getMetadata().getLabels();
+        return labels == null ? null : labels.get(name);
+    }
+
+    private static String annotation(final HasMetadata resource, final String name)
+    {
+        final Map<String, String> annotations = resource.getMetadata().getAnnotations();
+        return annotations == null ? null : annotations.get(name);
+    }
+
+    private static String kind(final HasMetadata resource)
+    {
+        return resource.getClass().getSimpleName();
+    }
+
+    private static String key(final HasMetadata resource)
+    {
+        return BatchApplier.key(resource);
+    }
+
+    private static void collect(final Map<String, MSPDescriptor> msps, final List<MSPDescriptor> list)
+    {
+        for (MSPDescriptor msp : list)
+        {
+            msps.putIfAbsent(msp.name, msp);
+        }
+    }
+
+    private static void collect(final Map<String, HasMetadata> resources, final List<HasMetadata> list)
+    {
+        for (HasMetadata resource : list)
+        {
+            resources.putIfAbsent(key(resource), resource);
+        }
+    }
+
+    private OperationContext context()
+    {
+        return new OperationContext()
+                .withNamespace(client.getNamespace())
+                .withLabels(Map.of(Labels.MANAGED_BY, Labels.FABCTL));
+    }
+
+    private void awaitSync() throws InterruptedException
+    {
+        final Instant deadline = Instant.now().plus(SYNC_TIMEOUT);
+
+        for (SharedIndexInformer<? extends HasMetadata> informer : informers)
+        {
+            while (! informer.hasSynced())
+            {
+                if (Instant.now().isAfter(deadline))
+                {
+                    throw new IllegalStateException("Informer caches did not sync within " + SYNC_TIMEOUT);
+                }
+
+                Thread.sleep(100);
+            }
+        }
+    }
+}
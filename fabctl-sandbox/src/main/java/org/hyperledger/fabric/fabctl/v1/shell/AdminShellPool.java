@@ -0,0 +1,389 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.shell;
+
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.PodSpec;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.ExecListener;
+import io.fabric8.kubernetes.client.dsl.ExecWatch;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Response;
+import org.hyperledger.fabric.fabctl.v0.JobResult;
+import org.hyperledger.fabric.fabctl.v0.Labels;
+import org.hyperledger.fabric.fabctl.v0.command.FabricCommand;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPBlobStore;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
+import org.hyperledger.fabric.fabctl.v1.network.Environment;
+
+/**
+ * A pool of long-running, pre-warmed "admin shell" pods for running fabric commands without a Job cold start.
+ *
+ * Every remote Job pays for scheduling, volume mounts, and the msp-unfurl init container before the command
+ * even starts.  For a 200ms `peer channel join` this overhead dominates.  The pool keeps idle pods running for
+ * each (image, MSP context) pair, with the MSP descriptors already unfurled, and runs commands in them through
+ * exec.  Pods idle for longer than the eviction timeout are deleted.
+ *
+ * The MSP context is keyed on the content digest of each descriptor (see MSPBlobStore.digest), not its name:  a
+ * shell is never handed a command for an MSP whose certs have since been rotated.
+ *
+ * Commands run through `env K=V ... command`, so the environment is scoped to the command, not to the pod.
+ */
+@Slf4j
+public class AdminShellPool implements AutoCloseable
+{
+    private static final String EXIT_CODE_MARKER = "fabctl-exit-code: ";
+
+    /**
+     * Run "$@" with stderr folded into stdout, printing the exit code as the final line of output.  The marker
+     * starts on a new line even when the command's output does not end with one.
+     */
+    private static final String EXEC_SCRIPT = "\"$@\" 2>&1; printf '\\n%s%s\\n' \"" + EXIT_CODE_MARKER + "\" \"$?\"";
+
+    /**
+     * Keep the shell alive, but exit promptly when the pod is deleted.
+     */
+    private static final String IDLE_SCRIPT = "trap 'exit 0' TERM; while true; do sleep 5 & wait $!; done";
+
+    private static final long READY_TIMEOUT = 2;
+
+    private static final TimeUnit READY_TIMEOUT_UNITS = TimeUnit.MINUTES;
+
+    private final KubernetesClient client;
+    private final ShellPodFactory podFactory;
+    private final MSPBlobStore blobStore;
+    private final int maxPodsPerContext;
+    private final long idleTimeoutMillis;
+    private final long execTimeout;
+    private final TimeUnit execTimeoutUnits;
+
+    private final Map<String, ShellContext> contexts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+
+    public AdminShellPool(final KubernetesClient client,
+                          final ShellPodFactory podFactory,
+                          final MSPBlobStore blobStore,
+                          final int maxPodsPerContext,
+                          final long idleTimeout,
+                          final long execTimeout,
+                          final TimeUnit units)
+    {
+        this.client = client;
+        this.podFactory = podFactory;
+        this.blobStore = blobStore;
+        this.maxPodsPerContext = maxPodsPerContext;
+        this.idleTimeoutMillis = units.toMillis(idleTimeout);
+        this.execTimeout = execTimeout;
+        this.execTimeoutUnits = units;
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            final Thread thread = new Thread(runnable, "fabctl-shell-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleAtFixedRate(this::evictIdlePods, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a command in a warm shell for the command's image and MSP context, launching a shell if none are idle.
+     *
+     * The JobResult for a shell command has no job name.
+     */
+    public JobResult execute(final FabricCommand command,
+                             final Environment environment,
+                             final MSPDescriptor... msps)
+            throws Exception
+    {
+        final ShellContext context =
+                contexts.computeIfAbsent(contextKey(command, msps), key -> new ShellContext(key, command, msps));
+
+        final ShellPod shell = context.acquire();
+        try
+        {
+            return exec(shell, command, environment);
+        }
+        catch (Exception ex)
+        {
+            //
+            // Don't hand a broken shell to the next command.
+            //
+            context.discard(shell);
+            throw ex;
+        }
+        finally
+        {
+            context.release(shell);
+        }
+    }
+
+    private JobResult exec(final ShellPod shell, final FabricCommand command, final Environment environment)
+            throws Exception
+    {
+        final List<String> argv = new ArrayList<>();
+        argv.add("sh");
+        argv.add("-c");
+        argv.add(EXEC_SCRIPT);
+        argv.add("sh");
+        argv.add("env");
+        for (Map.Entry<String, String> e : environment.entrySet())
+        {
+            argv.add(e.getKey() + "=" + e.getValue());
+        }
+        argv.addAll(Arrays.asList(command.command));
+
+        log.info("Running {} in shell {}", Arrays.asList(command.command), shell.name);
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        try (final ExecWatch watch = client.pods()
+                                           .withName(shell.name)
+                                           .inContainer("main")
+                                           .writingOutput(output)
+                                           .usingListener(new ExecListener()
+                                           {
+                                               @Override
+                                               public void onOpen(final Response response)
+                                               {
+                                               }
+
+                                               @Override
+                                               public void onFailure(final Throwable t, final Response response)
+                                               {
+                                                   failure.set(t);
+                                                   latch.countDown();
+                                               }
+
+                                               @Override
+                                               public void onClose(final int code, final String reason)
+                                               {
+                                                   latch.countDown();
+                                               }
+                                           })
+                                           .exec(argv.toArray(new String[0])))
+        {
+            if (! latch.await(execTimeout, execTimeoutUnits))
+            {
+                throw new TimeoutException("Command did not complete after " + execTimeout + " " + execTimeoutUnits);
+            }
+        }
+
+        //
+        // The exec transport failed:  the output is incomplete and carries no exit code.
+        //
+        if (failure.get() != null)
+        {
+            throw new IOException("Exec failed in shell " + shell.name, failure.get());
+        }
+
+        //
+        // The final line of output carries the command exit code.  Only the last marker counts:  the command may
+        // well print the marker text itself.
+        //
+        final String text = output.toString(StandardCharsets.UTF_8);
+        final int marker = text.lastIndexOf("\n" + EXIT_CODE_MARKER);
+
+        int exitCode = -1;
+        String body = text;
+        if (marker >= 0)
+        {
+            exitCode = Integer.parseInt(text.substring(marker + 1 + EXIT_CODE_MARKER.length()).trim());
+            body = text.substring(0, marker);
+        }
+
+        final List<String> logs = new ArrayList<>();
+        try (final BufferedReader reader = new BufferedReader(new StringReader(body)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                logs.add(line);
+            }
+        }
+
+        return new JobResult(null, shell.name, exitCode, logs);
+    }
+
+    private void evictIdlePods()
+    {
+        final long now = System.currentTimeMillis();
+
+        for (ShellContext context : contexts.values())
+        {
+            for (ShellPod shell : context.idle)
+            {
+                if (now - shell.lastUsed > idleTimeoutMillis && context.idle.remove(shell))
+                {
+                    log.info("Evicting idle shell {}", shell.name);
+                    context.delete(shell);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shut down the pool, deleting all of the shell pods.
+     */
+    @Override
+    public void close()
+    {
+        evictor.shutdownNow();
+
+        for (ShellContext context : contexts.values())
+        {
+            ShellPod shell;
+            while ((shell = context.idle.poll()) != null)
+            {
+                context.delete(shell);
+            }
+        }
+
+        contexts.clear();
+    }
+
+    private String contextKey(final FabricCommand command, final MSPDescriptor... msps)
+    {
+        final SortedSet<String> digests = new TreeSet<>();
+        for (MSPDescriptor msp : msps)
+        {
+            digests.add(blobStore.digest(msp));
+        }
+
+        return command.getClass().getSimpleName() + "/" + command.image + ":" + command.label + "/" + digests;
+    }
+
+    private static class ShellPod
+    {
+        private final String name;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private ShellPod(final String name)
+        {
+            this.name = name;
+        }
+    }
+
+    /**
+     * The shells for a single (image, MSP context) pair.
+     */
+    private class ShellContext
+    {
+        private final String key;
+        private final FabricCommand command;
+        private final MSPDescriptor[] msps;
+
+        private final Semaphore capacity = new Semaphore(maxPodsPerContext, true);
+        private final Deque<ShellPod> idle = new ConcurrentLinkedDeque<>();
+        private final Set<ShellPod> discarded = ConcurrentHashMap.newKeySet();
+
+        private ShellContext(final String key, final FabricCommand command, final MSPDescriptor... msps)
+        {
+            this.key = key;
+            this.command = command;
+            this.msps = msps;
+        }
+
+        private ShellPod acquire() throws Exception
+        {
+            capacity.acquire();
+
+            final ShellPod shell = idle.pollFirst();
+            if (shell != null)
+            {
+                return shell;
+            }
+
+            try
+            {
+                return launch();
+            }
+            catch (Exception ex)
+            {
+                capacity.release();
+                throw ex;
+            }
+        }
+
+        private void release(final ShellPod shell)
+        {
+            if (! discarded.remove(shell))
+            {
+                shell.lastUsed = System.currentTimeMillis();
+                idle.addFirst(shell);
+            }
+
+            capacity.release();
+        }
+
+        private void discard(final ShellPod shell)
+        {
+            discarded.add(shell);
+            delete(shell);
+        }
+
+        private ShellPod launch() throws Exception
+        {
+            final PodSpec spec = podFactory.build(command, msps);
+
+            final Container main = spec.getContainers().get(0);
+            main.setCommand(Arrays.asList("sh", "-c", IDLE_SCRIPT));
+            main.setArgs(null);
+            main.setEnv(new ArrayList<>());
+
+            final Pod pod =
+                    client.pods()
+                          .create(new PodBuilder()
+                                          .withNewMetadata()
+                                          .withGenerateName("admin-shell-")
+                                          .addToLabels(Labels.MANAGED_BY, Labels.FABCTL)
+                                          .addToLabels("component", "admin-shell")
+                                          .endMetadata()
+                                          .withSpec(spec)
+                                          .build());
+
+            final ShellPod shell = new ShellPod(pod.getMetadata().getName());
+            log.info("Launched shell {} for {}", shell.name, key);
+
+            try
+            {
+                client.pods()
+                      .withName(shell.name)
+                      .waitUntilReady(READY_TIMEOUT, READY_TIMEOUT_UNITS);
+            }
+            catch (Exception ex)
+            {
+                //
+                // Don't leave a shell that never became ready running outside of the pool.
+                //
+                delete(shell);
+                throw ex;
+            }
+
+            return shell;
+        }
+
+        private void delete(final ShellPod shell)
+        {
+            client.pods()
+                  .withName(shell.name)
+                  .delete();
+        }
+    }
+}
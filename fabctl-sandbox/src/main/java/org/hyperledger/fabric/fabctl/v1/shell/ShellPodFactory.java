@@ -0,0 +1,21 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.shell;
+
+import io.fabric8.kubernetes.api.model.PodSpec;
+import org.hyperledger.fabric.fabctl.v0.command.FabricCommand;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
+
+/**
+ * Build the pod spec (image, volumes, msp-unfurl init container, ...) for running a command in an MSP context.
+ *
+ * The [main] container command and environment are replaced by the AdminShellPool.
+ */
+@FunctionalInterface
+public interface ShellPodFactory
+{
+    PodSpec build(FabricCommand command, MSPDescriptor... msps);
+}
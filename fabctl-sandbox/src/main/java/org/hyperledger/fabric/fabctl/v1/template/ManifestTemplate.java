@@ -0,0 +1,277 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1.template;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A k8s manifest (Deployment, Service, Job, ...) rendered from a yaml template with ${name} placeholders.
+ *
+ * The template is parsed and compiled once:  literal subtrees are kept as-is and shared by every rendering, and
+ * each scalar holding a placeholder is split into its literal and variable parts.  Rendering walks the compiled
+ * model, substitutes the values, and binds the result to the fabric8 model type.  Templates loaded from the
+ * classpath are cached, so a topology of hundreds of nodes parses each template exactly once.
+ *
+ * Substitution rules:
+ *
+ * <pre>
+ *   image: "hyperledger/fabric-peer:${version}"   # embedded:  the value's string form
+ *   replicas: "${replicas}"                        # whole scalar:  the value itself (number, list, object, ...)
+ *   env: "${env}"                                  #   e.g. a List&lt;EnvVar&gt;
+ *   initContainers:
+ *     - name: ...
+ *     - "${more}"                                  # a list value in a list is spliced into it
+ * </pre>
+ *
+ * A placeholder without a value is an error.  Keys are not substituted.
+ */
+public class ManifestTemplate<T>
+{
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([A-Za-z0-9_.-]+)}");
+
+    private static final YAMLMapper yamlMapper = new YAMLMapper();
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
+
+    private static final Map<String, ManifestTemplate<?>> cache = new ConcurrentHashMap<>();
+
+    private final String source;
+    private final Class<T> type;
+    private final Part root;
+
+    private ManifestTemplate(final String source, final Class<T> type, final JsonNode tree)
+    {
+        this.source = source;
+        this.type = type;
+        this.root = compile(tree);
+    }
+
+    /**
+     * Load a template from the classpath (relative to this package), parsing it on first use only.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ManifestTemplate<T> load(final String resource, final Class<T> type)
+    {
+        final ManifestTemplate<?> template = cache.computeIfAbsent(resource + ":" + type.getName(), key ->
+        {
+            try (InputStream in = ManifestTemplate.class.getResourceAsStream(resource))
+            {
+                if (in == null)
+                {
+                    throw new IllegalArgumentException("No manifest template " + resource);
+                }
+
+                return new ManifestTemplate<>(resource, type, yamlMapper.readTree(in));
+            }
+            catch (IOException ex)
+            {
+                throw new IllegalArgumentException("Could not parse manifest template " + resource, ex);
+            }
+        });
+
+        return (ManifestTemplate<T>) template;
+    }
+
+    /**
+     * Parse a template from a string.  This is not cached.
+     */
+    public static <T> ManifestTemplate<T> parse(final String yaml, final Class<T> type) throws IOException
+    {
+        return new ManifestTemplate<>("(inline)", type, yamlMapper.readTree(yaml));
+    }
+
+    public T render(final Map<String, ?> values)
+    {
+        final JsonNode tree = root.render(values);
+
+        try
+        {
+            return objectMapper.treeToValue(tree, type);
+        }
+        catch (JsonProcessingException ex)
+        {
+            throw new IllegalArgumentException("Template " + source + " does not render a " + type.getSimpleName(),
+                                               ex);
+        }
+    }
+
+    //
+    // The compiled template.
+    //
+
+    private interface Part
+    {
+        JsonNode render(Map<String, ?> values);
+
+        /**
+         * True if a list value should be spliced into an enclosing list.
+         */
+        default boolean splices()
+        {
+            return false;
+        }
+    }
+
+    private Part compile(final JsonNode node)
+    {
+        if (! hasPlaceholder(node))
+        {
+            return values -> node;
+        }
+
+        if (node.isTextual())
+        {
+            return compileText(node.textValue());
+        }
+
+        if (node.isArray())
+        {
+            final List<Part> elements = new ArrayList<>();
+            for (JsonNode element : node)
+            {
+                elements.add(compile(element));
+            }
+
+            return values ->
+            {
+                final ArrayNode array = nodeFactory.arrayNode();
+                for (Part element : elements)
+                {
+                    final JsonNode rendered = element.render(values);
+                    if (element.splices() && rendered.isArray())
+                    {
+                        array.addAll((ArrayNode) rendered);
+                    }
+                    else
+                    {
+                        array.add(rendered);
+                    }
+                }
+
+                return array;
+            };
+        }
+
+        final Map<String, Part> fields = new LinkedHashMap<>();
+        final Iterator<Map.Entry<String, JsonNode>> i = node.fields();
+        while (i.hasNext())
+        {
+            final Map.Entry<String, JsonNode> e = i.next();
+            fields.put(e.getKey(), compile(e.getValue()));
+        }
+
+        return values ->
+        {
+            final ObjectNode object = nodeFactory.objectNode();
+            for (Map.Entry<String, Part> e : fields.entrySet())
+            {
+                object.set(e.getKey(), e.getValue().render(values));
+            }
+
+            return object;
+        };
+    }
+
+    private Part compileText(final String text)
+    {
+        final Matcher matcher = PLACEHOLDER.matcher(text);
+
+        //
+        // "${name}" stands for the value itself.
+        //
+        if (matcher.matches())
+        {
+            final String name = matcher.group(1);
+            return new Part()
+            {
+                @Override
+                public JsonNode render(final Map<String, ?> values)
+                {
+                    final Object value = value(values, name);
+                    return value instanceof JsonNode ? (JsonNode) value : objectMapper.valueToTree(value);
+                }
+
+                @Override
+                public boolean splices()
+                {
+                    return true;
+                }
+            };
+        }
+
+        //
+        // Otherwise the text alternates literals (even) and names (odd.)
+        //
+        final List<String> segments = new ArrayList<>();
+        int last = 0;
+        matcher.reset();
+        while (matcher.find())
+        {
+            segments.add(text.substring(last, matcher.start()));
+            segments.add(matcher.group(1));
+            last = matcher.end();
+        }
+        segments.add(text.substring(last));
+
+        return values ->
+        {
+            final StringBuilder sb = new StringBuilder();
+            for (int s = 0; s < segments.size(); s++)
+            {
+                sb.append(s % 2 == 0 ? segments.get(s) : String.valueOf(value(values, segments.get(s))));
+            }
+
+            return nodeFactory.textNode(sb.toString());
+        };
+    }
+
+    private Object value(final Map<String, ?> values, final String name)
+    {
+        final Object value = values.get(name);
+        if (value == null)
+        {
+            throw new IllegalArgumentException("No value for ${" + name + "} in template " + source);
+        }
+
+        return value;
+    }
+
+    private static boolean hasPlaceholder(final JsonNode node)
+    {
+        if (node.isTextual())
+        {
+            return PLACEHOLDER.matcher(node.textValue()).find();
+        }
+
+        for (JsonNode child : node)
+        {
+            if (hasPlaceholder(child))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
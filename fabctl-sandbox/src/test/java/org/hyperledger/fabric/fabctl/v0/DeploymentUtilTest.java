@@ -0,0 +1,260 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v0;
+
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.ContainerStatusBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.api.model.apps.DeploymentConditionBuilder;
+import io.fabric8.kubernetes.api.model.apps.ReplicaSet;
+import io.fabric8.kubernetes.api.model.apps.ReplicaSetBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classify deployment and pod status as the rollout wait does:  this runs without a cluster.
+ */
+public class DeploymentUtilTest
+{
+    private static final String DEPLOYMENT = "org1-peer1";
+
+    @Test
+    public void testImagePullBackOff()
+    {
+        final Pod pod = buildPod("abc123",
+                                 "Pending",
+                                 List.of(terminated("msp-unfurl", 0)),
+                                 List.of(waiting("main", "ImagePullBackOff")));
+
+        final DeploymentFailedException failure = DeploymentUtil.diagnose(DEPLOYMENT, pod);
+
+        assertNotNull(failure);
+        assertEquals(DEPLOYMENT, failure.deploymentName);
+        assertEquals("org1-peer1-abc123-xyzzy", failure.podName);
+        assertEquals("main", failure.containerName);
+        assertEquals("ImagePullBackOff", failure.reason);
+    }
+
+    @Test
+    public void testCrashLoopBackOff()
+    {
+        final Pod pod = buildPod("abc123",
+                                 "Running",
+                                 List.of(terminated("msp-unfurl", 0)),
+                                 List.of(waiting("main", "CrashLoopBackOff")));
+
+        final DeploymentFailedException failure = DeploymentUtil.diagnose(DEPLOYMENT, pod);
+
+        assertNotNull(failure);
+        assertEquals("main", failure.containerName);
+        assertEquals("CrashLoopBackOff", failure.reason);
+    }
+
+    @Test
+    public void testInitContainerFailure()
+    {
+        final Pod pod = buildPod("abc123",
+                                 "Pending",
+                                 List.of(terminated("msp-unfurl", 1)),
+                                 List.of(waiting("main", "PodInitializing")));
+
+        final DeploymentFailedException failure = DeploymentUtil.diagnose(DEPLOYMENT, pod);
+
+        assertNotNull(failure);
+        assertEquals("msp-unfurl", failure.containerName);
+        assertEquals("InitContainerFailed", failure.reason);
+        assertTrue(failure.detail.contains("exit code 1"));
+    }
+
+    /**
+     * Pods on their way up are not failures.
+     */
+    @Test
+    public void testPodStarting()
+    {
+        assertNull(DeploymentUtil.diagnose(DEPLOYMENT,
+                                           buildPod("abc123",
+                                                    "Pending",
+                                                    List.of(waiting("msp-unfurl", "PodInitializing")),
+                                                    List.of(waiting("main", "PodInitializing")))));
+        assertNull(DeploymentUtil.diagnose(DEPLOYMENT,
+                                           buildPod("abc123",
+                                                    "Pending",
+                                                    List.of(terminated("msp-unfurl", 0)),
+                                                    List.of(waiting("main", "ContainerCreating")))));
+    }
+
+    @Test
+    public void testProgressDeadlineExceeded()
+    {
+        final Deployment deployment = buildDeployment("2", 2L, 2L);
+        deployment.getStatus()
+                  .getConditions()
+                  .add(new DeploymentConditionBuilder()
+                               .withType("Progressing")
+                               .withStatus("False")
+                               .withReason("ProgressDeadlineExceeded")
+                               .withMessage("ReplicaSet \"org1-peer1-abc123\" has timed out progressing.")
+                               .build());
+
+        final DeploymentFailedException failure = DeploymentUtil.diagnose(deployment);
+
+        assertNotNull(failure);
+        assertEquals(DEPLOYMENT, failure.deploymentName);
+        assertNull(failure.podName);
+        assertEquals("ProgressDeadlineExceeded", failure.reason);
+    }
+
+    @Test
+    public void testProgressing()
+    {
+        final Deployment deployment = buildDeployment("2", 2L, 2L);
+        deployment.getStatus()
+                  .getConditions()
+                  .add(new DeploymentConditionBuilder()
+                               .withType("Progressing")
+                               .withStatus("True")
+                               .withReason("ReplicaSetUpdated")
+                               .build());
+
+        assertNull(DeploymentUtil.diagnose(deployment));
+    }
+
+    /**
+     * The current ReplicaSet is the one the deployment owns with the deployment's revision.
+     */
+    @Test
+    public void testCurrentTemplateHash()
+    {
+        final Deployment deployment = buildDeployment("2", 2L, 2L);
+
+        final List<ReplicaSet> replicaSets = List.of(buildReplicaSet(DEPLOYMENT, "1", "old111"),
+                                                     buildReplicaSet("org1-peer2", "2", "other2"),
+                                                     buildReplicaSet(DEPLOYMENT, "2", "new222"));
+
+        assertEquals("new222", DeploymentUtil.currentTemplateHash(deployment, replicaSets));
+        assertNull(DeploymentUtil.currentTemplateHash(deployment, replicaSets.subList(0, 2)));
+    }
+
+    /**
+     * A crash looping pod of the previous ReplicaSet does not fail the rollout of the new one.
+     */
+    @Test
+    public void testOnlyCurrentPodsCount()
+    {
+        final Pod previous = buildPod("old111", "Running", List.of(), List.of(waiting("main", "CrashLoopBackOff")));
+        final Pod current = buildPod("new222", "Pending", List.of(), List.of(waiting("main", "ContainerCreating")));
+
+        assertFalse(DeploymentUtil.isCurrent("new222", previous));
+        assertTrue(DeploymentUtil.isCurrent("new222", current));
+
+        //
+        // Until the current ReplicaSet is known, no pod is.
+        //
+        assertFalse(DeploymentUtil.isCurrent(null, current));
+    }
+
+    /**
+     * The revision annotation only names the current ReplicaSet once the controller has observed the latest spec.
+     */
+    @Test
+    public void testObservedGeneration()
+    {
+        assertTrue(DeploymentUtil.isObserved(buildDeployment("2", 2L, 2L)));
+        assertFalse(DeploymentUtil.isObserved(buildDeployment("1", 2L, 1L)));
+        assertFalse(DeploymentUtil.isObserved(buildDeployment("1", 2L, null)));
+    }
+
+    private static Deployment buildDeployment(final String revision,
+                                              final Long generation,
+                                              final Long observedGeneration)
+    {
+        return new DeploymentBuilder()
+                .withNewMetadata()
+                .withName(DEPLOYMENT)
+                .withGeneration(generation)
+                .addToAnnotations(DeploymentUtil.REVISION_ANNOTATION, revision)
+                .endMetadata()
+                .withNewSpec()
+                .withNewSelector()
+                .addToMatchLabels("app", DEPLOYMENT)
+                .endSelector()
+                .endSpec()
+                .withNewStatus()
+                .withObservedGeneration(observedGeneration)
+                .withConditions(new ArrayList<>())
+                .endStatus()
+                .build();
+    }
+
+    private static ReplicaSet buildReplicaSet(final String deploymentName,
+                                              final String revision,
+                                              final String templateHash)
+    {
+        return new ReplicaSetBuilder()
+                .withNewMetadata()
+                .withName(deploymentName + "-" + templateHash)
+                .addToLabels("app", deploymentName)
+                .addToLabels(DeploymentUtil.POD_TEMPLATE_HASH, templateHash)
+                .addToAnnotations(DeploymentUtil.REVISION_ANNOTATION, revision)
+                .addNewOwnerReference()
+                .withApiVersion("apps/v1")
+                .withKind("Deployment")
+                .withName(deploymentName)
+                .endOwnerReference()
+                .endMetadata()
+                .build();
+    }
+
+    private static Pod buildPod(final String templateHash,
+                                final String phase,
+                                final List<ContainerStatus> initContainers,
+                                final List<ContainerStatus> containers)
+    {
+        return new PodBuilder()
+                .withNewMetadata()
+                .withName(DEPLOYMENT + "-" + templateHash + "-xyzzy")
+                .addToLabels("app", DEPLOYMENT)
+                .addToLabels(DeploymentUtil.POD_TEMPLATE_HASH, templateHash)
+                .endMetadata()
+                .withNewStatus()
+                .withPhase(phase)
+                .withInitContainerStatuses(initContainers)
+                .withContainerStatuses(containers)
+                .endStatus()
+                .build();
+    }
+
+    private static ContainerStatus terminated(final String name, final int exitCode)
+    {
+        return new ContainerStatusBuilder()
+                .withName(name)
+                .withNewState()
+                .withNewTerminated()
+                .withExitCode(exitCode)
+                .endTerminated()
+                .endState()
+                .build();
+    }
+
+    private static ContainerStatus waiting(final String name, final String reason)
+    {
+        return new ContainerStatusBuilder()
+                .withName(name)
+                .withNewState()
+                .withNewWaiting()
+                .withReason(reason)
+                .endWaiting()
+                .endState()
+                .build();
+    }
+}
@@ -0,0 +1,182 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v0;
+
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.ContainerStatusBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Feed lines to a follower directly:  this runs without a cluster.
+ */
+public class LogFollowerTest
+{
+    private static final String TOKEN = "Chaincode code package identifier: ";
+
+    @Test
+    public void testMatch() throws Exception
+    {
+        try (final LogFollower follower = new LogFollower())
+        {
+            final CompletableFuture<String> packageId = follower.match(TOKEN);
+
+            follower.accept("installing");
+            assertFalse(packageId.isDone());
+
+            follower.accept(TOKEN + "basic_1.0:abc123");
+            assertEquals("basic_1.0:abc123", packageId.get());
+
+            //
+            // The line has already gone by.
+            //
+            assertEquals("basic_1.0:abc123", follower.match(TOKEN).get());
+        }
+    }
+
+    @Test
+    public void testLogEndsBeforeMatch()
+    {
+        final LogFollower follower = new LogFollower();
+        final CompletableFuture<String> packageId = follower.match(TOKEN);
+
+        follower.accept("installing");
+        follower.finish();
+
+        final ExecutionException ex = assertThrows(ExecutionException.class, packageId::get);
+        assertTrue(ex.getCause() instanceof NoSuchElementException);
+        assertEquals(List.of("installing"), follower.completion().join());
+    }
+
+    /**
+     * A follower closed before the container starts (e.g. the pod was never scheduled) must not leave its matchers
+     * waiting forever.
+     */
+    @Test
+    public void testCloseBeforeLogStarts()
+    {
+        final LogFollower follower = new LogFollower();
+        final CompletableFuture<String> packageId = follower.match(TOKEN);
+
+        follower.close();
+
+        final ExecutionException ex = assertThrows(ExecutionException.class, packageId::get);
+        assertTrue(ex.getCause() instanceof NoSuchElementException);
+        assertTrue(follower.completion().join().isEmpty());
+
+        //
+        // And matchers registered after the close fail straight away.
+        //
+        assertTrue(follower.match("another token").isCompletedExceptionally());
+    }
+
+    /**
+     * A Job's pod is never restarted:  once msp-unfurl has failed, [main] waits in PodInitializing for good.
+     */
+    @Test
+    public void testInitContainerFailure()
+    {
+        final Pod pod = buildPod("Pending",
+                                 List.of(terminated("msp-unfurl", 1)),
+                                 List.of(waiting("main", "PodInitializing")));
+
+        assertFalse(LogFollower.hasStarted(pod, "main"));
+        assertEquals("init container msp-unfurl exited with code 1", LogFollower.failure(pod));
+    }
+
+    @Test
+    public void testPodFailure()
+    {
+        final Pod pod = buildPod("Failed", List.of(), List.of(waiting("main", "PodInitializing")));
+
+        assertTrue(LogFollower.failure(pod).startsWith("pod phase is Failed"));
+    }
+
+    @Test
+    public void testImagePullFailure()
+    {
+        final Pod pod = buildPod("Pending",
+                                 List.of(terminated("msp-unfurl", 0)),
+                                 List.of(waiting("main", "ImagePullBackOff")));
+
+        assertEquals("container main ImagePullBackOff", LogFollower.failure(pod));
+    }
+
+    /**
+     * A pod on its way up, or one whose [main] has run, is followed as usual.
+     */
+    @Test
+    public void testNoFailure()
+    {
+        assertNull(LogFollower.failure(buildPod("Pending",
+                                                List.of(terminated("msp-unfurl", 0)),
+                                                List.of(waiting("main", "ContainerCreating")))));
+
+        final Pod exited = buildPod("Failed", List.of(terminated("msp-unfurl", 0)), List.of(terminated("main", 2)));
+
+        assertTrue(LogFollower.hasStarted(exited, "main"));
+    }
+
+    @Test
+    public void testBufferLimit()
+    {
+        final LogFollower follower = new LogFollower(2);
+        follower.accept("one");
+        follower.accept("two");
+        follower.accept("three");
+        follower.close();
+
+        assertEquals(List.of("two", "three"), follower.getLines());
+        assertEquals(1, follower.getDroppedLines());
+    }
+
+    private static Pod buildPod(final String phase,
+                                final List<ContainerStatus> initContainers,
+                                final List<ContainerStatus> containers)
+    {
+        return new PodBuilder()
+                .withNewMetadata()
+                .withName("peer-job-abcde")
+                .endMetadata()
+                .withNewStatus()
+                .withPhase(phase)
+                .withInitContainerStatuses(initContainers)
+                .withContainerStatuses(containers)
+                .endStatus()
+                .build();
+    }
+
+    private static ContainerStatus terminated(final String name, final int exitCode)
+    {
+        return new ContainerStatusBuilder()
+                .withName(name)
+                .withNewState()
+                .withNewTerminated()
+                .withExitCode(exitCode)
+                .endTerminated()
+                .endState()
+                .build();
+    }
+
+    private static ContainerStatus waiting(final String name, final String reason)
+    {
+        return new ContainerStatusBuilder()
+                .withName(name)
+                .withNewState()
+                .withNewWaiting()
+                .withReason(reason)
+                .endWaiting()
+                .endState()
+                .build();
+    }
+}
@@ -0,0 +1,120 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.hyperledger.fabric.fabctl.v1.reconcile.BatchApplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Apply resources to a SimulatedCluster:  this runs without a cluster.
+ */
+public class BatchApplierTest
+{
+    private static final SimulatedCluster.Latencies NO_LATENCY = new SimulatedCluster.Latencies(0, 0, 0, 0);
+
+    private SimulatedCluster cluster;
+
+    private KubernetesClient client;
+
+    private BatchApplier applier;
+
+    @BeforeEach
+    public void startSimulatedCluster()
+    {
+        cluster = new SimulatedCluster("fabctl-apply", NO_LATENCY, jobName -> List.of());
+        client = cluster.getClient();
+        applier = new BatchApplier(client, 4);
+    }
+
+    @AfterEach
+    public void stopSimulatedCluster()
+    {
+        applier.close();
+        cluster.close();
+    }
+
+    /**
+     * A resource that is not there yet is created by the apply patch itself, owned by the fabctl field manager.
+     */
+    @Test
+    public void testApplyCreates()
+    {
+        cluster.phase("create");
+        applier.apply(List.of(buildConfigMap("blue"), buildService())).check();
+
+        assertEquals(Map.of("PATCH configmaps", 1L, "PATCH services", 1L), requests("create"));
+
+        final ConfigMap configMap = client.configMaps().withName("fabctl-apply-test").get();
+        assertEquals("blue", configMap.getData().get("color"));
+        assertEquals(BatchApplier.FIELD_MANAGER, configMap.getMetadata().getManagedFields().get(0).getManager());
+
+        final Service service = client.services().withName("fabctl-apply-test").get();
+        assertEquals(BatchApplier.FIELD_MANAGER, service.getMetadata().getManagedFields().get(0).getManager());
+    }
+
+    @Test
+    public void testApplyUpdates()
+    {
+        applier.apply(List.of(buildConfigMap("blue"))).check();
+
+        cluster.phase("update");
+        final BatchApplier.Report report = applier.apply(List.of(buildConfigMap("green"))).check();
+
+        assertEquals(Map.of("PATCH configmaps", 1L), requests("update"));
+        assertEquals("green", report.applied(buildConfigMap("green")).getData().get("color"));
+        assertEquals("green", client.configMaps().withName("fabctl-apply-test").get().getData().get("color"));
+    }
+
+    /**
+     * The calls made in a phase, ending the phase.
+     */
+    private Map<String, Long> requests(final String phase)
+    {
+        cluster.phase(null);
+
+        final Map<String, Long> requests = new TreeMap<>();
+        cluster.getMeters().get(phase).requests.forEach((request, count) -> requests.put(request, count.get()));
+
+        return requests;
+    }
+
+    private static ConfigMap buildConfigMap(final String color)
+    {
+        return new ConfigMapBuilder()
+                .withNewMetadata()
+                .withName("fabctl-apply-test")
+                .endMetadata()
+                .withData(Map.of("color", color))
+                .build();
+    }
+
+    private static Service buildService()
+    {
+        return new ServiceBuilder()
+                .withNewMetadata()
+                .withName("fabctl-apply-test")
+                .endMetadata()
+                .withNewSpec()
+                .addNewPort()
+                .withName("http")
+                .withPort(8080)
+                .endPort()
+                .endSpec()
+                .build();
+    }
+}
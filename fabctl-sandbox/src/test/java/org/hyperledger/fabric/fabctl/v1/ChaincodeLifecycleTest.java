@@ -0,0 +1,180 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.hyperledger.fabric.fabctl.v0.JobResult;
+import org.hyperledger.fabric.fabctl.v0.command.PeerCommand;
+import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodeConnection;
+import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodeDescriptor;
+import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodeLifecycle;
+import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodeMetadata;
+import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodePackage;
+import org.hyperledger.fabric.fabctl.v1.chaincode.LifecycleRunner;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
+import org.hyperledger.fabric.fabctl.v1.network.Environment;
+import org.hyperledger.fabric.fabctl.v1.network.NetworkConfig;
+import org.hyperledger.fabric.fabctl.v1.network.OrganizationConfig;
+import org.hyperledger.fabric.fabctl.v1.network.PeerConfig;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drive the chaincode lifecycle against a runner that records the commands rather than running them.  This runs
+ * without a cluster.
+ */
+public class ChaincodeLifecycleTest
+{
+    private static final String ORDERER_TLS_CA = "/var/hyperledger/fabric/xyzzy/orderer1.example.com/tls/ca.crt";
+
+    /**
+     * Every command succeeds.  Nothing is installed.
+     */
+    private static class RecordingRunner implements LifecycleRunner
+    {
+        private final List<String> commands = new CopyOnWriteArrayList<>();
+
+        private List<PeerConfig> endorsers;
+
+        private CompletableFuture<JobResult> record(final PeerConfig peer, final PeerCommand command)
+        {
+            commands.add(peer.name + ": " + String.join(" ", command.command));
+            return CompletableFuture.completedFuture(new JobResult("job", "pod", 0, List.of()));
+        }
+
+        @Override
+        public CompletableFuture<JobResult> execute(final OrganizationConfig org,
+                                                    final PeerConfig peer,
+                                                    final PeerCommand command)
+        {
+            return record(peer, command);
+        }
+
+        @Override
+        public CompletableFuture<JobResult> execute(final OrganizationConfig org,
+                                                    final PeerConfig peer,
+                                                    final PeerCommand command,
+                                                    final ChaincodePackage ccPackage)
+        {
+            return record(peer, command);
+        }
+
+        @Override
+        public CompletableFuture<JobResult> execute(final OrganizationConfig org,
+                                                    final PeerConfig peer,
+                                                    final PeerCommand command,
+                                                    final List<PeerConfig> endorsers)
+        {
+            this.endorsers = endorsers;
+            return record(peer, command);
+        }
+
+        @Override
+        public String tlsRootCertFile(final OrganizationConfig org, final PeerConfig peer)
+        {
+            return "/var/hyperledger/fabric/xyzzy/" + peer.name + "/tls/ca.crt";
+        }
+    }
+
+    private static NetworkConfig buildNetwork()
+    {
+        final NetworkConfig network = new NetworkConfig("test-network");
+
+        //
+        // An orderer org with no peers does not endorse.
+        //
+        network.organizations.add(new OrganizationConfig("OrdererOrg",
+                                                         "OrdererMSP",
+                                                         new MSPDescriptor("msp-orderer", "orderer", null, null)));
+
+        for (String org : List.of("org1", "org2"))
+        {
+            final OrganizationConfig config =
+                    new OrganizationConfig(org, org + "MSP", new MSPDescriptor("msp-" + org, org, null, null));
+
+            for (String name : List.of(org + "-peer1", org + "-peer2"))
+            {
+                final Environment environment = new Environment();
+                environment.put("CORE_PEER_ADDRESS", name + ":7051");
+
+                config.peers.add(new PeerConfig(name, environment, new MSPDescriptor("msp-" + name, name, null, null)));
+            }
+
+            network.organizations.add(config);
+        }
+
+        return network;
+    }
+
+    private static ChaincodePackage buildPackage() throws Exception
+    {
+        final ChaincodeMetadata metadata = new ChaincodeMetadata();
+        metadata.name = "asset-transfer-basic";
+        metadata.label = "basic_1.0";
+        metadata.image = "hyperledger/asset-transfer-basic";
+
+        final ChaincodeConnection connection = new ChaincodeConnection();
+        connection.address = metadata.name + ":9999";
+        connection.dial_timeout = "10s";
+        connection.tls_required = false;
+
+        return new ChaincodePackage(new ChaincodeDescriptor(metadata, connection));
+    }
+
+    @Test
+    public void testCommitIsEndorsedByEachOrg()
+    {
+        final ChaincodeLifecycle lifecycle =
+                new ChaincodeLifecycle(buildNetwork(),
+                                       new RecordingRunner(),
+                                       "mychannel",
+                                       "orderer1:6050",
+                                       ORDERER_TLS_CA);
+
+        final List<String> command = Arrays.asList(lifecycle.commitCommand("basic", "1", 1).command);
+
+        assertEquals(List.of("peer", "lifecycle", "chaincode", "commit",
+                             "-o", "orderer1:6050",
+                             "--channelID", "mychannel",
+                             "--name", "basic",
+                             "--version", "1",
+                             "--sequence", "1",
+                             "--tls",
+                             "--cafile", ORDERER_TLS_CA,
+                             "--peerAddresses", "org1-peer1:7051",
+                             "--tlsRootCertFiles", "/var/hyperledger/fabric/xyzzy/org1-peer1/tls/ca.crt",
+                             "--peerAddresses", "org2-peer1:7051",
+                             "--tlsRootCertFiles", "/var/hyperledger/fabric/xyzzy/org2-peer1/tls/ca.crt"),
+                     command);
+    }
+
+    @Test
+    public void testDeployCommitsWithEndorsers() throws Exception
+    {
+        final RecordingRunner runner = new RecordingRunner();
+        final ChaincodeLifecycle lifecycle =
+                new ChaincodeLifecycle(buildNetwork(), runner, "mychannel", "orderer1:6050", ORDERER_TLS_CA);
+
+        final ChaincodeLifecycle.Report report = lifecycle.deploy(buildPackage(), "basic", "1", 1);
+
+        assertEquals(4, report.installs.size());
+        assertEquals(2, report.approvals.size());
+
+        //
+        // The endorsers' TLS root certs must be in the committer's context.
+        //
+        assertEquals(List.of("org1-peer1", "org2-peer1"),
+                     List.of(runner.endorsers.get(0).name, runner.endorsers.get(1).name));
+
+        final String commit = runner.commands.get(runner.commands.size() - 1);
+        assertTrue(commit.startsWith("org1-peer1: peer lifecycle chaincode commit"));
+        assertTrue(commit.contains("--peerAddresses org2-peer1:7051"));
+    }
+}
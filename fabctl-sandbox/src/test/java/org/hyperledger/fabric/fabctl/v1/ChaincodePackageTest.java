@@ -0,0 +1,173 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodeConnection;
+import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodeDescriptor;
+import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodeMetadata;
+import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodePackage;
+import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodePackageCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The chaincode package ID is computed locally, without a peer.  It is only useful if the archive is byte-stable.
+ */
+@Slf4j
+public class ChaincodePackageTest
+{
+    private static ChaincodeDescriptor describeAssetTransferBasic()
+    {
+        final ChaincodeMetadata metadata = new ChaincodeMetadata();
+        metadata.name = "asset-transfer-basic";
+        metadata.label = "basic_1.0";
+        metadata.image = "hyperledger/asset-transfer-basic";
+
+        final ChaincodeConnection connection = new ChaincodeConnection();
+        connection.address = metadata.name + ":9999";
+        connection.dial_timeout = "10s";
+        connection.tls_required = false;
+
+        return new ChaincodeDescriptor(metadata, connection);
+    }
+
+    @Test
+    public void testPackageID() throws Exception
+    {
+        final ChaincodePackage ccPackage = new ChaincodePackage(describeAssetTransferBasic());
+
+        log.info("Package ID: {}", ccPackage.packageID);
+
+        assertEquals("basic_1.0:" + DigestUtils.sha256Hex(ccPackage.archive), ccPackage.packageID);
+    }
+
+    @Test
+    public void testArchiveLayout() throws Exception
+    {
+        final ChaincodePackage ccPackage = new ChaincodePackage(describeAssetTransferBasic());
+
+        final List<String> entries = new ArrayList<>();
+        try (TarArchiveInputStream tis =
+                     new TarArchiveInputStream(new GzipCompressorInputStream(new ByteArrayInputStream(ccPackage.archive))))
+        {
+            TarArchiveEntry entry;
+            while ((entry = tis.getNextTarEntry()) != null)
+            {
+                entries.add(entry.getName());
+
+                assertEquals(0, entry.getModTime().getTime());
+                assertEquals(0, entry.getLongUserId());
+                assertEquals(0, entry.getLongGroupId());
+                assertEquals("", entry.getUserName());
+            }
+        }
+
+        assertEquals(List.of("metadata.json", "code.tar.gz"), entries);
+    }
+
+    @Test
+    public void testConfigMapCarriesPackageID() throws Exception
+    {
+        final ChaincodePackage ccPackage = new ChaincodePackage(describeAssetTransferBasic());
+        final ConfigMap cm = ccPackage.buildConfigMap();
+
+        assertEquals(ccPackage.packageID,
+                     cm.getMetadata().getAnnotations().get(ChaincodePackage.PACKAGE_ID_ANNOTATION));
+
+        final String hashLabel = cm.getMetadata().getLabels().get(ChaincodePackage.PACKAGE_HASH_LABEL);
+        assertTrue(hashLabel.length() <= 63);
+        assertTrue(ccPackage.hash.startsWith(hashLabel));
+
+        assertArrayEquals(ccPackage.archive,
+                          Base64.getDecoder().decode(cm.getBinaryData().get(ChaincodePackage.ARCHIVE_NAME)));
+    }
+
+    @Test
+    public void testArchiveIsDeterministic() throws Exception
+    {
+        final ChaincodePackage a = new ChaincodePackage(describeAssetTransferBasic());
+
+        Thread.sleep(1100);  // tar and gzip timestamps have one second granularity
+
+        final ChaincodePackage b = new ChaincodePackage(describeAssetTransferBasic());
+
+        assertArrayEquals(a.archive, b.archive);
+        assertEquals(a.packageID, b.packageID);
+    }
+
+    @Test
+    public void testDescriptorHash() throws Exception
+    {
+        final ChaincodeDescriptor a = describeAssetTransferBasic();
+        final ChaincodeDescriptor b = describeAssetTransferBasic();
+
+        assertEquals(ChaincodePackage.descriptorHash(a), ChaincodePackage.descriptorHash(b));
+
+        b.connection.address = "host.docker.internal:9999";
+        assertNotEquals(ChaincodePackage.descriptorHash(a), ChaincodePackage.descriptorHash(b));
+    }
+
+    @Test
+    public void testCacheReusesArchive() throws Exception
+    {
+        final ChaincodePackageCache cache = new ChaincodePackageCache();
+
+        final ChaincodePackage first = cache.get(describeAssetTransferBasic());
+        final ChaincodePackage second = cache.get(describeAssetTransferBasic());
+
+        assertSame(first.archive, second.archive);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    /**
+     * The name is not in the archive, so a renamed chaincode shares the archive, but not the descriptor.
+     */
+    @Test
+    public void testCacheKeepsCallerDescriptor() throws Exception
+    {
+        final ChaincodePackageCache cache = new ChaincodePackageCache();
+
+        final ChaincodeDescriptor renamed = describeAssetTransferBasic();
+        renamed.metadata.name = "asset-transfer-renamed";
+
+        final ChaincodePackage first = cache.get(describeAssetTransferBasic());
+        final ChaincodePackage second = cache.get(renamed);
+
+        assertEquals(1, cache.getMisses());
+        assertSame(first.archive, second.archive);
+        assertEquals(first.packageID, second.packageID);
+
+        assertEquals("asset-transfer-basic", first.descriptor.metadata.name);
+        assertEquals("asset-transfer-renamed", second.descriptor.metadata.name);
+        assertEquals("asset-transfer-renamed", second.buildConfigMap().getMetadata().getLabels().get("chaincode-name"));
+    }
+
+    @Test
+    public void testDiskCacheSurvivesRestart(@TempDir final Path dir) throws Exception
+    {
+        final ChaincodePackage built = new ChaincodePackageCache(dir.toFile()).get(describeAssetTransferBasic());
+
+        final ChaincodePackageCache restarted = new ChaincodePackageCache(dir.toFile());
+        final ChaincodePackage loaded = restarted.get(describeAssetTransferBasic());
+
+        assertEquals(0, restarted.getMisses());
+        assertEquals(built.packageID, loaded.packageID);
+    }
+}
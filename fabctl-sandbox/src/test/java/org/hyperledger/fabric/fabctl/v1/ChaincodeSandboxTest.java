@@ -5,27 +5,30 @@
  */
 package org.hyperledger.fabric.fabctl.v1;
 
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.fabric8.kubernetes.api.model.*;
 import io.fabric8.kubernetes.api.model.apps.Deployment;
-import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
 import io.fabric8.kubernetes.api.model.batch.v1.Job;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
-import org.apache.commons.compress.utils.IOUtils;
 import org.hyperledger.fabric.fabctl.v0.DeploymentUtil;
-import org.hyperledger.fabric.fabctl.v0.JobUtil;
+import org.hyperledger.fabric.fabctl.v0.JobResult;
+import org.hyperledger.fabric.fabctl.v0.LogFollower;
 import org.hyperledger.fabric.fabctl.v0.command.PeerCommand;
 import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodeConnection;
 import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodeDescriptor;
+import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodeLifecycle;
 import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodeMetadata;
+import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodePackage;
+import org.hyperledger.fabric.fabctl.v1.chaincode.ChaincodePackageCache;
+import org.hyperledger.fabric.fabctl.v1.chaincode.LifecycleRunner;
 import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
 import org.hyperledger.fabric.fabctl.v1.network.Environment;
+import org.hyperledger.fabric.fabctl.v1.network.OrganizationConfig;
+import org.hyperledger.fabric.fabctl.v1.network.PeerConfig;
+import org.hyperledger.fabric.fabctl.v1.template.ManifestTemplate;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -78,7 +81,8 @@ import static org.junit.jupiter.api.Assertions.*;
  *      - cc package can be built on fabctl client, loaded as a configmap, and then a Job run to copy configmap into a shared volume.  (meh.)
  *      - cc.yaml injected as configmap, and something in cluster runs to prepare cc.tar.gz on a volume share.   (similar to above, but closer to CRD)
  *      - serice endpoint with CURDL REST / HTTP API (meh)
- *  - How will the CHAINCODE_ID be assigned / accessed?  (Currently we scrape the peer stdout - is there a better technique?)
+ *  - How will the CHAINCODE_ID be assigned / accessed?  (It is label:sha256(package), computed by ChaincodePackage.  The
+ *    peer stdout is only checked to confirm.)
  *
  *
  * Let's pull on a thread in this test case:
@@ -124,6 +128,15 @@ public class ChaincodeSandboxTest extends TestBase
 {
     private static final String CHANNEL_ID = "mychannel";
 
+    private static final ManifestTemplate<Deployment> CHAINCODE_TEMPLATE =
+            ManifestTemplate.load("chaincode-deployment.yaml", Deployment.class);
+
+    /**
+     * Chaincode archives are re-used across test runs.  An unchanged descriptor keeps the same package ID.
+     */
+    private static final ChaincodePackageCache packageCache =
+            new ChaincodePackageCache(new File("build/chaincode-packages"));
+
     /**
      * Imagine that the user saves a chaincode.yaml file available to fabctl (it can be stored anywhere / any way)
      */
@@ -159,8 +172,8 @@ public class ChaincodeSandboxTest extends TestBase
      * This is a somewhat reasonable approach / stake for manipulating external chaincode :
      *
      * - create a cc descriptor document
-     * - create a cc package archive and load as a k8s config map
-     * - run `peer chaincode install ... chaincode.tar.gz` to generate {CHAINCODE_ID}
+     * - create a cc package archive, computing {CHAINCODE_ID} as label:sha256(archive), and load as a k8s config map
+     * - run `peer chaincode install ... chaincode.tar.gz` while the chaincode deployment starts with {CHAINCODE_ID}
      * - run remote peer commands with {CHAINCODE_ID} to approve and commit the chaincode.
      */
     @Test
@@ -168,15 +181,16 @@ public class ChaincodeSandboxTest extends TestBase
     {
         final ChaincodeDescriptor descriptor = describeAssetTransferBasic();
 
+        //
+        // Build (or re-use) the chaincode archive locally.  The package ID is label:sha256(archive), no install required.
+        //
+        final ChaincodePackage ccPackage = packageCache.get(descriptor);
+        final String chaincodeID = ccPackage.packageID;
+        log.info("Chaincode ID: {}", chaincodeID);
+
         ConfigMap cm = null;
         try
         {
-            //
-            // Create a config map with the chaincode archive.
-            //
-            cm = createChaincodeArchiveConfigMap(descriptor);
-
-
             //
             // When running peer admin commands we need to load the MSP context for the admin user and the peer.
             // Normally these would come from the network descriptor, but let's just read them from the conf folder
@@ -192,97 +206,61 @@ public class ChaincodeSandboxTest extends TestBase
 
 
             //
-            // peer lifecycle chaincode install ...
-            //
-            final Job installJob =
-                    buildRemoteJob(new PeerCommand("peer",
-                                                   "lifecycle",
-                                                   "chaincode", "install",
-                                                   "/var/hyperledger/fabric/chaincode/chaincode.tar.gz"),  // << populated by cm volume
-                                   ORG1_PEER1_ENVIRONMENT,
-                                   mspContext);
-
-            //
-            // + a tweak to the job descriptor to load a new volume and volume mount for the chaincode configmap.
-            //
-            installJob.getSpec()
-                      .getTemplate()
-                      .getSpec()
-                      .getVolumes()
-                      .add(new VolumeBuilder()
-                                   .withName("chaincode-config")
-                                   .withConfigMap(new ConfigMapVolumeSourceBuilder()
-                                                          .withName(cm.getMetadata().getName()) // new configmap
-                                                          .build())
-                                   .build());
-
-
-            //
-            // Volume mount is in the [main] container.
+            // Skip the install if the peer already has the package, as ChaincodeLifecycle.deploy() does.
             //
-            final Container main =
-                    installJob.getSpec()
-                              .getTemplate()
-                              .getSpec()
-                              .getContainers()
-                              .get(0);
-
-            assertEquals("main", main.getName());
-
-            main.getVolumeMounts()
-                .add(new VolumeMountBuilder()
-                             .withName("chaincode-config")
-                             .withMountPath("/var/hyperledger/fabric/chaincode")
-                             .build());
+            final JobResult query =
+                    logResult(executeAsync(new PeerCommand("peer", "lifecycle", "chaincode", "queryinstalled"),
+                                           ORG1_PEER1_ENVIRONMENT,
+                                           Arrays.asList(mspContext)).get());
+            assertEquals(0, query.getExitCode());
 
-
-            //
-            // Install.
-            //
-            final Job job = JobUtil.runJob(client, installJob, JOB_TIMEOUT, JOB_TIMEOUT_UNITS);
-            final Pod mainPod = JobUtil.findMainPod(client, job.getMetadata().getName());
-            final PodStatus status = mainPod.getStatus();
-            final int exitCode = JobUtil.getContainerStatusCode(status, "main");
-
-            log.info("Command output:");
-
-
-            //
-            // Print the [main] container / pod logs, scraping the logs to determine CHAINCODE_ID
-            //
-            String chaincodeID = null;
-            try (final Reader logReader =
-                         client.pods()
-                               .withName(mainPod.getMetadata().getName())
-                               .inContainer("main")
-                               .getLogReader();
-                 final BufferedReader reader = new BufferedReader(logReader))
+            if (ChaincodeLifecycle.isInstalled(query, chaincodeID))
             {
-                String line;
-                while ((line = reader.readLine()) != null)
-                {
-                    log.info(line);
-
-                    final String token = "Chaincode code package identifier: ";
-                    if (line.contains(token))
-                    {
-                        chaincodeID = line.substring(line.indexOf(token) + token.length());
-                    }
-                }
+                log.info("Peer org1-peer1 already has package {}", chaincodeID);
+                deployChaincode(descriptor, chaincodeID);
+            }
+            else
+            {
+                //
+                // Create a config map with the chaincode archive.
+                //
+                cm = createChaincodeArchiveConfigMap(ccPackage);
+
+                //
+                // peer lifecycle chaincode install ...
+                //
+                final Job installJob =
+                        buildRemoteJob(new PeerCommand("peer",
+                                                       "lifecycle",
+                                                       "chaincode", "install",
+                                                       "/var/hyperledger/fabric/chaincode/chaincode.tar.gz"),  // << populated by cm volume
+                                       ORG1_PEER1_ENVIRONMENT,
+                                       mspContext);
+
+                //
+                // + a tweak to the job descriptor to load a new volume and volume mount for the chaincode configmap.
+                //
+                mountChaincodeArchive(installJob, cm);
+
+
+                //
+                // Install, following the [main] container log for the package ID reported by the peer.
+                //
+                final LogFollower follower = new LogFollower();
+                final CompletableFuture<String> installedID = follower.match("Chaincode code package identifier: ");
+
+                uploadMSPBlobs(mspContext);
+                final CompletableFuture<JobResult> install = jobExecutor.submit(installJob, follower);
+
+
+                //
+                // The chaincode ID is already known, so the deployment starts alongside the install.
+                //
+                deployChaincode(descriptor, chaincodeID);
+
+                assertEquals(0, logResult(install.get()).getExitCode());
+                assertEquals(chaincodeID, installedID.get());
             }
-
-            log.info("Command exit: {}", exitCode);
-            log.info("Chaincode ID: {}", chaincodeID);
-
-            assertEquals(0, exitCode);
-            assertNotNull(chaincodeID);
-            assertTrue(chaincodeID.startsWith(descriptor.metadata.label + ":"));  // can't exact match but at least it looks about right.
-
-
-            //
-            // Start the chaincode deployment
-            //
-            deployChaincode(descriptor, chaincodeID);
 
 
             //
@@ -334,6 +312,199 @@ public class ChaincodeSandboxTest extends TestBase
         }
     }
 
+    /**
+     * Rather than installing on a single peer and running approve / commit in sequence, drive the chaincode
+     * lifecycle from the network config:  install on every peer in parallel, approve once per org as soon as the
+     * org's peers are ready, and then commit.  Peers already holding the package are skipped.
+     */
+    @Test
+    public void testDeployChaincodeToNetwork() throws Exception
+    {
+        final ChaincodeDescriptor descriptor = describeAssetTransferBasic();
+        final ChaincodePackage ccPackage = packageCache.get(descriptor);
+
+        ConfigMap cm = null;
+        try
+        {
+            cm = createChaincodeArchiveConfigMap(ccPackage);
+
+            deployChaincode(descriptor, ccPackage.packageID);
+
+            final ChaincodeLifecycle lifecycle =
+                    new ChaincodeLifecycle(new TestNetwork(),
+                                           new TestNetworkRunner(cm),
+                                           CHANNEL_ID,
+                                           "orderer1:6050",
+                                           "/var/hyperledger/fabric/xyzzy/orderer1.example.com/msp/tlscacerts/tlsca.example.com-cert.pem");
+
+            final ChaincodeLifecycle.Report report = lifecycle.deploy(ccPackage, "basic", "1", 1);
+
+            assertEquals(4, report.installs.size());
+            assertEquals(2, report.approvals.size());
+        }
+        finally
+        {
+            if (cm != null)
+            {
+                client.configMaps().delete(cm);
+            }
+        }
+    }
+
+    /**
+     * Run lifecycle commands as the org Admin of the test network, in the peer's TLS / address context.
+     */
+    private class TestNetworkRunner implements LifecycleRunner
+    {
+        private final ConfigMap chaincodeConfigMap;
+
+        private TestNetworkRunner(final ConfigMap chaincodeConfigMap)
+        {
+            this.chaincodeConfigMap = chaincodeConfigMap;
+        }
+
+        @Override
+        public CompletableFuture<JobResult> execute(final OrganizationConfig org,
+                                                    final PeerConfig peer,
+                                                    final PeerCommand command)
+        {
+            try
+            {
+                return executeAsync(command, adminEnvironment(org, peer), adminContext(org, peer));
+            }
+            catch (Exception ex)
+            {
+                return CompletableFuture.failedFuture(ex);
+            }
+        }
+
+        @Override
+        public CompletableFuture<JobResult> execute(final OrganizationConfig org,
+                                                    final PeerConfig peer,
+                                                    final PeerCommand command,
+                                                    final ChaincodePackage ccPackage)
+        {
+            try
+            {
+                final MSPDescriptor[] msps = adminContext(org, peer).toArray(new MSPDescriptor[0]);
+                final Job job = buildRemoteJob(command, adminEnvironment(org, peer), msps);
+
+                mountChaincodeArchive(job, chaincodeConfigMap);
+
+                uploadMSPBlobs(msps);
+
+                return jobExecutor.submit(job)
+                                  .thenApply(TestBase::logResult);
+            }
+            catch (IOException ex)
+            {
+                return CompletableFuture.failedFuture(ex);
+            }
+        }
+
+        @Override
+        public CompletableFuture<JobResult> execute(final OrganizationConfig org,
+                                                    final PeerConfig peer,
+                                                    final PeerCommand command,
+                                                    final List<PeerConfig> endorsers)
+        {
+            try
+            {
+                //
+                // Each endorser's MSP unfurls its tls/ca.crt to the path the endorser itself is configured with.
+                //
+                final List<MSPDescriptor> context = new ArrayList<>(adminContext(org, peer));
+                for (PeerConfig endorser : endorsers)
+                {
+                    if (! context.contains(endorser.msps.get(0)))
+                    {
+                        context.add(endorser.msps.get(0));
+                    }
+                }
+
+                return executeAsync(command, adminEnvironment(org, peer), context);
+            }
+            catch (Exception ex)
+            {
+                return CompletableFuture.failedFuture(ex);
+            }
+        }
+
+        @Override
+        public String tlsRootCertFile(final OrganizationConfig org, final PeerConfig peer)
+        {
+            return peer.environment.get("CORE_PEER_TLS_ROOTCERT_FILE");
+        }
+
+        private Environment adminEnvironment(final OrganizationConfig org, final PeerConfig peer)
+        {
+            final Environment environment = new Environment();
+            environment.put("FABRIC_LOGGING_SPEC",            "INFO");
+            environment.put("CORE_PEER_TLS_ENABLED",          "true");
+            environment.put("CORE_PEER_TLS_ROOTCERT_FILE",    peer.environment.get("CORE_PEER_TLS_ROOTCERT_FILE"));
+            environment.put("CORE_PEER_ADDRESS",              peer.environment.get("CORE_PEER_ADDRESS"));
+            environment.put("CORE_PEER_LOCALMSPID",           peer.environment.get("CORE_PEER_LOCALMSPID"));
+            environment.put("CORE_PEER_MSPCONFIGPATH",        "/var/hyperledger/fabric/xyzzy/Admin@" + domain(org) + "/msp");
+
+            return environment;
+        }
+
+        /**
+         * The peer's MSP (for TLS), the org admin, and orderer1 (for the orderer TLS CA.)
+         */
+        private List<MSPDescriptor> adminContext(final OrganizationConfig org, final PeerConfig peer)
+                throws IOException
+        {
+            final String domain = domain(org);
+
+            return List.of(peer.msps.get(0),
+                           new MSPDescriptor("msp-com.example." + org.name.toLowerCase() + ".users.admin",
+                                             new File("config/crypto-config/peerOrganizations/" + domain + "/users/Admin@" + domain)),
+                           new MSPDescriptor("msp-com.example.orderer1",
+                                             new File("config/crypto-config/ordererOrganizations/example.com/orderers/orderer1.example.com")));
+        }
+
+        private String domain(final OrganizationConfig org)
+        {
+            return org.name.toLowerCase() + ".example.com";
+        }
+    }
+
+    /**
+     * Add a volume and [main] container volume mount for the chaincode package configmap.
+     */
+    private static void mountChaincodeArchive(final Job job, final ConfigMap cm)
+    {
+        job.getSpec()
+           .getTemplate()
+           .getSpec()
+           .getVolumes()
+           .add(new VolumeBuilder()
+                        .withName("chaincode-config")
+                        .withConfigMap(new ConfigMapVolumeSourceBuilder()
+                                               .withName(cm.getMetadata().getName()) // new configmap
+                                               .build())
+                        .build());
+
+        //
+        // Volume mount is in the [main] container.
+        //
+        final Container main =
+                job.getSpec()
+                   .getTemplate()
+                   .getSpec()
+                   .getContainers()
+                   .get(0);
+
+        assertEquals("main", main.getName());
+
+        main.getVolumeMounts()
+            .add(new VolumeMountBuilder()
+                         .withName("chaincode-config")
+                         .withMountPath("/var/hyperledger/fabric/chaincode")
+                         .build());
+    }
+
     /**
      * Deploy a CCaaS deployment + service for an external chaincode endpoint.
      */
@@ -342,48 +513,12 @@ public class ChaincodeSandboxTest extends TestBase
     {
         log.info("Deploying chaincode\n{}", yamlMapper.writeValueAsString(descriptor));
 
-        // @formatter:off
         final Deployment deployment =
                 client.apps()
                       .deployments()
-                      .createOrReplace(new DeploymentBuilder()
-                                      .withApiVersion("apps/v1")
-                                      .withNewMetadata()
-                                        .withName(descriptor.metadata.getName())
-                                      .endMetadata()
-                                      .withNewSpec()
-                                        .withProgressDeadlineSeconds(30)
-                                        .withReplicas(1)
-                                        .withNewSelector()
-                                            .withMatchLabels(Map.of("app", descriptor.getMetadata().getName()))
-                                        .endSelector()
-
-                                        .withNewTemplate()
-                                            .withNewMetadata()
-                                                .withLabels(Map.of("app", descriptor.getMetadata().getName()))
-                                            .endMetadata()
-                                            .withNewSpec()
-                                                .addNewContainer()
-                                                    .withName("main")
-                                                    .withImage(descriptor.metadata.getImage())
-                                                    .withImagePullPolicy("IfNotPresent")
-                                                    .withEnv(Arrays.asList(new EnvVarBuilder()
-                                                                                   .withName("CHAINCODE_SERVER_ADDRESS")
-                                                                                   .withValue("0.0.0.0:9999")
-                                                                                   .build(),
-                                                                           new EnvVarBuilder()
-                                                                                   .withName("CHAINCODE_ID")
-                                                                                   .withValue(chaincodeID)
-                                                                                   .build()))
-                                                    .withPorts(Arrays.asList(new ContainerPortBuilder()
-                                                                                     .withContainerPort(9999)
-                                                                                     .build()))
-                                                .endContainer()
-                                            .endSpec()
-                                        .endTemplate()
-                                      .endSpec()
-                                      .build());
-        // @formatter:on
+                      .createOrReplace(CHAINCODE_TEMPLATE.render(Map.of("name", descriptor.metadata.getName(),
+                                                                        "image", descriptor.metadata.getImage(),
+                                                                        "chaincodeID", chaincodeID)));
 
         log.info("Created deployment:\n{}", yamlMapper.writeValueAsString(deployment));
 
@@ -391,23 +526,14 @@ public class ChaincodeSandboxTest extends TestBase
         //
         // Create a service for the deployment
         //
-        // @formatter:on
         final Service service =
                 client.services()
-                      .createOrReplace(new ServiceBuilder()
-                                      .withNewMetadata()
-                                        .withName(descriptor.metadata.getName())
-                                      .endMetadata()
-                                      .withNewSpec()
-                                        .withSelector(Map.of("app", descriptor.metadata.getName()))
-                                        .withPorts(new ServicePortBuilder()
-                                                           .withName("chaincode")
-                                                           .withProtocol("TCP")
-                                                           .withPort(9999)
-                                                           .build())
-                                      .endSpec()
-                                      .build());
-        // @formatter:off
+                      .createOrReplace(buildService(descriptor.metadata.getName(),
+                                                    List.of(new ServicePortBuilder()
+                                                                    .withName("chaincode")
+                                                                    .withProtocol("TCP")
+                                                                    .withPort(9999)
+                                                                    .build())));
 
         log.info("Created service:\n{}", service);
 
@@ -446,128 +572,13 @@ public class ChaincodeSandboxTest extends TestBase
     /**
      * Create a configmap with an embedded chaincode package archive.
      */
-    private ConfigMap createChaincodeArchiveConfigMap(final ChaincodeDescriptor descriptor) throws Exception
+    private ConfigMap createChaincodeArchiveConfigMap(final ChaincodePackage ccPackage) throws Exception
     {
         final ConfigMap cm =
                 client.configMaps()
-                      .create(buildChaincodeArchiveConfigMap(descriptor));
+                      .create(ccPackage.buildConfigMap());
 
         log.info("created config map:\n{}", yamlMapper.writeValueAsString(cm));
         return cm;
     }
-
-    /**
-     * Build a configmap with an embedded chaincode package archive.
-     */
-    private ConfigMap buildChaincodeArchiveConfigMap(final ChaincodeDescriptor descriptor) throws IOException
-    {
-        final byte[] ccPackageBytes = createChaincodeArchive(descriptor);
-        final String encoded = Base64.getEncoder().encodeToString(ccPackageBytes);
-
-        final Map<String, String> binaryData = new TreeMap<>();
-        binaryData.put("chaincode.tar.gz", encoded);
-
-        final ConfigMap configMap =
-                new ConfigMapBuilder()
-                        .withNewMetadata()
-                        .withGenerateName(descriptor.metadata.name + "-")
-                        .addToLabels("chaincode-type", descriptor.metadata.type)
-                        .addToLabels("chaincode-name", descriptor.metadata.name)
-                        .addToLabels("chaincode-label", descriptor.metadata.label)
-                        // would really like to add chaincode-id here!
-                        .endMetadata()
-                        .withBinaryData(binaryData)
-                        .build();
-
-        return configMap;
-    }
-
-    /**
-     * Create a byte array for a tar.gz containing metadata.json and code.tar.gz (connection.json)
-     */
-    private byte[] createChaincodeArchive(final ChaincodeDescriptor descriptor) throws IOException
-    {
-        //
-        // metadata.json
-        //
-        final ObjectNode metadata = objectMapper.createObjectNode();
-        metadata.put("type", descriptor.metadata.type);
-        metadata.put("label", descriptor.metadata.label);
-
-        final byte[] metaBytes =
-                objectMapper.writerWithDefaultPrettyPrinter()
-                            .writeValueAsBytes(metadata);
-
-        final byte[] codeArchiveBytes = createCodeArchive(descriptor);
-
-        //
-        // cc.tgz:
-        //   metadata.json
-        //   code.tar.gz
-        //
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             GzipCompressorOutputStream gzos = new GzipCompressorOutputStream(baos);
-             TarArchiveOutputStream tos = new TarArchiveOutputStream(gzos))
-        {
-            // metadata.json
-            final TarArchiveEntry metaEntry = new TarArchiveEntry("metadata.json");
-            metaEntry.setSize(metaBytes.length);
-            tos.putArchiveEntry(metaEntry);
-            IOUtils.copy(new ByteArrayInputStream(metaBytes), tos);
-            tos.closeArchiveEntry();
-
-            final TarArchiveEntry codeEntry = new TarArchiveEntry("code.tar.gz");
-            codeEntry.setSize(codeArchiveBytes.length);
-            tos.putArchiveEntry(codeEntry);
-            IOUtils.copy(new ByteArrayInputStream(codeArchiveBytes), tos);
-            tos.closeArchiveEntry();
-
-            tos.finish();
-            tos.close();
-
-            return baos.toByteArray();
-        }
-    }
-
-    /**
-     * Create a code.tar.gz archive containing connection.json
-     */
-    private byte[] createCodeArchive(final ChaincodeDescriptor descriptor) throws IOException
-    {
-        //
-        // connection.json
-        // {
-        //   "address": "host.docker.internal:9999",
-        //   "dial_timeout": "10s",
-        //   "tls_required": false
-        // }
-        //
-        // todo: would it be better just to serialize descriptor.connection as json?
-        //
-        final ObjectNode connection = objectMapper.createObjectNode();
-        connection.put("address", descriptor.connection.address);
-        connection.put("dial_timeout", descriptor.connection.dial_timeout);
-        connection.put("tls_required", descriptor.connection.tls_required);
-
-        final byte[] connectionBytes =
-                objectMapper.writerWithDefaultPrettyPrinter()
-                            .writeValueAsBytes(connection);
-
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             GzipCompressorOutputStream gzos = new GzipCompressorOutputStream(baos);
-             TarArchiveOutputStream tos = new TarArchiveOutputStream(gzos))
-        {
-            // metadata.json
-            final TarArchiveEntry metaEntry = new TarArchiveEntry("connection.json");
-            metaEntry.setSize(connectionBytes.length);
-            tos.putArchiveEntry(metaEntry);
-            IOUtils.copy(new ByteArrayInputStream(connectionBytes), tos);
-            tos.closeArchiveEntry();
-
-            tos.finish();
-            tos.close();
-
-            return baos.toByteArray();
-        }
-    }
 }
@@ -5,13 +5,12 @@
  */
 package org.hyperledger.fabric.fabctl.v1;
 
-import io.fabric8.kubernetes.api.model.ConfigMap;
-import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.fabric.fabctl.v0.JobResult;
 import org.hyperledger.fabric.fabctl.v0.command.ConfigTXGenCommand;
 import org.hyperledger.fabric.fabctl.v0.command.PeerCommand;
 import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
@@ -176,6 +175,8 @@ public class CreateAndJoinChannelTest extends TestBase
         // This code is intentionally "ugly" - just spelling out the approach here of what's being passed around 
         // in the execution scope. 
         //
+        // The joins are independent of each other, so all four Jobs are submitted at once and run concurrently.
+        //
         
         final PeerCommand joinCommand =
                 new PeerCommand("peer",
@@ -186,8 +187,8 @@ public class CreateAndJoinChannelTest extends TestBase
         //
         // org1-peer1
         //
-        assertEquals(0,
-                     execute(joinCommand, 
+        final CompletableFuture<JobResult> org1Peer1Join =
+                executeAsync(joinCommand, 
                              new Environment()
                              {{
                                  put("FABRIC_LOGGING_SPEC",            "INFO");
@@ -199,14 +200,14 @@ public class CreateAndJoinChannelTest extends TestBase
 
                              }},
                              List.of(org1Peer1MSP,
-                                     org1AdminMSP)));
+                                     org1AdminMSP));
 
 
         //
         // org1-peer2
         //
-        assertEquals(0,
-                     execute(joinCommand,
+        final CompletableFuture<JobResult> org1Peer2Join =
+                executeAsync(joinCommand,
                              new Environment()
                              {{
                                  put("FABRIC_LOGGING_SPEC",            "INFO");
@@ -218,15 +219,15 @@ public class CreateAndJoinChannelTest extends TestBase
 
                              }},
                              List.of(org1Peer2MSP,
-                                     org1AdminMSP)));
+                                     org1AdminMSP));
 
 
 
         //
         // org2-peer1
         //
-        assertEquals(0,
-                     execute(joinCommand,
+        final CompletableFuture<JobResult> org2Peer1Join =
+                executeAsync(joinCommand,
                              new Environment()
                              {{
                                  put("FABRIC_LOGGING_SPEC",            "INFO");
@@ -238,14 +239,14 @@ public class CreateAndJoinChannelTest extends TestBase
 
                              }},
                              List.of(org2Peer1MSP,
-                                     org2AdminMSP)));
+                                     org2AdminMSP));
 
 
         //
         // org2-peer2
         //
-        assertEquals(0,
-                     execute(joinCommand,
+        final CompletableFuture<JobResult> org2Peer2Join =
+                executeAsync(joinCommand,
                              new Environment()
                              {{
                                  put("FABRIC_LOGGING_SPEC",            "INFO");
@@ -257,28 +258,16 @@ public class CreateAndJoinChannelTest extends TestBase
 
                              }},
                              List.of(org2Peer2MSP,
-                                     org2AdminMSP)));
-    }
+                                     org2AdminMSP));
 
-    /**
-     * Create an MSP config map from an MSP Descriptor
-     *
-     * todo: add some metadata labels to the configmap (e.g. id, org, name, type, etc .etc. )
-     */
-    private ConfigMap createMSPConfigMap(final MSPDescriptor msp) throws Exception
-    {
-        final String cmName = msp.name;
-        final String mspKey = msp.name + ".yaml";
-        final String mspVal = yamlMapper.writeValueAsString(msp);
-
-        return client.configMaps()
-                     .createOrReplace(new ConfigMapBuilder()
-                                              .withNewMetadata()
-                                              .withName(cmName)
-                                              .endMetadata()
-                                              .withImmutable(true)
-                                              .withData(Map.of(mspKey, mspVal))
-                                              .build());
+
+        //
+        // Wait for all of the joins to complete.
+        //
+        assertEquals(0, org1Peer1Join.get().getExitCode());
+        assertEquals(0, org1Peer2Join.get().getExitCode());
+        assertEquals(0, org2Peer1Join.get().getExitCode());
+        assertEquals(0, org2Peer2Join.get().getExitCode());
     }
 
 }
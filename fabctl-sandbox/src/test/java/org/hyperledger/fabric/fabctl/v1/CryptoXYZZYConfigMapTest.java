@@ -74,6 +74,7 @@ import static org.junit.jupiter.api.Assertions.*;
  * a few approaches and pick one that works.  What is the proper NAME for an msp-context : XYZZY?
  *
  * NOTE: check up on k8s immutable configmaps to minimize traffic on the api controller, watches, etc.
+ *       (v1 MSP config maps are now immutable and named for their content.  See TestBase.createMSPConfigMap)
  *
  *
  * OUTCOMES FROM THIS TEST:
@@ -8,7 +8,6 @@ package org.hyperledger.fabric.fabctl.v1;
 import com.fasterxml.jackson.databind.JsonNode;
 import io.fabric8.kubernetes.api.model.*;
 import io.fabric8.kubernetes.api.model.apps.Deployment;
-import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.Arrays;
@@ -20,6 +19,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.compress.utils.IOUtils;
 import org.hyperledger.fabric.fabctl.v0.DeploymentUtil;
 import org.hyperledger.fabric.fabctl.v1.network.*;
+import org.hyperledger.fabric.fabctl.v1.template.ManifestTemplate;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -100,6 +100,9 @@ public class FabricCAOperationsGuideTest extends TestBase
 {
     public static final String NETWORK_NAME = "ca-ops-guide";
 
+    private static final ManifestTemplate<Deployment> CA_TEMPLATE =
+            ManifestTemplate.load("ca-deployment.yaml", Deployment.class);
+
     public NetworkConfig describeNetwork()
     {
         final OrganizationConfig org0 = new OrganizationConfig("Org0", "Org0MSP");
@@ -380,32 +383,9 @@ public class FabricCAOperationsGuideTest extends TestBase
         log.info("Launching CA:\n{}", yamlMapper.writeValueAsString(config));
 
         final Deployment template =
-                new DeploymentBuilder()
-                        .withApiVersion("apps/v1")
-                        .withNewMetadata()
-                        .withName(config.getName())
-                        .endMetadata()
-                        .withNewSpec()
-                        .withReplicas(1)
-                        .withNewSelector()
-                        .withMatchLabels(Map.of("app", config.getName()))
-                        .endSelector()
-                        .withNewTemplate()
-                        .withNewMetadata()
-                        .withLabels(Map.of("app", config.getName()))
-                        // todo: other labels here.
-                        .endMetadata()
-                        .withNewSpec()
-                        .addNewContainer()
-                        .withName("main")
-                        .withImage("hyperledger/fabric-ca:latest")
-                        .withEnv(config.environment.asEnvVarList())
-                        .withPorts(new ContainerPortBuilder().withContainerPort(config.port).build())
-                        .endContainer()
-                        .endSpec()
-                        .endTemplate()
-                        .endSpec()
-                        .build();
+                CA_TEMPLATE.render(Map.of("name", config.getName(),
+                                          "env", config.environment.asEnvVarList(),
+                                          "port", config.port));
 
         final Deployment deployment =
                 client.apps()
@@ -424,15 +404,7 @@ public class FabricCAOperationsGuideTest extends TestBase
 
         final Service service =
                 client.services()
-                      .create(new ServiceBuilder()
-                                      .withNewMetadata()
-                                      .withName(config.getName())
-                                      .endMetadata()
-                                      .withNewSpec()
-                                      .withSelector(Map.of("app", config.getName()))
-                                      .withPorts(servicePort)
-                                      .endSpec()
-                                      .build());
+                      .create(buildService(config.getName(), List.of(servicePort)));
 
         log.info("Created Service:\n{}", yamlMapper.writeValueAsString(service));
 
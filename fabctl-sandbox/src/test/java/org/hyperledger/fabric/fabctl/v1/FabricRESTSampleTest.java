@@ -14,6 +14,7 @@ import io.fabric8.kubernetes.api.model.apps.Deployment;
 import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -311,12 +312,16 @@ public class FabricRESTSampleTest extends TestBase
         final ObjectNode peerTLSCACerts = objectMapper.createObjectNode();
         final ObjectNode grpcOptions = objectMapper.createObjectNode();
 
+        //
+        // TestNetwork descriptors refer to their files by digest.
+        //
         peerTLSCACerts.put("pem",
-                           peerConfig.getMsps()
-                                     .get(0)
-                                     .getTls()
-                                     .get("ca.crt")
-                                     .textValue());   // todo: oof!  Is this the correct cert???
+                           new String(blobStore.get(peerConfig.getMsps()
+                                                              .get(0)
+                                                              .getTls()
+                                                              .get("ca.crt")
+                                                              .textValue()),
+                                      StandardCharsets.UTF_8));   // todo: oof!  Is this the correct cert???
 
         grpcOptions.put("ssl-target-name-override", peerConfig.name);
         grpcOptions.put("hostnameOverride", peerConfig.name);
@@ -7,17 +7,27 @@ package org.hyperledger.fabric.fabctl.v1;
 
 import io.fabric8.kubernetes.api.model.*;
 import io.fabric8.kubernetes.api.model.apps.Deployment;
-import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.hyperledger.fabric.fabctl.v0.DeploymentUtil;
+import org.hyperledger.fabric.fabctl.v0.JobResult;
 import org.hyperledger.fabric.fabctl.v0.command.ConfigTXGenCommand;
+import org.hyperledger.fabric.fabctl.v1.bootstrap.NetworkBootstrap;
+import org.hyperledger.fabric.fabctl.v1.bootstrap.NetworkBootstrapActions;
+import org.hyperledger.fabric.fabctl.v1.bootstrap.TaskGraph;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPBlobStore;
 import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
 import org.hyperledger.fabric.fabctl.v1.network.*;
+import org.hyperledger.fabric.fabctl.v1.reconcile.BatchApplier;
+import org.hyperledger.fabric.fabctl.v1.reconcile.NetworkManifests;
+import org.hyperledger.fabric.fabctl.v1.reconcile.NetworkReconciler;
+import org.hyperledger.fabric.fabctl.v1.template.ManifestTemplate;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -55,41 +65,208 @@ public class InitFabricNetworkTest extends TestBase
 
     protected static final String CCS_BUILDER_IMAGE = "hyperledgendary/fabric-ccs-builder";
 
+    private static final ManifestTemplate<Deployment> PEER_TEMPLATE =
+            ManifestTemplate.load("peer-deployment.yaml", Deployment.class);
+
+    private static final ManifestTemplate<Deployment> ORDERER_TEMPLATE =
+            ManifestTemplate.load("orderer-deployment.yaml", Deployment.class);
+
+    private static final List<ServicePort> PEER_PORTS =
+            List.of(new ServicePortBuilder()
+                            .withName("gossip")
+                            .withProtocol("TCP")
+                            .withPort(7051)
+                            .build(),
+                    new ServicePortBuilder()
+                            .withName("chaincode")
+                            .withProtocol("TCP")
+                            .withPort(7052)
+                            .build(),
+                    new ServicePortBuilder()
+                            .withName("operations")
+                            .withProtocol("TCP")
+                            .withPort(9443)
+                            .build());
+
+    private static final List<ServicePort> ORDERER_PORTS =
+            List.of(new ServicePortBuilder()
+                            .withName("general")
+                            .withProtocol("TCP")
+                            .withPort(6050)
+                            .build(),
+                    new ServicePortBuilder()
+                            .withName("operations")
+                            .withProtocol("TCP")
+                            .withPort(8443)
+                            .build(),
+                    new ServicePortBuilder()
+                            .withName("admin")
+                            .withProtocol("TCP")
+                            .withPort(9443)
+                            .build());
+
+    /**
+     * Bootstrap parallelism: the maximum number of network steps running at any one time.
+     */
+    private static final int BOOTSTRAP_PARALLELISM = 8;
+
+    /**
+     * All of the network's deployments must be ready within this window.
+     */
+    private static final Duration ROLLOUT_TIMEOUT = Duration.ofMinutes(2);
+
+    /**
+     * Rather than running the bootstrap steps in a fixed, serial sequence, the network bring-up is described
+     * as a task graph derived from the network config.  Independent steps (MSP config maps, peer launch,
+     * ...) run concurrently, and the bring-up takes roughly as long as the longest chain of dependent steps:
+     *
+     *   fabric-config + msp config maps --> genesis block --> orderers
+     *   fabric-config + msp config maps --> peers
+     */
     @Test
     public void testInitFabricNetwork() throws Exception
     {
         final NetworkConfig network = new TestNetwork();
         log.info("Launching network\n{}", yamlMapper.writeValueAsString(network));
 
+        final NetworkBootstrapActions actions = new NetworkBootstrapActions()
+        {
+            @Override
+            public void createFabricConfig() throws Exception
+            {
+                //
+                // Create the fabric-config ConfigMap from local /conf/* files.
+                //
+                createFabricConfigConfigMap();
+            }
 
-        //
-        // Create the fabric-config ConfigMap from local /conf/* files.
-        //
-        createFabricConfigConfigMap();
+            @Override
+            public void createMSPConfigMap(final MSPDescriptor msp) throws Exception
+            {
+                log.info("Created MSP config map: {}",
+                         TestBase.createMSPConfigMap(msp).getMetadata().getName());
+            }
 
+            @Override
+            public void createGenesisBlock(final NetworkConfig network) throws Exception
+            {
+                InitFabricNetworkTest.this.createGenesisBlock(network);
+            }
 
-        //
-        // Create an MSP configuration map for each node in the network.
-        //
-        createMSPDescriptorConfigMaps(network);
+            @Override
+            public Deployment launchOrderer(final OrdererConfig orderer) throws Exception
+            {
+                //
+                // Launch the orderer in the correct context (env + MSP)
+                //
+                return InitFabricNetworkTest.this.launchOrderer(network.metadata.name, orderer);
+            }
 
+            @Override
+            public Deployment launchPeer(final PeerConfig peer) throws Exception
+            {
+                //
+                // Launch the peer in the correct context (env + MSP)
+                //
+                return InitFabricNetworkTest.this.launchPeer(network.metadata.name, peer);
+            }
 
-        //
-        // Create the genesis block for the test network.
-        //
-        createGenesisBlock(network);
+            @Override
+            public Map<String, Duration> waitForDeployments(final Collection<Deployment> deployments) throws Exception
+            {
+                //
+                // One watch and one deadline for the whole network, rather than a minute per node in turn.
+                //
+                return DeploymentUtil.waitForDeployments(client,
+                                                         deployments,
+                                                         Instant.now().plus(ROLLOUT_TIMEOUT));
+            }
+        };
 
+        final NetworkBootstrap bootstrap = new NetworkBootstrap(network, actions);
+        final TaskGraph.Report report = bootstrap.run(BOOTSTRAP_PARALLELISM);
 
-        //
-        // Launch the orderers in the correct context (env + MSP), blocking until all deployments are ready.
-        //
-        launchOrderers(network);
+        log.info("Network is up after {} ms.  Critical path: {}",
+                 report.elapsed.toMillis(),
+                 report.criticalPath);
 
+        for (Map.Entry<String, Duration> e : bootstrap.getRolloutTimes().entrySet())
+        {
+            log.info("  {} ready after {} ms", e.getKey(), e.getValue().toMillis());
+        }
+    }
 
-        //
-        // Launch the peers in the correct context (env + MSP), blocking until all deployments are ready.
-        //
-        launchPeers(network);
+    /**
+     * The same network, built as manifests for the reconciler rather than created one by one.
+     */
+    private final NetworkManifests manifests = new NetworkManifests()
+    {
+        @Override
+        public List<HasMetadata> buildMSP(final MSPDescriptor msp) throws Exception
+        {
+            final List<HasMetadata> resources = new ArrayList<>();
+
+            //
+            // The deployments mount the msp-blobs volume under the same condition (see addMSPBlobVolume.)
+            //
+            if (MSP_BLOBS)
+            {
+                for (String digest : blobStore.digests(List.of(msp)))
+                {
+                    resources.add(blobStore.buildConfigMap(digest));
+                }
+            }
+
+            resources.add(buildMSPConfigMap(msp));
+
+            //
+            // Updated in place when the crypto material changes, rotating the certificates of the running nodes.
+            //
+            if (MSP_WATCH)
+            {
+                resources.add(buildMSPWatchConfigMap(msp));
+            }
+
+            return resources;
+        }
+
+        @Override
+        public List<HasMetadata> buildOrderer(final OrdererConfig orderer) throws Exception
+        {
+            return List.of(buildOrdererDeployment(orderer), buildService(orderer.getName(), ORDERER_PORTS));
+        }
+
+        @Override
+        public List<HasMetadata> buildPeer(final PeerConfig peer) throws Exception
+        {
+            return List.of(buildPeerDeployment(peer), buildService(peer.getName(), PEER_PORTS));
+        }
+    };
+
+    /**
+     * Re-apply the network config to a running network (see testInitFabricNetwork.)  Only the resources that differ
+     * from the informer caches are written:  with no change to the config or crypto material, this writes nothing.
+     * Nodes launched by the bootstrap are stamped in the same way as the reconciler's, and are left alone.
+     */
+    @Test
+    public void testReconcileNetwork() throws Exception
+    {
+        final NetworkConfig network = new TestNetwork();
+
+        try (final NetworkReconciler reconciler = new NetworkReconciler(client, manifests, applier))
+        {
+            final NetworkReconciler.Plan plan = reconciler.reconcile(network);
+
+            final Map<String, Duration> rolloutTimes =
+                    DeploymentUtil.waitForDeployments(client,
+                                                      plan.getRollouts(),
+                                                      Instant.now().plus(ROLLOUT_TIMEOUT));
+
+            for (Map.Entry<String, Duration> e : rolloutTimes.entrySet())
+            {
+                log.info("  {} ready after {} ms", e.getKey(), e.getValue().toMillis());
+            }
+        }
     }
 
     private void createGenesisBlock(final NetworkConfig network) throws Exception
@@ -121,142 +298,72 @@ public class InitFabricNetworkTest extends TestBase
             }
         }
 
-        assertEquals(0,
-                     execute(new ConfigTXGenCommand("configtxgen",
+        //
+        // The genesis block and anchor peer updates do not depend on each other.  Run all three concurrently.
+        //
+        final CompletableFuture<JobResult> genesis =
+                executeAsync(new ConfigTXGenCommand("configtxgen",
                                                     "-profile", "TwoOrgsOrdererGenesis",
                                                     "-channelID", "test-system-channel-name",
                                                     "-outputBlock", "/var/hyperledger/fabric/channel-artifacts/genesis.block"),
                              env,
-                             msps));
+                             msps);
 
 
         // todo: is this part of the network init, or the channel construction?
         log.info("Setting Org1 anchor peer");
-        assertEquals(0,
-                     execute(new ConfigTXGenCommand("configtxgen",
+        final CompletableFuture<JobResult> org1Anchors =
+                executeAsync(new ConfigTXGenCommand("configtxgen",
                                                     "-profile", "TwoOrgsChannel",
                                                     "-outputAnchorPeersUpdate", "/var/hyperledger/fabric/channel-artifacts/Org1MSPanchors.tx",
                                                     "-channelID", "mychannel",
                                                     "-asOrg", "Org1MSP"),
                              env,
-                             msps));
+                             msps);
 
 
         // todo: is this part of the network init, or the channel construction?
         log.info("Setting Org2 anchor peer");
-        assertEquals(0,
-                     execute(new ConfigTXGenCommand("configtxgen",
+        final CompletableFuture<JobResult> org2Anchors =
+                executeAsync(new ConfigTXGenCommand("configtxgen",
                                                     "-profile",                 "TwoOrgsChannel",
                                                     "-outputAnchorPeersUpdate", "/var/hyperledger/fabric/channel-artifacts/Org2MSPanchors.tx",
                                                     "-channelID",               "mychannel",
                                                     "-asOrg",                   "Org2MSP"),
                              env,
-                             msps));
-    }
+                             msps);
 
-    /**
-     * Create a config map for each MSP context in the network.
-     */
-    private List<ConfigMap> createMSPDescriptorConfigMaps(final NetworkConfig network) throws Exception
-    {
-        log.info("Creating MSP config maps");
-
-        final List<ConfigMap> configMaps = new ArrayList<>();
-
-        for (OrganizationConfig org : network.organizations)
-        {
-            // org msp context
-            for (MSPDescriptor msp : org.msps)
-            {
-                configMaps.add(createMSPConfigMap(msp));
-            }
-
-            for (PeerConfig peer : org.peers)
-            {
-                for (MSPDescriptor msp : peer.msps)
-                {
-                    configMaps.add(createMSPConfigMap(msp));
-                }
-            }
-
-            for (OrdererConfig orderer : org.orderers)
-            {
-                for (MSPDescriptor msp : orderer.msps)
-                {
-                    configMaps.add(createMSPConfigMap(msp));
-                }
-            }
-        }
-
-        for (ConfigMap cm : configMaps)
-        {
-            log.info("Created MSP config map: {}", cm.getMetadata().getName());
-        }
-
-        return configMaps;
+        assertEquals(0, genesis.get().getExitCode());
+        assertEquals(0, org1Anchors.get().getExitCode());
+        assertEquals(0, org2Anchors.get().getExitCode());
     }
 
-    private void launchOrderers(final NetworkConfig network) throws Exception
+    private Deployment launchPeer(final String network, final PeerConfig config) throws Exception
     {
-        log.info("Launching orderers");
-
-        final List<Deployment> ordererDeployments = new ArrayList<>();
+        log.info("Launching peer {}", config.name);
 
-        //
-        // Launch all of the network orderers
-        //
-        for (OrganizationConfig org : network.organizations)
+        if (MSP_PROJECTED)
         {
-            log.info("Launching org {} orderers:", org.name);
-
-            for (OrdererConfig orderer : org.orderers)
-            {
-                ordererDeployments.add(launchOrderer(orderer));
-            }
+            blobStore.upload(client, config.msps);
         }
 
         //
-        // Wait for all deployments to reach a ready status.
+        // Apply the deployment, and a service so that the peer may be reached by adjacent pods, in one batch.
         //
-        for (Deployment deployment : ordererDeployments)
-        {
-            DeploymentUtil.waitForDeployment(client, deployment, 1, TimeUnit.MINUTES);
-        }
-
-        log.info("Orderers are up.");
-    }
-
-    private void launchPeers(final NetworkConfig network) throws Exception
-    {
-        log.info("Launching peers");
+        final Deployment template = NetworkReconciler.stamp(network, buildPeerDeployment(config));
+        final Service service = NetworkReconciler.stamp(network, buildService(config.getName(), PEER_PORTS));
 
-        final List<Deployment> peerDeployments = new ArrayList<>();
+        final BatchApplier.Report report = applier.apply(List.of(template, service)).check();
+        final Deployment deployment = report.applied(template);
 
-        for (final OrganizationConfig org : network.organizations)
-        {
-            log.info("Launching org {} peers", org.name);
-
-            for (final PeerConfig peer : org.peers)
-            {
-                peerDeployments.add(launchPeer(peer));
-            }
-        }
+        log.info("Applied deployment:\n{}", yamlMapper.writeValueAsString(deployment));
+        log.info("Applied service\n{}", yamlMapper.writeValueAsString(report.applied(service)));
 
-        //
-        // Wait for all of the deployments to reach a ready state.
-        //
-        for (final Deployment deployment : peerDeployments)
-        {
-            DeploymentUtil.waitForDeployment(client, deployment, 1, TimeUnit.MINUTES);
-        }
-
-        log.info("All peers are up.");
+        return deployment;
     }
 
-    private Deployment launchPeer(final PeerConfig config) throws Exception
+    private Deployment buildPeerDeployment(final PeerConfig config) throws Exception
     {
-        log.info("Launching peer {}", config.name);
-
         //
         // environment variables
         //
@@ -322,8 +429,6 @@ public class InitFabricNetworkTest extends TestBase
                             .endEmptyDir()
                             .build());
 
-
-
         //
         // Add a config map volume for each MSP in scope
         //
@@ -336,7 +441,7 @@ public class InitFabricNetworkTest extends TestBase
                                 // .withName(msp.name)  // volumes may not have '.'
                                 .withName("msp-cm-vol-" + i++)
                                 .withConfigMap(new ConfigMapVolumeSourceBuilder()
-                                                       .withName(msp.name)
+                                                       .withName(mspConfigMapName(msp))
                                                        .build())
                                 .build());
         }
@@ -352,6 +457,11 @@ public class InitFabricNetworkTest extends TestBase
                                               .withMountPath("/var/hyperledger/fabric/xyzzy")
                                               .build());
 
+        //
+        // Project the MSP blobs referenced by the descriptors.
+        //
+        addMSPBlobVolume(volumes, initContainerVolumeMounts, config.msps);
+
         //
         // Each msp descriptor will be mounted into the init container as a single file.
         //
@@ -363,158 +473,31 @@ public class InitFabricNetworkTest extends TestBase
             initContainerVolumeMounts.add(new VolumeMountBuilder()
                                                   // .withName(msp.name) // volumes may not have '.' in name
                                                   .withName("msp-cm-vol-" + i++)
-                                                  .withMountPath("/var/hyperledger/fabric/msp-descriptors/" + msp.name + ".yaml")
-                                                  .withSubPath(msp.name + ".yaml")
+                                                  .withMountPath("/var/hyperledger/fabric/msp-descriptors/" + mspConfigMapKey(msp))
+                                                  .withSubPath(mspConfigMapKey(msp))
                                                   .build());
         }
 
-        //
-        // Ports
-        //
-        final List<ContainerPort> containerPorts =
-                Arrays.asList(
-                        new ContainerPortBuilder()
-                                .withName("gossip")
-                                .withProtocol("TCP")
-                                .withContainerPort(7051)
-                                .build(),
-                        new ContainerPortBuilder()
-                                .withName("chaincode")
-                                .withProtocol("TCP")
-                                .withContainerPort(7052)
-                                .build(),
-                        new ContainerPortBuilder()
-                                .withName("operations")
-                                .withProtocol("TCP")
-                                .withContainerPort(9443)
-                                .build());
-
-
-        //
-        // Please stop using the builder to construct these with this pattern.  It's ugly, excessive, and can be improved.
-        //
-        // All this needs to do is load a yaml template from the resource bundle and substitute config.getName() + env.
-        //
-        // @formatter:off
         final Deployment template =
-                new DeploymentBuilder()
-                        .withApiVersion("apps/v1")
-                        .withNewMetadata()
-                        .withName(config.getName())
-                        .endMetadata()
-                        .withNewSpec()
-                        .withReplicas(1)
-                        .withNewSelector()
-                        .withMatchLabels(Map.of("app", config.getName()))
-                        .endSelector()
-                        .withNewTemplate()
-                        .withNewMetadata()
-                        .withLabels(Map.of("app", config.getName()))
-                        // todo: other labels here.
-                        .endMetadata()
-                        .withNewSpec()
-
-                        //
-                        // main peer container
-                        //
-                        .addNewContainer()
-                        .withName("main")
-                        .withImage("hyperledger/fabric-peer:" + FABRIC_VERSION)
-                        .withEnv(env)
-                        .withVolumeMounts(nodeVolumeMounts)
-                        .withPorts(containerPorts)
-                        .endContainer()
-
-
-                        //
-                        // This init container copies the ccs-builder binaries into the peer image for external chaincode.
-                        //
-                        .addNewInitContainer()
-                        .withName("fabric-ccs-builder")
-                        .withImage(CCS_BUILDER_IMAGE)
-                        .withImagePullPolicy("IfNotPresent")
-                        .withCommand("sh", "-c")
-                        .withArgs("cp /go/bin/* /var/hyperledger/fabric/ccs-builder/bin/")
-                        .withVolumeMounts(Arrays.asList(new VolumeMountBuilder()
-                                                                .withName("ccs-builder")
-                                                                .withMountPath("/var/hyperledger/fabric/ccs-builder/bin")
-                                                                .build()))
-                        .endInitContainer()
-
-
-                        //
-                        // This init container unfurls the MSP context into an empty volume
-                        //
-                        .addNewInitContainer()
-                        .withName("msp-unfurl")
-                        .withImage("hyperledgendary/fabric-hyper-kube/fabctl-msp-unfurler")
-                        .withImagePullPolicy("IfNotPresent")
-                        .addToEnv(new EnvVarBuilder()
-                                          .withName("INPUT_FOLDER")
-                                          .withValue("/var/hyperledger/fabric/msp-descriptors")
-                                          .build())
-                        .addToEnv(new EnvVarBuilder()
-                                          .withName("OUTPUT_FOLDER")
-                                          .withValue("/var/hyperledger/fabric/xyzzy")
-                                          .build())
-                        .withVolumeMounts(initContainerVolumeMounts)
-                        .endInitContainer()
-
-                        .withVolumes(volumes)
-
-                        .endSpec()
-                        .endTemplate()
-                        .endSpec()
-                        .build();
-        // @formatter:on
-
-        final Deployment deployment =
-                client.apps()
-                      .deployments()
-                      .create(template);
-
-        log.info("Created deployment:\n{}", yamlMapper.writeValueAsString(deployment));
-
-
-
-        //
-        // Create a service for the peer so that it may be reached by adjacent pods.
-        //
-        final List<ServicePort> servicePorts =
-                Arrays.asList(
-                        new ServicePortBuilder()
-                                .withName("gossip")
-                                .withProtocol("TCP")
-                                .withPort(7051)
-                                .build(),
-                        new ServicePortBuilder()
-                                .withName("chaincode")
-                                .withProtocol("TCP")
-                                .withPort(7052)
-                                .build(),
-                        new ServicePortBuilder()
-                                .withName("operations")
-                                .withProtocol("TCP")
-                                .withPort(9443)
-                                .build()
-                );
-
-        // @formatter:off
-        final Service service =
-                client.services()
-                      .create(new ServiceBuilder()
-                                      .withNewMetadata()
-                                      .withName(config.getName())
-                                      .endMetadata()
-                                      .withNewSpec()
-                                      .withSelector(Map.of("app", config.getName()))
-                                      .withPorts(servicePorts)
-                                      .endSpec()
-                                      .build());
+                PEER_TEMPLATE.render(Map.of("name", config.getName(),
+                                            "fabricVersion", FABRIC_VERSION,
+                                            "env", env,
+                                            "volumeMounts", nodeVolumeMounts,
+                                            "ccsBuilderImage", CCS_BUILDER_IMAGE,
+                                            "mspUnfurl", buildMSPUnfurlContainer(initContainerVolumeMounts),
+                                            "volumes", volumes));
+
+        if (MSP_PROJECTED)
+        {
+            projectMSPVolume(template.getSpec().getTemplate().getSpec(), config.msps);
+        }
 
-        log.info("Created service\n{}", yamlMapper.writeValueAsString(service));
+        if (MSP_WATCH)
+        {
+            watchMSPVolume(template.getSpec().getTemplate().getSpec(), config.msps);
+        }
 
-        return deployment;
+        return template;
     }
 
     // @Test
@@ -532,7 +515,8 @@ public class InitFabricNetworkTest extends TestBase
             log.info("created MSP configmap \n{}", yamlMapper.writeValueAsString(msp));
 
             assertNotNull(cm);
-            assertEquals("msp-com.example.orderer1", cm.getMetadata().getName());
+            assertEquals(mspConfigMapName(msp), cm.getMetadata().getName());
+            assertTrue(cm.getImmutable());
         }
         finally
         {
@@ -540,27 +524,6 @@ public class InitFabricNetworkTest extends TestBase
         }
     }
 
-    /**
-     * Create an MSP config map from an MSP Descriptor
-     *
-     * todo: add some metadata labels to the configmap (e.g. id, org, name, type, etc .etc. )
-     */
-    private ConfigMap createMSPConfigMap(final MSPDescriptor msp) throws Exception
-    {
-        final String cmName = msp.name;
-        final String mspKey = msp.name + ".yaml";
-        final String mspVal = yamlMapper.writeValueAsString(msp);
-
-        return client.configMaps()
-                     .createOrReplace(new ConfigMapBuilder()
-                                              .withNewMetadata()
-                                              .withName(cmName)
-                                              .endMetadata()
-                                              .withImmutable(true)
-                                              .withData(Map.of(mspKey, mspVal))
-                                              .build());
-    }
-
     /**
      * This is still a rough cut and will benefit from refactoring.  Both peers and orderers share 99% of an
      * identical deployment template.  Just get the functionality correct in this first pass.
@@ -568,10 +531,32 @@ public class InitFabricNetworkTest extends TestBase
      * This can be improved.  The only point in this example is that the deployment is dynamically generated
      * from code and includes the variable context MSP descriptors and "unfurl" init container.
      */
-    private Deployment launchOrderer(final OrdererConfig config) throws IOException
+    private Deployment launchOrderer(final String network, final OrdererConfig config) throws IOException
     {
         log.info("launching orderer {}", config.getName());
 
+        if (MSP_PROJECTED)
+        {
+            blobStore.upload(client, config.msps);
+        }
+
+        //
+        // Apply the deployment, and a service so that the orderer may be reached by adjacent pods, in one batch.
+        //
+        final Deployment template = NetworkReconciler.stamp(network, buildOrdererDeployment(config));
+        final Service service = NetworkReconciler.stamp(network, buildService(config.getName(), ORDERER_PORTS));
+
+        final BatchApplier.Report report = applier.apply(List.of(template, service)).check();
+        final Deployment deployment = report.applied(template);
+
+        log.info("Applied deployment:\n{}", yamlMapper.writeValueAsString(deployment));
+        log.info("Applied Service:\n{}", yamlMapper.writeValueAsString(report.applied(service)));
+
+        return deployment;
+    }
+
+    private Deployment buildOrdererDeployment(final OrdererConfig config) throws IOException
+    {
         //
         // environment variables
         //
@@ -640,134 +625,42 @@ public class InitFabricNetworkTest extends TestBase
             volumes.add(new VolumeBuilder()
                                 .withName("msp-config")   // todo : collides on name
                                 .withConfigMap(new ConfigMapVolumeSourceBuilder()
-                                                       .withName(msp.name)
+                                                       .withName(mspConfigMapName(msp))
                                                        .build())
                                 .build());
         }
 
-        //
-        // Ports
-        //
-        final List<ContainerPort> containerPorts =
-                Arrays.asList(
-                        new ContainerPortBuilder()
-                                .withContainerPort(6050)
-                                .build(),
-                        new ContainerPortBuilder()
-                                .withContainerPort(8443)
-                                .build(),
-                        new ContainerPortBuilder()
-                                .withContainerPort(9443)
-                                .build()
-                );
-
-        // @formatter:off
-        final Deployment template =
-                new DeploymentBuilder()
-                        .withApiVersion("apps/v1")
-                        .withNewMetadata()
-                        .withName(config.getName())
-                        .endMetadata()
-                        .withNewSpec()
-                        .withReplicas(1)
-                        .withNewSelector()
-                        .withMatchLabels(Map.of("app", config.getName()))
-                        .endSelector()
-                        .withNewTemplate()
-                        .withNewMetadata()
-                        .withLabels(Map.of("app", config.getName()))
-                        // todo: other labels here.
-                        .endMetadata()
-                        .withNewSpec()
-                        .addNewContainer()
-                        .withName("main")
-                        .withImage("hyperledger/fabric-orderer:" + FABRIC_VERSION)
-                        .withEnv(env)
-                        .withVolumeMounts(nodeVolumeMounts)
-                        .withPorts(containerPorts)
-                        .endContainer()
-
-
-                        //
-                        // Set up an init container to unfurl the MSP context into a directory on the node.
-                        //
-                        .addNewInitContainer()
-                        .withName("msp-unfurl")
-                        .withImage("hyperledgendary/fabric-hyper-kube/fabctl-msp-unfurler")
-                        .withImagePullPolicy("IfNotPresent")
-                        .addToEnv(new EnvVarBuilder()
-                                          .withName("INPUT_FOLDER")
-                                          .withValue("/var/hyperledger/fabric/msp-descriptors")
-                                          .build())
-                        .addToEnv(new EnvVarBuilder()
-                                          .withName("OUTPUT_FOLDER")
-                                          .withValue("/var/hyperledger/fabric/xyzzy")
-                                          .build())
-                        .withVolumeMounts(Arrays.asList(new VolumeMountBuilder()
-                                                                .withName("msp-config")
-                                                                .withMountPath("/var/hyperledger/fabric/msp-descriptors")
-                                                                .build(),
-                                                        new VolumeMountBuilder()
-                                                                .withName("msp-volume")
-                                                                .withMountPath("/var/hyperledger/fabric/xyzzy")
-                                                                .build()))
-                        .endInitContainer()
-
-
-                        .withVolumes(volumes)
-                        .endSpec()
-                        .endTemplate()
-                        .endSpec()
-                        .build();
-        // @formatter:on
-
-        final Deployment deployment =
-                client.apps()
-                      .deployments()
-                      .createOrReplace(template);
-
-        log.info("Created deployment:\n{}", yamlMapper.writeValueAsString(deployment));
+        final List<VolumeMount> initContainerVolumeMounts =
+                new ArrayList<>(Arrays.asList(new VolumeMountBuilder()
+                                                      .withName("msp-config")
+                                                      .withMountPath("/var/hyperledger/fabric/msp-descriptors")
+                                                      .build(),
+                                              new VolumeMountBuilder()
+                                                      .withName("msp-volume")
+                                                      .withMountPath("/var/hyperledger/fabric/xyzzy")
+                                                      .build()));
 
+        addMSPBlobVolume(volumes, initContainerVolumeMounts, config.msps);
 
-        //
-        // Create a service for the orderer so that it may be reached by adjacent pods.
-        //
-        final List<ServicePort> servicePorts =
-                Arrays.asList(
-                        new ServicePortBuilder()
-                                .withName("general")
-                                .withProtocol("TCP")
-                                .withPort(6050)
-                                .build(),
-                        new ServicePortBuilder()
-                                .withName("operations")
-                                .withProtocol("TCP")
-                                .withPort(8443)
-                                .build(),
-                        new ServicePortBuilder()
-                                .withName("admin")
-                                .withProtocol("TCP")
-                                .withPort(9443)
-                                .build()
-                );
-
-        // @formatter:off
-        final Service service =
-                client.services()
-                      .createOrReplace(new ServiceBuilder()
-                                      .withNewMetadata()
-                                      .withName(config.getName())
-                                      .endMetadata()
-                                      .withNewSpec()
-                                      .withSelector(Map.of("app", config.getName()))
-                                      .withPorts(servicePorts)
-                                      .endSpec()
-                                      .build());
-        // @formatter:on
+        final Deployment template =
+                ORDERER_TEMPLATE.render(Map.of("name", config.getName(),
+                                               "fabricVersion", FABRIC_VERSION,
+                                               "env", env,
+                                               "volumeMounts", nodeVolumeMounts,
+                                               "mspUnfurl", buildMSPUnfurlContainer(initContainerVolumeMounts),
+                                               "volumes", volumes));
+
+        if (MSP_PROJECTED)
+        {
+            projectMSPVolume(template.getSpec().getTemplate().getSpec(), config.msps);
+        }
 
-        log.info("Created Service:\n{}", yamlMapper.writeValueAsString(service));
+        if (MSP_WATCH)
+        {
+            watchMSPVolume(template.getSpec().getTemplate().getSpec(), config.msps);
+        }
 
-        return deployment;
+        return template;
     }
 
 
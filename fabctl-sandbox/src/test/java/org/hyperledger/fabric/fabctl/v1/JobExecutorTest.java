@@ -0,0 +1,147 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1;
+
+import io.fabric8.kubernetes.api.model.batch.v1.Job;
+import io.fabric8.kubernetes.api.model.batch.v1.JobBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.hyperledger.fabric.fabctl.v0.JobExecutor;
+import org.hyperledger.fabric.fabctl.v0.JobInformer;
+import org.hyperledger.fabric.fabctl.v0.JobResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Run Jobs on a SimulatedCluster:  this runs without a cluster.
+ */
+public class JobExecutorTest
+{
+    private static final SimulatedCluster.Latencies LATENCIES = new SimulatedCluster.Latencies(0, 50, 100, 0);
+
+    /**
+     * Well beyond the time a Job takes on the simulated cluster.  A result that took this long to arrive means the
+     * executor waited out the timeout.
+     */
+    private static final long JOB_TIMEOUT = 60;
+
+    private static final long RESULT_TIMEOUT = 15;
+
+    private SimulatedCluster cluster;
+
+    private JobExecutor executor;
+
+    @BeforeEach
+    public void startSimulatedCluster()
+    {
+        cluster = new SimulatedCluster("fabctl-jobs", LATENCIES, jobName -> List.of("hello from " + jobName));
+        executor = new JobExecutor(cluster.getClient(), 2, JOB_TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    public void stopSimulatedCluster()
+    {
+        executor.close();
+        JobInformer.stop(cluster.getClient());
+        cluster.close();
+    }
+
+    @Test
+    public void testRunJob() throws Exception
+    {
+        final JobResult result = executor.submit(buildJob()).get(RESULT_TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(0, result.getExitCode());
+        assertEquals(List.of("hello from " + result.getJobName()), result.getLogs());
+    }
+
+    /**
+     * [main] never starts when msp-unfurl fails.  The command fails as soon as the pod does, not at the timeout.
+     */
+    @Test
+    public void testInitContainerFails() throws Exception
+    {
+        cluster.failInitContainer("msp-unfurl");
+
+        final JobResult result = executor.submit(buildJob()).get(RESULT_TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(-1, result.getExitCode());
+        assertNotNull(result.getPodName());
+        assertTrue(result.getLogs().isEmpty());
+    }
+
+    /**
+     * The [main] pod is picked up by the shared pod informer while the Job controller is slow to start it, rather
+     * than by listing the Job's pods every few hundred ms.  A poll would cost 10 pod lists per Job here.
+     */
+    @Test
+    public void testMainPodIsNotPolled() throws Exception
+    {
+        final int jobs = 2;
+
+        try (SimulatedCluster slow = new SimulatedCluster("fabctl-jobs",
+                                                          new SimulatedCluster.Latencies(0, 2500, 100, 0),
+                                                          jobName -> List.of("hello from " + jobName));
+             JobExecutor slowExecutor = new JobExecutor(slow.getClient(), jobs, JOB_TIMEOUT, TimeUnit.SECONDS))
+        {
+            slow.phase("jobs");
+
+            try
+            {
+                final List<CompletableFuture<JobResult>> results = new ArrayList<>();
+                for (int i = 0; i < jobs; i++)
+                {
+                    results.add(slowExecutor.submit(buildJob()));
+                }
+
+                for (CompletableFuture<JobResult> result : results)
+                {
+                    assertEquals(0, result.get(RESULT_TIMEOUT, TimeUnit.SECONDS).getExitCode());
+                }
+            }
+            finally
+            {
+                JobInformer.stop(slow.getClient());
+            }
+
+            slow.phase(null);
+
+            final AtomicLong podLists = slow.getMeters().get("jobs").requests.get("GET pods");
+            assertTrue(podLists.get() <= 1 + 6 * jobs, podLists + " pod requests");
+        }
+    }
+
+    private static Job buildJob()
+    {
+        return new JobBuilder()
+                .withNewMetadata()
+                .withGenerateName("test-job-")
+                .endMetadata()
+                .withNewSpec()
+                .withBackoffLimit(0)
+                .withNewTemplate()
+                .withNewSpec()
+                .withRestartPolicy("Never")
+                .addNewInitContainer()
+                .withName("msp-unfurl")
+                .withImage("hyperledgendary/fabric-hyper-kube/fabctl-msp-unfurler")
+                .endInitContainer()
+                .addNewContainer()
+                .withName("main")
+                .withImage("hyperledger/fabric-tools:2.3.2")
+                .endContainer()
+                .endSpec()
+                .endTemplate()
+                .endSpec()
+                .build();
+    }
+}
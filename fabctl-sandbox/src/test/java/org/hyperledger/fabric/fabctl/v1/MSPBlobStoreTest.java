@@ -0,0 +1,296 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.KeyToPath;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.ProjectedVolumeSource;
+import io.fabric8.kubernetes.api.model.Volume;
+import io.fabric8.kubernetes.api.model.VolumeProjection;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPBlobStore;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Peers in an org share the org's CA certs.  The blob store should hold (and mount) each of them once.
+ */
+@Slf4j
+public class MSPBlobStoreTest
+{
+    private static final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
+
+    private static final YAMLMapper yamlMapper = new YAMLMapper();
+
+    private static final SimulatedCluster.Latencies LATENCIES = new SimulatedCluster.Latencies(0, 0, 0, 0);
+
+    private static final byte[] CA_CERT =
+            "-----BEGIN CERTIFICATE-----\nca\n-----END CERTIFICATE-----\n".getBytes(StandardCharsets.UTF_8);
+
+    private static MSPDescriptor describePeer(final String id)
+    {
+        final ObjectNode msp = nodeFactory.objectNode();
+        msp.putObject("cacerts").put("ca.org1.example.com-cert.pem", CA_CERT);
+        msp.putObject("signcerts").put(id + "-cert.pem", bytes("signcert for " + id));
+        msp.putObject("keystore").put("priv_sk", bytes("key for " + id));
+
+        final ObjectNode tls = nodeFactory.objectNode();
+        tls.put("ca.crt", CA_CERT);
+        tls.put("server.crt", bytes("tls cert for " + id));
+
+        return new MSPDescriptor("msp-com.example.org1." + id, id, msp, tls);
+    }
+
+    private static byte[] bytes(final String s)
+    {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testInternReferencesBlobs() throws Exception
+    {
+        final MSPBlobStore store = new MSPBlobStore();
+        final MSPDescriptor interned = store.intern(describePeer("peer1"));
+
+        final String digest = DigestUtils.sha256Hex(CA_CERT);
+
+        assertEquals(MSPBlobStore.REFS_SHA256, interned.refs);
+        assertEquals(digest, interned.msp.get("cacerts").get("ca.org1.example.com-cert.pem").textValue());
+        assertEquals(digest, interned.tls.get("ca.crt").textValue());
+        assertArrayEquals(CA_CERT, store.get(digest));
+
+        // interning is idempotent
+        assertSame(interned, store.intern(interned));
+
+        final String yaml = yamlMapper.writeValueAsString(interned);
+        log.info("Interned descriptor:\n{}", yaml);
+
+        assertTrue(yaml.contains("refs: \"sha256\"") || yaml.contains("refs: sha256"));
+        assertFalse(yaml.contains("BEGIN CERTIFICATE"));
+
+        // inline descriptors do not carry the marker
+        assertFalse(yamlMapper.writeValueAsString(describePeer("peer1")).contains("refs"));
+    }
+
+    @Test
+    public void testSharedCertsAreStoredOnce()
+    {
+        final MSPBlobStore store = new MSPBlobStore();
+        final List<MSPDescriptor> peers = List.of(describePeer("peer1"), describePeer("peer2"), describePeer("peer3"));
+
+        final SortedSet<String> digests = store.digests(peers);
+
+        //
+        // one shared CA cert + (signcert, key, tls cert) for each peer
+        //
+        assertEquals(1 + 3 * 3, digests.size());
+        assertEquals(digests.size(), store.size());
+    }
+
+    @Test
+    public void testBlobVolumeAndConfigMap()
+    {
+        final MSPBlobStore store = new MSPBlobStore();
+        final List<MSPDescriptor> peers = List.of(describePeer("peer1"), describePeer("peer2"));
+
+        final Volume volume = store.buildVolume("msp-blobs", peers);
+        assertEquals(store.digests(peers).size(), volume.getProjected().getSources().size());
+
+        final String digest = DigestUtils.sha256Hex(CA_CERT);
+        final ConfigMap cm = store.buildConfigMap(digest);
+
+        assertEquals("msp-blob-" + digest, cm.getMetadata().getName());
+        assertTrue(cm.getImmutable());
+        assertArrayEquals(CA_CERT, Base64.getDecoder().decode(cm.getBinaryData().get(digest)));
+    }
+
+    @Test
+    public void testDescriptorDigest()
+    {
+        final MSPBlobStore store = new MSPBlobStore();
+        final String digest = store.digest(describePeer("peer1"));
+
+        assertEquals(digest, store.digest(describePeer("peer1")));
+        assertEquals(digest, store.digest(store.intern(describePeer("peer1"))));
+        assertNotEquals(digest, store.digest(describePeer("peer2")));
+
+        //
+        // A rotated cert is new content.
+        //
+        final MSPDescriptor rotated = describePeer("peer1");
+        ((ObjectNode) rotated.tls).put("server.crt", bytes("rotated tls cert for peer1"));
+
+        assertNotEquals(digest, store.digest(rotated));
+    }
+
+    @Test
+    public void testProjectedMSPVolume()
+    {
+        final MSPBlobStore store = new MSPBlobStore();
+        final MSPDescriptor peer1 = describePeer("peer1");
+
+        assertThrows(IllegalArgumentException.class, peer1::toProjectedVolumeSource);
+
+        final ProjectedVolumeSource projection = store.intern(peer1).toProjectedVolumeSource();
+
+        //
+        // path -> config map, laid out just as the unfurler would write it.
+        //
+        final Map<String, String> paths = new TreeMap<>();
+        for (VolumeProjection source : projection.getSources())
+        {
+            for (KeyToPath item : source.getConfigMap().getItems())
+            {
+                assertEquals(MSPBlobStore.configMapName(item.getKey()), source.getConfigMap().getName());
+                paths.put(item.getPath(), source.getConfigMap().getName());
+            }
+        }
+
+        final String ca = MSPBlobStore.configMapName(DigestUtils.sha256Hex(CA_CERT));
+
+        assertEquals(5, paths.size());
+        assertEquals(4, projection.getSources().size());
+        assertEquals(ca, paths.get("peer1/msp/cacerts/ca.org1.example.com-cert.pem"));
+        assertEquals(ca, paths.get("peer1/tls/ca.crt"));
+        assertTrue(paths.containsKey("peer1/msp/keystore/priv_sk"));
+        assertTrue(paths.containsKey("peer1/tls/server.crt"));
+
+        final Volume volume = store.buildMSPVolume("msp-volume", List.of(peer1, describePeer("peer2")));
+        assertEquals(8, volume.getProjected().getSources().size());
+    }
+
+    /**
+     * Each blob is created without a GET first.  A blob that is already in the namespace (here, created by another
+     * store) is a conflict on create, not an error.
+     */
+    @Test
+    public void testUpload()
+    {
+        try (SimulatedCluster cluster = new SimulatedCluster("fabctl-blobs", LATENCIES, jobName -> List.of()))
+        {
+            final KubernetesClient client = cluster.getClient();
+            final MSPBlobStore store = new MSPBlobStore();
+
+            cluster.phase("upload");
+
+            store.upload(client, List.of(describePeer("peer1"), describePeer("peer2")));
+            store.upload(client, List.of(describePeer("peer1"), describePeer("peer2")));
+            new MSPBlobStore().upload(client, List.of(describePeer("peer1"), describePeer("peer3")));
+
+            cluster.phase(null);
+
+            //
+            // 7 blobs for peer1 and peer2, then 4 (conflicting) for peer1 and 3 for peer3.
+            //
+            final Map<String, AtomicLong> requests = cluster.getMeters().get("upload").requests;
+            assertNull(requests.get("GET configmaps"));
+            assertEquals(7 + 4 + 3, requests.get("POST configmaps").get());
+
+            assertEquals(10, client.configMaps().list().getItems().size());
+        }
+    }
+
+    /**
+     * Blobs mounted by a pod, or referenced by the descriptors to keep, survive a prune.  The rest are deleted, and
+     * uploaded again when they are next needed.
+     */
+    @Test
+    public void testPrune()
+    {
+        final MSPDescriptor peer1 = describePeer("peer1");
+        final MSPDescriptor peer2 = describePeer("peer2");
+        final MSPDescriptor peer3 = describePeer("peer3");
+
+        try (SimulatedCluster cluster = new SimulatedCluster("fabctl-blobs", LATENCIES, jobName -> List.of()))
+        {
+            final KubernetesClient client = cluster.getClient();
+            final MSPBlobStore store = new MSPBlobStore();
+
+            store.upload(client, List.of(peer1, peer2, peer3));
+
+            client.pods()
+                  .create(new PodBuilder()
+                                  .withNewMetadata()
+                                  .withName("peer1")
+                                  .endMetadata()
+                                  .withNewSpec()
+                                  .addToVolumes(store.buildVolume("msp-blobs", List.of(peer1)))
+                                  .addNewContainer()
+                                  .withName("main")
+                                  .withImage("hyperledger/fabric-peer:2.3.2")
+                                  .endContainer()
+                                  .endSpec()
+                                  .build());
+
+            //
+            // Only the files of peer3 are unused:  the CA cert is shared with peer1 and peer2.
+            //
+            assertEquals(3, store.prune(client, List.of(peer2)));
+            assertEquals(configMapNames(store, List.of(peer1, peer2)), configMapNames(client));
+
+            assertEquals(0, store.prune(client, List.of(peer2)));
+
+            store.upload(client, List.of(peer3));
+            assertEquals(configMapNames(store, List.of(peer1, peer2, peer3)), configMapNames(client));
+        }
+    }
+
+    private static Set<String> configMapNames(final MSPBlobStore store, final List<MSPDescriptor> descriptors)
+    {
+        return store.digests(descriptors)
+                    .stream()
+                    .map(MSPBlobStore::configMapName)
+                    .collect(Collectors.toSet());
+    }
+
+    private static Set<String> configMapNames(final KubernetesClient client)
+    {
+        return client.configMaps()
+                     .list()
+                     .getItems()
+                     .stream()
+                     .map(cm -> cm.getMetadata().getName())
+                     .collect(Collectors.toSet());
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception
+    {
+        //
+        // Not valid UTF-8:  would not survive a round trip through a String.
+        //
+        final byte[] key = new byte[256];
+        for (int i = 0; i < key.length; i++)
+        {
+            key[i] = (byte) i;
+        }
+
+        final ObjectNode msp = nodeFactory.objectNode();
+        msp.putObject("keystore").put("priv_sk", key);
+
+        final String yaml = yamlMapper.writeValueAsString(new MSPDescriptor("msp-binary", "binary", msp, null));
+        log.info("Binary descriptor:\n{}", yaml);
+
+        assertArrayEquals(key, yamlMapper.readTree(yaml).get("msp").get("keystore").get("priv_sk").binaryValue());
+    }
+}
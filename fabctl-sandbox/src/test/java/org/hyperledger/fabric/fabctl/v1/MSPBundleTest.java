@@ -0,0 +1,198 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPBlobStore;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPBundle;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * An MSP bundle carries the whole MSP folder structure for an identity as a single tar.gz.
+ */
+@Slf4j
+public class MSPBundleTest
+{
+    private static final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
+
+    private static final YAMLMapper yamlMapper = new YAMLMapper();
+
+    private static MSPDescriptor describeOrderer()
+    {
+        final ObjectNode msp = nodeFactory.objectNode();
+        msp.putObject("cacerts").put("ca.example.com-cert.pem", bytes("ca cert"));
+        msp.putObject("keystore").put("priv_sk", new byte[] { 0x00, (byte) 0xff, 0x7f, (byte) 0x80 });
+        msp.putObject("signcerts").put("orderer1.example.com-cert.pem", bytes("signcert"));
+        msp.put("config.yaml", bytes("NodeOUs:\n  Enable: true\n"));
+
+        final ObjectNode tls = nodeFactory.objectNode();
+        tls.put("ca.crt", bytes("ca cert"));
+        tls.put("server.key", bytes("tls key"));
+
+        return new MSPDescriptor("msp-com.example.orderer1", "orderer1.example.com", msp, tls);
+    }
+
+    private static byte[] bytes(final String s)
+    {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testBundleLayout() throws Exception
+    {
+        final Map<String, byte[]> entries = extract(describeOrderer().toBundle());
+
+        assertEquals(6, entries.size());
+        assertArrayEquals(bytes("ca cert"), entries.get("orderer1.example.com/msp/cacerts/ca.example.com-cert.pem"));
+        assertArrayEquals(new byte[] { 0x00, (byte) 0xff, 0x7f, (byte) 0x80 },
+                          entries.get("orderer1.example.com/msp/keystore/priv_sk"));
+        assertArrayEquals(bytes("tls key"), entries.get("orderer1.example.com/tls/server.key"));
+    }
+
+    @Test
+    public void testBundleIsDeterministic() throws Exception
+    {
+        assertArrayEquals(describeOrderer().toBundle(), describeOrderer().toBundle());
+    }
+
+    @Test
+    public void testBundleResolvesBlobs() throws Exception
+    {
+        final MSPBlobStore store = new MSPBlobStore();
+        final MSPDescriptor interned = store.intern(describeOrderer());
+
+        assertThrows(IllegalArgumentException.class, interned::toBundle);
+        assertArrayEquals(describeOrderer().toBundle(), MSPBundle.build(interned, store::get));
+    }
+
+    /**
+     * The config map carries the bundle as it was built, and the bundle extracts to exactly the descriptor's files.
+     * Entries are resolved under the output folder as the msp-unfurler does (see Unfurler.extract in
+     * fabctl-msp-unfurler, which is a separate build.)
+     */
+    @Test
+    public void testBundleConfigMap() throws Exception
+    {
+        final MSPDescriptor descriptor = describeOrderer();
+        final ConfigMap cm = MSPBundle.buildConfigMap(descriptor, descriptor.toBundle());
+
+        assertTrue(cm.getImmutable());
+
+        final byte[] bundle = Base64.getDecoder().decode(cm.getBinaryData().get("msp-com.example.orderer1.tar.gz"));
+        assertArrayEquals(descriptor.toBundle(), bundle);
+
+        final Path root = Path.of("/var/hyperledger/fabric/xyzzy");
+        final Map<String, byte[]> expected = files(descriptor);
+        final Map<String, byte[]> extracted = new TreeMap<>();
+        for (Map.Entry<String, byte[]> e : extract(bundle).entrySet())
+        {
+            final Path path = root.resolve(e.getKey()).normalize();
+            assertTrue(path.startsWith(root.resolve(descriptor.id)), e.getKey());
+
+            extracted.put(root.relativize(path).toString(), e.getValue());
+        }
+
+        assertEquals(expected.keySet(), extracted.keySet());
+        for (Map.Entry<String, byte[]> e : expected.entrySet())
+        {
+            assertArrayEquals(e.getValue(), extracted.get(e.getKey()), e.getKey());
+        }
+    }
+
+    /**
+     * For an identity with cryptogen-sized files, the bundle is smaller than the yaml descriptor it replaces.
+     */
+    @Test
+    public void testBundleIsSmallerThanYaml(@TempDir final Path dir) throws Exception
+    {
+        final Map.Entry<String, File> folder = SyntheticCryptoConfig.generate(dir, 1).entrySet().iterator().next();
+        final MSPDescriptor descriptor = new MSPDescriptor(folder.getKey(), folder.getValue());
+
+        final ConfigMap cm = MSPBundle.buildConfigMap(descriptor, descriptor.toBundle());
+
+        final String bundle = cm.getBinaryData().get(descriptor.name + MSPBundle.SUFFIX);
+        final String yaml = yamlMapper.writeValueAsString(descriptor);
+
+        log.info("bundle: {} bytes, yaml descriptor: {} bytes", bundle.length(), yaml.length());
+
+        assertTrue(bundle.length() < yaml.length(), bundle.length() + " >= " + yaml.length());
+    }
+
+    /**
+     * The files of a descriptor, by path under the output folder ([id]/msp/..., [id]/tls/...)
+     */
+    private static Map<String, byte[]> files(final MSPDescriptor descriptor) throws IOException
+    {
+        final Map<String, byte[]> files = new TreeMap<>();
+        files(descriptor.id + "/msp", descriptor.msp, files);
+        files(descriptor.id + "/tls", descriptor.tls, files);
+
+        return files;
+    }
+
+    private static void files(final String path, final JsonNode node, final Map<String, byte[]> files)
+            throws IOException
+    {
+        if (node == null || node.isNull())
+        {
+            return;
+        }
+
+        if (node.isObject())
+        {
+            final Iterator<Map.Entry<String, JsonNode>> i = node.fields();
+            while (i.hasNext())
+            {
+                final Map.Entry<String, JsonNode> e = i.next();
+                files(path + "/" + e.getKey(), e.getValue(), files);
+            }
+
+            return;
+        }
+
+        files.put(path, node.binaryValue());
+    }
+
+    private static Map<String, byte[]> extract(final byte[] bundle) throws IOException
+    {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+
+        try (TarArchiveInputStream tis =
+                     new TarArchiveInputStream(new GzipCompressorInputStream(new ByteArrayInputStream(bundle))))
+        {
+            TarArchiveEntry entry;
+            while ((entry = tis.getNextTarEntry()) != null)
+            {
+                entries.put(entry.getName(), IOUtils.toByteArray(tis));
+            }
+        }
+
+        return entries;
+    }
+}
@@ -0,0 +1,107 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import org.apache.commons.compress.utils.IOUtils;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptorLoader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check the parallel NIO MSP descriptor loader against the original single threaded, recursive File.listFiles()
+ * approach, on a synthetic set of cryptogen-shaped identity folders (see SyntheticCryptoConfig.)  This runs without a
+ * cluster or cryptogen.
+ */
+public class MSPDescriptorLoaderTest
+{
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final int PARALLELISM = 8;
+
+    @Test
+    public void testLoaderMatchesRecursiveCopy(@TempDir final Path dir) throws Exception
+    {
+        final Map<String, File> folders = SyntheticCryptoConfig.generate(dir, 10);
+
+        try (MSPDescriptorLoader loader = new MSPDescriptorLoader(PARALLELISM))
+        {
+            final Map<String, MSPDescriptor> loaded = loader.loadAll(folders);
+
+            for (Map.Entry<String, File> e : folders.entrySet())
+            {
+                final MSPDescriptor descriptor = loaded.get(e.getKey());
+
+                assertEquals(e.getValue().getName(), descriptor.id);
+                assertEquals(recursiveCopy(new File(e.getValue(), "msp")), decode(descriptor.msp));
+                assertEquals(recursiveCopy(new File(e.getValue(), "tls")), decode(descriptor.tls));
+            }
+        }
+    }
+
+    /**
+     * The original MSPDescriptor folder walk, kept here as the reference.
+     */
+    private static JsonNode recursiveCopy(final File f) throws IOException
+    {
+        if (! f.exists())
+        {
+            return null;
+        }
+        else if (f.isDirectory())
+        {
+            final ObjectNode node = objectMapper.createObjectNode();
+
+            for (File child : f.listFiles())
+            {
+                node.set(child.getName(), recursiveCopy(child));
+            }
+
+            return node;
+        }
+        else
+        {
+            try (final ByteArrayOutputStream baos = new ByteArrayOutputStream())
+            {
+                IOUtils.copy(f, baos);
+                return objectMapper.getNodeFactory().textNode(baos.toString(Charset.defaultCharset()));
+            }
+        }
+    }
+
+    /**
+     * The loader carries raw bytes.  Decode them as the reference did, for comparison.
+     */
+    private static JsonNode decode(final JsonNode node) throws IOException
+    {
+        if (node.isBinary())
+        {
+            return objectMapper.getNodeFactory().textNode(new String(node.binaryValue(), Charset.defaultCharset()));
+        }
+
+        final ObjectNode decoded = objectMapper.createObjectNode();
+        final Iterator<Map.Entry<String, JsonNode>> i = node.fields();
+        while (i.hasNext())
+        {
+            final Map.Entry<String, JsonNode> e = i.next();
+            decoded.set(e.getKey(), decode(e.getValue()));
+        }
+
+        return decoded;
+    }
+}
@@ -0,0 +1,239 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import io.fabric8.kubernetes.api.model.*;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.fabric.fabctl.v1.network.Environment;
+import org.hyperledger.fabric.fabctl.v1.template.ManifestTemplate;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Render k8s manifests from yaml templates.  This runs without a cluster.
+ */
+@Slf4j
+public class ManifestTemplateTest
+{
+    private static final YAMLMapper yamlMapper = new YAMLMapper();
+
+    private static final int NODES = 500;
+
+    private static final int ROUNDS = 3;
+
+    private static final ManifestTemplate<Deployment> PEER_TEMPLATE =
+            ManifestTemplate.load("peer-deployment.yaml", Deployment.class);
+
+    private static final ManifestTemplate<Service> SERVICE_TEMPLATE =
+            ManifestTemplate.load("service.yaml", Service.class);
+
+    private static Map<String, Object> describePeer(final String name)
+    {
+        final Environment environment = new Environment();
+        environment.put("CORE_PEER_ID", name + ".org1.example.com");
+        environment.put("CORE_PEER_ADDRESS", name + ":7051");
+
+        final Container unfurl = new ContainerBuilder()
+                .withName("msp-unfurl")
+                .withImage("hyperledgendary/fabric-hyper-kube/fabctl-msp-unfurler")
+                .build();
+
+        final Volume volume = new VolumeBuilder()
+                .withName("msp-volume")
+                .withNewEmptyDir()
+                .endEmptyDir()
+                .build();
+
+        return Map.of("name", name,
+                      "fabricVersion", "2.3.2",
+                      "env", environment.asEnvVarList(),
+                      "volumeMounts", List.of(new VolumeMountBuilder()
+                                                      .withName("msp-volume")
+                                                      .withMountPath("/var/hyperledger/fabric/xyzzy")
+                                                      .build()),
+                      "ccsBuilderImage", "hyperledgendary/fabric-ccs-builder",
+                      "mspUnfurl", unfurl,
+                      "volumes", List.of(volume));
+    }
+
+    @Test
+    public void testRenderPeer()
+    {
+        final Deployment deployment = PEER_TEMPLATE.render(describePeer("org1-peer1"));
+        final PodSpec spec = deployment.getSpec().getTemplate().getSpec();
+
+        assertEquals("org1-peer1", deployment.getMetadata().getName());
+        assertEquals("fabctl", deployment.getMetadata().getLabels().get("app.kubernetes.io/managed-by"));
+        assertEquals("org1-peer1", deployment.getSpec().getSelector().getMatchLabels().get("app"));
+        assertEquals("hyperledger/fabric-peer:2.3.2", spec.getContainers().get(0).getImage());
+        assertEquals(2, spec.getContainers().get(0).getEnv().size());
+        assertEquals(7051, spec.getContainers().get(0).getPorts().get(0).getContainerPort());
+
+        assertEquals(2, spec.getInitContainers().size());
+        assertEquals("fabric-ccs-builder", spec.getInitContainers().get(0).getName());
+        assertEquals("msp-unfurl", spec.getInitContainers().get(1).getName());
+        assertEquals("msp-volume", spec.getVolumes().get(0).getName());
+
+        //
+        // Each rendering is a new model:  changing one does not touch the template or another rendering.
+        //
+        spec.getContainers().get(0).getPorts().clear();
+        assertEquals(3, PEER_TEMPLATE.render(describePeer("org1-peer2"))
+                                     .getSpec()
+                                     .getTemplate()
+                                     .getSpec()
+                                     .getContainers()
+                                     .get(0)
+                                     .getPorts()
+                                     .size());
+    }
+
+    /**
+     * The msp-watch sidecar runs the unfurler in watch mode, over the same folders as the msp-unfurl init container.
+     */
+    @Test
+    public void testRenderMSPWatch()
+    {
+        final List<VolumeMount> volumeMounts =
+                List.of(new VolumeMountBuilder()
+                                .withName("msp-volume")
+                                .withMountPath("/var/hyperledger/fabric/xyzzy")
+                                .build(),
+                        new VolumeMountBuilder()
+                                .withName("msp-descriptors")
+                                .withMountPath("/var/hyperledger/fabric/msp-descriptors")
+                                .build());
+
+        final Container sidecar = ManifestTemplate.load("msp-watch-container.yaml", Container.class)
+                                                  .render(Map.of("volumeMounts", volumeMounts));
+
+        assertEquals("msp-watch", sidecar.getName());
+        assertEquals(volumeMounts, sidecar.getVolumeMounts());
+        assertTrue(sidecar.getEnv().contains(new EnvVarBuilder()
+                                                     .withName("UNFURL_WATCH")
+                                                     .withValue("true")
+                                                     .build()));
+        assertTrue(sidecar.getEnv().contains(new EnvVarBuilder()
+                                                     .withName("INPUT_FOLDER")
+                                                     .withValue("/var/hyperledger/fabric/msp-descriptors")
+                                                     .build()));
+    }
+
+    @Test
+    public void testSubstitution() throws Exception
+    {
+        final ManifestTemplate<ConfigMap> template =
+                ManifestTemplate.parse("metadata:\n"
+                                       + "  name: \"${org}-${name}\"\n"
+                                       + "  labels: \"${labels}\"\n"
+                                       + "data:\n"
+                                       + "  replicas: \"${replicas}\"\n"
+                                       + "  literal: \"$ and { are not placeholders\"\n",
+                                       ConfigMap.class);
+
+        final ConfigMap cm = template.render(Map.of("org", "org1",
+                                                    "name", "peer1",
+                                                    "labels", Map.of("app", "peer1"),
+                                                    "replicas", 3));
+
+        assertEquals("org1-peer1", cm.getMetadata().getName());
+        assertEquals("peer1", cm.getMetadata().getLabels().get("app"));
+        assertEquals("3", cm.getData().get("replicas"));
+        assertEquals("$ and { are not placeholders", cm.getData().get("literal"));
+
+        assertThrows(IllegalArgumentException.class, () -> template.render(Map.of("org", "org1")));
+    }
+
+    @Test
+    public void testListsAreSpliced() throws Exception
+    {
+        final ManifestTemplate<PodSpec> template =
+                ManifestTemplate.parse("containers:\n"
+                                       + "  - name: main\n"
+                                       + "  - \"${sidecars}\"\n",
+                                       PodSpec.class);
+
+        final List<Container> sidecars = List.of(new ContainerBuilder().withName("a").build(),
+                                                 new ContainerBuilder().withName("b").build());
+
+        assertEquals(3, template.render(Map.of("sidecars", sidecars)).getContainers().size());
+        assertEquals(1, template.render(Map.of("sidecars", List.of())).getContainers().size());
+    }
+
+    @Test
+    public void testTemplatesAreCached()
+    {
+        assertSame(PEER_TEMPLATE, ManifestTemplate.load("peer-deployment.yaml", Deployment.class));
+        assertThrows(IllegalArgumentException.class, () -> ManifestTemplate.load("missing.yaml", Deployment.class));
+    }
+
+    /**
+     * Every Deployment fabctl renders, and its pods, can be found with the managed-by=fabctl selector.
+     */
+    @Test
+    public void testDeploymentsAreManagedByFabctl() throws Exception
+    {
+        for (String template : List.of("ca-deployment.yaml",
+                                       "chaincode-deployment.yaml",
+                                       "orderer-deployment.yaml",
+                                       "peer-deployment.yaml"))
+        {
+            final JsonNode deployment;
+            try (InputStream in = ManifestTemplate.class.getResourceAsStream(template))
+            {
+                deployment = yamlMapper.readTree(in);
+            }
+
+            assertEquals("fabctl", deployment.at("/metadata/labels/app.kubernetes.io~1managed-by").asText(), template);
+            assertEquals("fabctl",
+                         deployment.at("/spec/template/metadata/labels/app.kubernetes.io~1managed-by").asText(),
+                         template);
+        }
+    }
+
+    @Test
+    public void benchmarkRenderTopology()
+    {
+        final List<Map<String, Object>> peers = new ArrayList<>();
+        for (int i = 0; i < NODES; i++)
+        {
+            peers.add(describePeer("peer" + i));
+        }
+
+        final List<ServicePort> ports = List.of(new ServicePortBuilder()
+                                                        .withName("gossip")
+                                                        .withProtocol("TCP")
+                                                        .withPort(7051)
+                                                        .build());
+
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++)
+        {
+            final long start = System.nanoTime();
+
+            final List<HasMetadata> manifests = new ArrayList<>();
+            for (Map<String, Object> peer : peers)
+            {
+                manifests.add(PEER_TEMPLATE.render(peer));
+                manifests.add(SERVICE_TEMPLATE.render(Map.of("name", peer.get("name"), "ports", ports)));
+            }
+
+            best = Math.min(best, System.nanoTime() - start);
+
+            assertEquals(2 * NODES, manifests.size());
+        }
+
+        log.info("Rendered {} peer deployments and services in {} ms", NODES, best / 1_000_000);
+    }
+}
@@ -0,0 +1,266 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServicePortBuilder;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.fabric.fabctl.v0.Labels;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
+import org.hyperledger.fabric.fabctl.v1.network.Environment;
+import org.hyperledger.fabric.fabctl.v1.network.NetworkConfig;
+import org.hyperledger.fabric.fabctl.v1.network.OrdererConfig;
+import org.hyperledger.fabric.fabctl.v1.network.OrganizationConfig;
+import org.hyperledger.fabric.fabctl.v1.network.PeerConfig;
+import org.hyperledger.fabric.fabctl.v1.reconcile.NetworkManifests;
+import org.hyperledger.fabric.fabctl.v1.reconcile.NetworkReconciler;
+import org.hyperledger.fabric.fabctl.v1.reconcile.NetworkReconciler.Action;
+import org.hyperledger.fabric.fabctl.v1.reconcile.NetworkReconciler.Plan;
+import org.hyperledger.fabric.fabctl.v1.template.ManifestTemplate;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Diff a network config against the current resources.  This runs without a cluster:  the "current" resources
+ * are the ones written by a previous plan, as the informer caches would see them.
+ */
+@Slf4j
+public class NetworkReconcilerTest
+{
+    private static final int PEERS = 50;
+
+    private static final String NETWORK = "test-network";
+
+    private static final ManifestTemplate<Service> SERVICE_TEMPLATE =
+            ManifestTemplate.load("service.yaml", Service.class);
+
+    /**
+     * One immutable config map per MSP, and a deployment + service per node.
+     */
+    private static final NetworkManifests manifests = new NetworkManifests()
+    {
+        @Override
+        public List<HasMetadata> buildMSP(final MSPDescriptor msp)
+        {
+            return List.of(new ConfigMapBuilder()
+                                   .withNewMetadata()
+                                   .withName(msp.name)
+                                   .addToLabels(Labels.MANAGED_BY, Labels.FABCTL)
+                                   .endMetadata()
+                                   .withImmutable(true)
+                                   .withData(Map.of(msp.name + ".yaml", "id: " + msp.id))
+                                   .build());
+        }
+
+        @Override
+        public List<HasMetadata> buildOrderer(final OrdererConfig orderer)
+        {
+            return List.of(buildDeployment(orderer.name, orderer.environment), buildService(orderer.name));
+        }
+
+        @Override
+        public List<HasMetadata> buildPeer(final PeerConfig peer)
+        {
+            return List.of(buildDeployment(peer.name, peer.environment), buildService(peer.name));
+        }
+    };
+
+    private static Deployment buildDeployment(final String name, final Environment environment)
+    {
+        return new DeploymentBuilder()
+                .withNewMetadata()
+                .withName(name)
+                .addToLabels(Labels.MANAGED_BY, Labels.FABCTL)
+                .endMetadata()
+                .withNewSpec()
+                .withNewTemplate()
+                .withNewSpec()
+                .addNewContainer()
+                .withName("main")
+                .withImage("hyperledger/fabric-peer:2.3.2")
+                .withEnv(environment.asEnvVarList())
+                .endContainer()
+                .endSpec()
+                .endTemplate()
+                .endSpec()
+                .build();
+    }
+
+    private static Service buildService(final String name)
+    {
+        return SERVICE_TEMPLATE.render(Map.of("name", name,
+                                              "ports", List.of(new ServicePortBuilder()
+                                                                       .withName("gossip")
+                                                                       .withProtocol("TCP")
+                                                                       .withPort(7051)
+                                                                       .build())));
+    }
+
+    private static NetworkConfig buildNetwork(final int peers)
+    {
+        final NetworkConfig network = new NetworkConfig(NETWORK);
+
+        final OrganizationConfig org =
+                new OrganizationConfig("org1", "Org1MSP", new MSPDescriptor("msp-org1", "org1", null, null));
+
+        for (int i = 0; i < peers; i++)
+        {
+            final String name = "org1-peer" + i;
+
+            final Environment environment = new Environment();
+            environment.put("CORE_PEER_ID", name);
+
+            org.peers.add(new PeerConfig(name,
+                                         environment,
+                                         new MSPDescriptor("msp-" + name, name + ".org1.example.com", null, null)));
+        }
+
+        network.organizations.add(org);
+
+        return network;
+    }
+
+    /**
+     * Plan a network, then "apply" it:  the stamped resources become the current state for the next plan.
+     */
+    private static List<HasMetadata> applyAll(final NetworkConfig network) throws Exception
+    {
+        final List<HasMetadata> desired = NetworkReconciler.render(network, manifests);
+        final Plan plan = NetworkReconciler.diff(NETWORK, desired, List.of());
+
+        assertEquals(desired.size(), plan.count(Action.CREATE));
+
+        return desired;
+    }
+
+    @Test
+    public void testFirstRunCreatesEverything() throws Exception
+    {
+        final List<HasMetadata> desired = NetworkReconciler.render(buildNetwork(PEERS), manifests);
+        final Plan plan = NetworkReconciler.diff(NETWORK, desired, List.of());
+
+        assertEquals(1 + 3 * PEERS, plan.count(Action.CREATE));
+        assertEquals(0, plan.unchanged);
+        assertEquals(PEERS, plan.getRollouts().size());
+
+        //
+        // Config maps first:  a pod must not start before its MSP context is in place.
+        //
+        assertTrue(plan.changes.get(0).resource instanceof ConfigMap);
+        assertTrue(plan.changes.get(plan.changes.size() - 1).resource instanceof Deployment);
+
+        final HasMetadata resource = plan.changes.get(0).resource;
+        assertEquals(NETWORK, resource.getMetadata().getLabels().get(Labels.NETWORK));
+        assertNotNull(resource.getMetadata().getAnnotations().get(NetworkReconciler.SPEC_HASH));
+    }
+
+    @Test
+    public void testUnchangedNetworkWritesNothing() throws Exception
+    {
+        final List<HasMetadata> current = applyAll(buildNetwork(PEERS));
+
+        final Plan plan = NetworkReconciler.diff(NETWORK,
+                                                 NetworkReconciler.render(buildNetwork(PEERS), manifests),
+                                                 current);
+
+        assertTrue(plan.isEmpty());
+        assertEquals(1 + 3 * PEERS, plan.unchanged);
+    }
+
+    @Test
+    public void testAddOnePeer() throws Exception
+    {
+        final List<HasMetadata> current = applyAll(buildNetwork(PEERS));
+
+        final long start = System.currentTimeMillis();
+        final Plan plan = NetworkReconciler.diff(NETWORK,
+                                                 NetworkReconciler.render(buildNetwork(PEERS + 1), manifests),
+                                                 current);
+
+        log.info("Planned {} changes to a {} peer network in {} ms",
+                 plan.changes.size(),
+                 PEERS,
+                 System.currentTimeMillis() - start);
+
+        //
+        // One MSP config map, one service, one deployment.
+        //
+        assertEquals(3, plan.changes.size());
+        assertEquals(3, plan.count(Action.CREATE));
+        assertEquals("msp-org1-peer" + PEERS, plan.changes.get(0).resource.getMetadata().getName());
+        assertEquals("org1-peer" + PEERS, plan.changes.get(1).resource.getMetadata().getName());
+        assertEquals("org1-peer" + PEERS, plan.getRollouts().get(0).getMetadata().getName());
+        assertEquals(1 + 3 * PEERS, plan.unchanged);
+    }
+
+    @Test
+    public void testChangedPeerIsUpdated() throws Exception
+    {
+        final List<HasMetadata> current = applyAll(buildNetwork(PEERS));
+
+        final NetworkConfig network = buildNetwork(PEERS);
+        network.organizations.get(0).peers.get(7).environment.put("CORE_PEER_GOSSIP_BOOTSTRAP", "org1-peer0:7051");
+
+        final Plan plan = NetworkReconciler.diff(NETWORK, NetworkReconciler.render(network, manifests), current);
+
+        assertEquals(1, plan.changes.size());
+        assertEquals(Action.UPDATE, plan.changes.get(0).action);
+        assertEquals("org1-peer7", plan.getRollouts().get(0).getMetadata().getName());
+    }
+
+    @Test
+    public void testRemovedPeerIsDeleted() throws Exception
+    {
+        final List<HasMetadata> current = new ArrayList<>(applyAll(buildNetwork(PEERS)));
+
+        //
+        // A deployment from another network is not ours to delete.
+        //
+        final Deployment other = buildDeployment("other-peer0", new Environment());
+        other.getMetadata().getLabels().put(Labels.NETWORK, "other-network");
+        current.add(other);
+
+        final Plan plan = NetworkReconciler.diff(NETWORK,
+                                                 NetworkReconciler.render(buildNetwork(PEERS - 1), manifests),
+                                                 current);
+
+        //
+        // The deployment goes before its service.  The MSP config map stays:  a rolling pod may still refer to it.
+        //
+        assertEquals(2, plan.changes.size());
+        assertEquals(2, plan.count(Action.DELETE));
+        assertTrue(plan.changes.get(0).resource instanceof Deployment);
+        assertTrue(plan.changes.get(1).resource instanceof Service);
+        assertEquals("org1-peer" + (PEERS - 1), plan.changes.get(0).resource.getMetadata().getName());
+    }
+
+    @Test
+    public void testImmutableConfigMapsAreNotRewritten() throws Exception
+    {
+        //
+        // A config map created by NetworkBootstrap carries no spec hash.  It is named for its content, so it stays.
+        //
+        final List<HasMetadata> current = new ArrayList<>(manifests.buildMSP(new MSPDescriptor("msp-org1",
+                                                                                               "org1",
+                                                                                               null,
+                                                                                               null)));
+
+        final NetworkConfig network = buildNetwork(0);
+        final Plan plan = NetworkReconciler.diff(NETWORK, NetworkReconciler.render(network, manifests), current);
+
+        assertTrue(plan.isEmpty());
+        assertEquals(1, plan.unchanged);
+    }
+}
@@ -0,0 +1,1030 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.server.mock.KubernetesMockServer;
+import io.fabric8.mockwebserver.Context;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * A k8s API server, in memory, for measuring the orchestration overhead of fabctl without a cluster.
+ *
+ * This is the fabric8 mock server with a dispatcher that keeps its own store, rather than the CRUD dispatcher:  the
+ * CRUD dispatcher can not serve apply patches or pod logs, and nothing in it moves a Job or Deployment along.  Here:
+ *
+ * - resources are created, read, replaced, patched (apply and merge) and deleted, with resource versions, label /
+ *   field selectors and watches (including the replay an informer asks for after its initial list.)
+ *
+ * - a simulated Job controller starts a pod for each Job, runs it to a zero exit code and completes the Job.  With
+ *   failInitContainer(), the pod fails in its init container instead, and the Job fails with it.
+ *
+ * - a simulated Deployment controller marks each new generation of a Deployment available.
+ *
+ * Every API request is metered against the current phase (see phase()) with its verb, resource, and the bytes sent
+ * and received, including watch events.  The controllers write to the store directly and are not metered.
+ */
+@Slf4j
+class SimulatedCluster extends Dispatcher implements AutoCloseable
+{
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final YAMLMapper yamlMapper = new YAMLMapper();
+
+    private static final Pattern PATH =
+            Pattern.compile("(/api/v1|/apis/[^/]+/[^/]+)/namespaces/([^/]+)/([^/]+)(?:/([^/]+))?(?:/([^/]+))?");
+
+    private static final Map<String, String> KINDS = Map.of("configmaps", "ConfigMap",
+                                                            "services", "Service",
+                                                            "pods", "Pod",
+                                                            "deployments", "Deployment",
+                                                            "jobs", "Job",
+                                                            "persistentvolumeclaims", "PersistentVolumeClaim");
+
+    /**
+     * Simulated delays, in milliseconds.
+     */
+    @Data
+    static class Latencies
+    {
+        /**
+         * Added to every API response.
+         */
+        public final long api;
+
+        /**
+         * From the creation of a Job to its pod running.
+         */
+        public final long podStart;
+
+        /**
+         * From a Job's pod running to the Job completing.
+         */
+        public final long jobRun;
+
+        /**
+         * From a new Deployment generation to its replicas being available.
+         */
+        public final long rollout;
+    }
+
+    /**
+     * The API traffic and wall-clock time of one phase.
+     */
+    static class Meter
+    {
+        final String phase;
+
+        final long start = System.nanoTime();
+
+        volatile Duration elapsed;
+
+        final AtomicLong calls = new AtomicLong();
+
+        final AtomicLong writes = new AtomicLong();
+
+        final AtomicLong bytesSent = new AtomicLong();
+
+        final AtomicLong bytesReceived = new AtomicLong();
+
+        /**
+         * Number of calls by verb and resource, e.g. "PATCH deployments" or "WATCH jobs"
+         */
+        final Map<String, AtomicLong> requests = new ConcurrentSkipListMap<>();
+
+        Meter(final String phase)
+        {
+            this.phase = phase;
+        }
+
+        private void record(final String verb, final String resource, final long sent, final long received)
+        {
+            calls.incrementAndGet();
+            bytesSent.addAndGet(sent);
+            bytesReceived.addAndGet(received);
+            requests.computeIfAbsent(verb + " " + resource, k -> new AtomicLong()).incrementAndGet();
+
+            if (! "GET".equals(verb) && ! "WATCH".equals(verb))
+            {
+                writes.incrementAndGet();
+            }
+        }
+    }
+
+    @Data
+    private static class Event
+    {
+        public final long resourceVersion;
+        public final String type;
+        public final String collection;
+        public final ObjectNode object;
+    }
+
+    private final KubernetesMockServer server;
+
+    private final KubernetesClient client;
+
+    private final Latencies latencies;
+
+    private final Function<String, List<String>> jobLogs;
+
+    private final ScheduledExecutorService controller;
+
+    private final Random random = new Random();
+
+    //
+    // Everything below is guarded by this.
+    //
+    private final Map<String, Map<String, ObjectNode>> collections = new HashMap<>();
+
+    private final List<Event> history = new ArrayList<>();
+
+    private final List<WatchStream> watches = new CopyOnWriteArrayList<>();
+
+    private final Map<String, List<String>> podLogs = new ConcurrentHashMap<>();
+
+    private long resourceVersion = 1000;
+
+    private final Map<String, Meter> meters = new LinkedHashMap<>();
+
+    private volatile Meter meter = new Meter("setup");
+
+    /**
+     * The init container that fails in each new Job pod, or null to run the pods to completion.
+     */
+    private volatile String failingInitContainer;
+
+    /**
+     * @param jobLogs The log lines printed by the [main] container of each Job, by Job name.
+     */
+    SimulatedCluster(final String namespace, final Latencies latencies, final Function<String, List<String>> jobLogs)
+    {
+        this.latencies = latencies;
+        this.jobLogs = jobLogs;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.controller = Executors.newScheduledThreadPool(2, runnable ->
+        {
+            final Thread thread = new Thread(runnable, "fabctl-sim-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server = new KubernetesMockServer(new Context(), new MockWebServer(), new HashMap<>(), this, false);
+        this.server.init();
+
+        this.client = server.createClient().inNamespace(namespace);
+    }
+
+    KubernetesClient getClient()
+    {
+        return client;
+    }
+
+    @Override
+    public void close()
+    {
+        phase(null);
+
+        client.close();
+        server.destroy();
+        controller.shutdownNow();
+    }
+
+    /**
+     * Fail the named init container (e.g. msp-unfurl) of each Job pod started from now on, as a pod with
+     * restartPolicy Never does:  the pod fails with [main] still waiting in PodInitializing, and the Job fails.  A
+     * null name runs the pods to completion again.
+     */
+    void failInitContainer(final String name)
+    {
+        this.failingInitContainer = name;
+    }
+
+    /**
+     * Meter the requests that follow against a new phase, ending the current one.  A null phase just ends it.
+     */
+    synchronized void phase(final String name)
+    {
+        if (! meters.containsKey(meter.phase))
+        {
+            meter.elapsed = Duration.ofNanos(System.nanoTime() - meter.start);
+            meters.put(meter.phase, meter);
+        }
+
+        if (name != null)
+        {
+            meter = new Meter(name);
+        }
+    }
+
+    /**
+     * The meters of each completed phase, in the order they ran.
+     */
+    synchronized Map<String, Meter> getMeters()
+    {
+        return new LinkedHashMap<>(meters);
+    }
+
+    @Override
+    public MockResponse dispatch(final RecordedRequest request)
+    {
+        final String[] target = request.getPath().split("\\?", 2);
+        final Map<String, String> query = parseQuery(target.length > 1 ? target[1] : "");
+
+        final Matcher matcher = PATH.matcher(target[0]);
+        if (! matcher.matches())
+        {
+            meter.record(request.getMethod(), target[0], request.getBodySize(), 0);
+            return reply(HttpURLConnection.HTTP_NOT_FOUND, status(HttpURLConnection.HTTP_NOT_FOUND, "NotFound"));
+        }
+
+        final String collection = matcher.group(1) + "/namespaces/" + matcher.group(2) + "/" + matcher.group(3);
+        final String name = matcher.group(4);
+        final String subresource = matcher.group(5);
+        final String resource = matcher.group(3) + (subresource == null ? "" : "/" + subresource);
+
+        if (name == null && "true".equals(query.get("watch")))
+        {
+            meter.record("WATCH", resource, request.getBodySize(), 0);
+            return new MockResponse().withWebSocketUpgrade(new WatchStream(collection,
+                                                                           query.get("labelSelector"),
+                                                                           query.get("fieldSelector"),
+                                                                           query.get("resourceVersion")));
+        }
+
+        MockResponse response;
+        try
+        {
+            response = handle(request, collection, name, subresource, query);
+        }
+        catch (IOException ex)
+        {
+            log.warn("Could not handle {} {}: {}", request.getMethod(), request.getPath(), ex.getMessage());
+            response = reply(HttpURLConnection.HTTP_BAD_REQUEST,
+                             status(HttpURLConnection.HTTP_BAD_REQUEST, "BadRequest"));
+        }
+
+        meter.record(request.getMethod(), resource, request.getBodySize(), response.getBody().size());
+
+        return response.setHeadersDelay(latencies.api, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized MockResponse handle(final RecordedRequest request,
+                                             final String collection,
+                                             final String name,
+                                             final String subresource,
+                                             final Map<String, String> query)
+            throws IOException
+    {
+        final Map<String, ObjectNode> objects = collections.computeIfAbsent(collection, k -> new LinkedHashMap<>());
+        final ObjectNode existing = name == null ? null : objects.get(name);
+
+        switch (request.getMethod())
+        {
+            case "GET":
+                if (name == null)
+                {
+                    return reply(HttpURLConnection.HTTP_OK, list(collection,
+                                                                 query.get("labelSelector"),
+                                                                 query.get("fieldSelector")));
+                }
+                if (existing == null)
+                {
+                    return notFound(name);
+                }
+                if ("log".equals(subresource))
+                {
+                    return new MockResponse()
+                            .setResponseCode(HttpURLConnection.HTTP_OK)
+                            .setHeader("Content-Type", "text/plain")
+                            .setBody(String.join("\n", podLogs.getOrDefault(name, List.of())) + "\n");
+                }
+                return reply(HttpURLConnection.HTTP_OK, existing);
+
+            case "POST":
+            {
+                final ObjectNode object = readBody(request);
+                final ObjectNode metadata = object.with("metadata");
+                if (! metadata.hasNonNull("name"))
+                {
+                    metadata.put("name", metadata.path("generateName").asText() + suffix());
+                }
+                if (objects.containsKey(metadata.get("name").asText()))
+                {
+                    return reply(HttpURLConnection.HTTP_CONFLICT,
+                                 status(HttpURLConnection.HTTP_CONFLICT, "AlreadyExists"));
+                }
+
+                return reply(HttpURLConnection.HTTP_CREATED, create(collection, object));
+            }
+
+            case "PUT":
+                if (existing == null)
+                {
+                    return notFound(name);
+                }
+                return reply(HttpURLConnection.HTTP_OK, update(collection, existing, readBody(request),
+                                                               "status".equals(subresource)));
+
+            case "PATCH":
+            {
+                final String contentType = String.valueOf(request.getHeader("Content-Type"));
+                final ObjectNode patch = readBody(request);
+
+                if (contentType.contains("apply-patch"))
+                {
+                    patch.with("metadata").put("name", name);
+
+                    //
+                    // Record the field manager, as the API server does.  Only the last applier is kept.
+                    //
+                    if (query.containsKey("fieldManager"))
+                    {
+                        final ObjectNode entry = patch.with("metadata").putArray("managedFields").addObject();
+                        entry.put("manager", query.get("fieldManager"));
+                        entry.put("operation", "Apply");
+                    }
+
+                    if (existing == null)
+                    {
+                        return reply(HttpURLConnection.HTTP_CREATED, create(collection, patch));
+                    }
+                }
+                else if (existing == null)
+                {
+                    return notFound(name);
+                }
+
+                final ObjectNode merged = existing.deepCopy();
+                merge(merged, patch);
+
+                return reply(HttpURLConnection.HTTP_OK, update(collection, existing, merged, false));
+            }
+
+            case "DELETE":
+                if (existing == null)
+                {
+                    return notFound(name);
+                }
+                delete(collection, name);
+                return reply(HttpURLConnection.HTTP_OK, status(HttpURLConnection.HTTP_OK, null));
+
+            default:
+                return reply(HttpURLConnection.HTTP_BAD_METHOD,
+                             status(HttpURLConnection.HTTP_BAD_METHOD, "MethodNotAllowed"));
+        }
+    }
+
+    //
+    // Store
+    //
+
+    private synchronized ObjectNode create(final String collection, final ObjectNode object)
+    {
+        final ObjectNode metadata = object.with("metadata");
+        metadata.put("namespace", namespaceOf(collection));
+        metadata.put("uid", UUID.randomUUID().toString());
+        metadata.put("creationTimestamp", Instant.now().toString());
+        metadata.put("generation", 1);
+
+        collections.computeIfAbsent(collection, k -> new LinkedHashMap<>()).put(metadata.get("name").asText(), object);
+        emit("ADDED", collection, object);
+
+        return object;
+    }
+
+    /**
+     * Replace an object.  A write to the object leaves its status alone, a write to the status leaves the rest.
+     */
+    private synchronized ObjectNode update(final String collection,
+                                           final ObjectNode existing,
+                                           final ObjectNode replacement,
+                                           final boolean status)
+    {
+        final ObjectNode object;
+        if (status)
+        {
+            object = existing.deepCopy();
+            object.set("status", replacement.get("status"));
+        }
+        else
+        {
+            object = replacement.deepCopy();
+            object.set("status", existing.get("status"));
+
+            //
+            // Keep the server side fields, and start a new generation when the spec changes.
+            //
+            final ObjectNode metadata = object.with("metadata");
+            final JsonNode current = existing.get("metadata");
+            for (String field : List.of("namespace", "uid", "creationTimestamp", "generation"))
+            {
+                metadata.set(field, current.get(field));
+            }
+
+            if (! existing.path("spec").equals(object.path("spec")))
+            {
+                metadata.put("generation", current.path("generation").asLong() + 1);
+            }
+        }
+
+        if (object.get("status") == null || object.get("status").isNull())
+        {
+            object.remove("status");
+        }
+
+        collections.get(collection).put(object.get("metadata").get("name").asText(), object);
+        emit("MODIFIED", collection, object);
+
+        return object;
+    }
+
+    private synchronized void delete(final String collection, final String name)
+    {
+        final ObjectNode object = collections.get(collection).remove(name);
+        emit("DELETED", collection, object);
+    }
+
+    private synchronized ObjectNode get(final String collection, final String name)
+    {
+        return collections.getOrDefault(collection, Map.of()).get(name);
+    }
+
+    private synchronized void emit(final String type, final String collection, final ObjectNode object)
+    {
+        object.with("metadata").put("resourceVersion", String.valueOf(++resourceVersion));
+
+        final Event event = new Event(resourceVersion, type, collection, object.deepCopy());
+        history.add(event);
+
+        for (WatchStream watch : watches)
+        {
+            watch.send(event);
+        }
+
+        if (collection.endsWith("/jobs") && "ADDED".equals(type))
+        {
+            runJob(collection, object.deepCopy());
+        }
+        else if (collection.endsWith("/jobs") && "DELETED".equals(type))
+        {
+            final String pods = podsOf(collection);
+            for (ObjectNode pod : select(pods, "job-name=" + object.get("metadata").get("name").asText(), null))
+            {
+                delete(pods, pod.get("metadata").get("name").asText());
+            }
+        }
+        else if (collection.endsWith("/deployments") && ! "DELETED".equals(type))
+        {
+            final long generation = object.get("metadata").path("generation").asLong();
+            if (object.path("status").path("observedGeneration").asLong() < generation)
+            {
+                rollout(collection, object.get("metadata").get("name").asText(), generation);
+            }
+        }
+    }
+
+    private synchronized List<ObjectNode> select(final String collection,
+                                                 final String labelSelector,
+                                                 final String fieldSelector)
+    {
+        final List<ObjectNode> selected = new ArrayList<>();
+        for (ObjectNode object : collections.getOrDefault(collection, Map.of()).values())
+        {
+            if (matches(object, labelSelector, fieldSelector))
+            {
+                selected.add(object);
+            }
+        }
+
+        return selected;
+    }
+
+    private synchronized ObjectNode list(final String collection,
+                                         final String labelSelector,
+                                         final String fieldSelector)
+    {
+        final String plural = collection.substring(collection.lastIndexOf('/') + 1);
+
+        final ObjectNode list = objectMapper.createObjectNode();
+        list.put("apiVersion", apiVersionOf(collection));
+        list.put("kind", KINDS.getOrDefault(plural, "Unknown") + "List");
+        list.with("metadata").put("resourceVersion", String.valueOf(resourceVersion));
+        list.putArray("items").addAll(new ArrayList<>(select(collection, labelSelector, fieldSelector)));
+
+        return list;
+    }
+
+    //
+    // Controllers
+    //
+
+    /**
+     * Start a pod for the Job, run it to completion, then complete the Job.
+     */
+    private void runJob(final String collection, final ObjectNode job)
+    {
+        final String jobName = job.get("metadata").get("name").asText();
+        final String pods = podsOf(collection);
+        final String podName = jobName + "-" + suffix();
+        final String failing = failingInitContainer;
+
+        schedule(latencies.podStart, () ->
+        {
+            final ObjectNode pod = objectMapper.createObjectNode();
+            pod.put("apiVersion", "v1");
+            pod.put("kind", "Pod");
+
+            final ObjectNode metadata = pod.with("metadata");
+            metadata.put("name", podName);
+
+            final ObjectNode labels = metadata.with("labels");
+            final JsonNode templateLabels = job.path("spec").path("template").path("metadata").path("labels");
+            if (templateLabels.isObject())
+            {
+                labels.setAll((ObjectNode) templateLabels.deepCopy());
+            }
+            labels.put("job-name", jobName);
+            labels.put("controller-uid", job.get("metadata").get("uid").asText());
+
+            pod.set("spec", job.path("spec").path("template").path("spec").deepCopy());
+
+            if (failing != null)
+            {
+                pod.set("status", failedPodStatus(pod, failing));
+                create(pods, pod);
+
+                failJob(collection, jobName);
+                return;
+            }
+
+            pod.set("status", podStatus(pod, "Running"));
+
+            podLogs.put(podName, jobLogs.apply(jobName));
+            create(pods, pod);
+        });
+
+        if (failing != null)
+        {
+            return;
+        }
+
+        schedule(latencies.podStart + latencies.jobRun, () ->
+        {
+            final ObjectNode pod = get(pods, podName);
+            if (pod == null)
+            {
+                return;
+            }
+
+            final ObjectNode succeeded = pod.deepCopy();
+            succeeded.set("status", podStatus(pod, "Succeeded"));
+            update(pods, pod, succeeded, true);
+
+            final ObjectNode current = get(collection, jobName);
+            if (current == null)
+            {
+                return;
+            }
+
+            final ObjectNode completed = current.deepCopy();
+            final ObjectNode status = completed.putObject("status");
+            status.put("startTime", Instant.now().toString());
+            status.put("completionTime", Instant.now().toString());
+            status.put("succeeded", 1);
+            status.putArray("conditions")
+                  .addObject()
+                  .put("type", "Complete")
+                  .put("status", "True")
+                  .put("lastTransitionTime", Instant.now().toString());
+
+            update(collection, current, completed, true);
+        });
+    }
+
+    /**
+     * The Job controller gives up after the first failed pod (backoffLimit: 0.)
+     */
+    private void failJob(final String collection, final String jobName)
+    {
+        final ObjectNode current = get(collection, jobName);
+        if (current == null)
+        {
+            return;
+        }
+
+        final ObjectNode failed = current.deepCopy();
+        final ObjectNode status = failed.putObject("status");
+        status.put("startTime", Instant.now().toString());
+        status.put("failed", 1);
+        status.putArray("conditions")
+              .addObject()
+              .put("type", "Failed")
+              .put("status", "True")
+              .put("reason", "BackoffLimitExceeded")
+              .put("lastTransitionTime", Instant.now().toString());
+
+        update(collection, current, failed, true);
+    }
+
+    /**
+     * A pod whose init container exited non-zero:  the containers never left PodInitializing.
+     */
+    private static ObjectNode failedPodStatus(final ObjectNode pod, final String initContainer)
+    {
+        final ObjectNode status = objectMapper.createObjectNode();
+        status.put("phase", "Failed");
+
+        status.putArray("initContainerStatuses")
+              .addObject()
+              .put("name", initContainer)
+              .put("ready", false)
+              .with("state")
+              .with("terminated")
+              .put("exitCode", 1)
+              .put("reason", "Error")
+              .put("finishedAt", Instant.now().toString());
+
+        final ArrayNode containerStatuses = status.putArray("containerStatuses");
+        for (JsonNode container : pod.path("spec").path("containers"))
+        {
+            final ObjectNode containerStatus = containerStatuses.addObject();
+            containerStatus.put("name", container.path("name").asText());
+            containerStatus.put("image", container.path("image").asText());
+            containerStatus.put("ready", false);
+            containerStatus.with("state").with("waiting").put("reason", "PodInitializing");
+        }
+
+        return status;
+    }
+
+    private static ObjectNode podStatus(final ObjectNode pod, final String phase)
+    {
+        final ObjectNode status = objectMapper.createObjectNode();
+        status.put("phase", phase);
+
+        final ArrayNode containerStatuses = status.putArray("containerStatuses");
+        for (JsonNode container : pod.path("spec").path("containers"))
+        {
+            final ObjectNode containerStatus = containerStatuses.addObject();
+            containerStatus.put("name", container.path("name").asText());
+            containerStatus.put("image", container.path("image").asText());
+
+            if ("Running".equals(phase))
+            {
+                containerStatus.put("ready", true);
+                containerStatus.with("state").with("running").put("startedAt", Instant.now().toString());
+            }
+            else
+            {
+                containerStatus.put("ready", false);
+                containerStatus.with("state")
+                               .with("terminated")
+                               .put("exitCode", 0)
+                               .put("reason", "Completed")
+                               .put("finishedAt", Instant.now().toString());
+            }
+        }
+
+        return status;
+    }
+
+    /**
+     * Mark a generation of the Deployment as rolled out, unless it has moved on in the meantime.
+     */
+    private void rollout(final String collection, final String name, final long generation)
+    {
+        schedule(latencies.rollout, () ->
+        {
+            final ObjectNode current = get(collection, name);
+            if (current == null || current.get("metadata").path("generation").asLong() != generation)
+            {
+                return;
+            }
+
+            final int replicas = current.path("spec").path("replicas").asInt(1);
+
+            final ObjectNode available = current.deepCopy();
+            final ObjectNode status = available.putObject("status");
+            status.put("observedGeneration", generation);
+            status.put("replicas", replicas);
+            status.put("updatedReplicas", replicas);
+            status.put("readyReplicas", replicas);
+            status.put("availableReplicas", replicas);
+
+            final ArrayNode conditions = status.putArray("conditions");
+            conditions.addObject()
+                      .put("type", "Available")
+                      .put("status", "True")
+                      .put("reason", "MinimumReplicasAvailable");
+            conditions.addObject()
+                      .put("type", "Progressing")
+                      .put("status", "True")
+                      .put("reason", "NewReplicaSetAvailable");
+
+            update(collection, current, available, true);
+        });
+    }
+
+    private void schedule(final long delay, final Runnable task)
+    {
+        controller.schedule(() ->
+        {
+            try
+            {
+                task.run();
+            }
+            catch (Exception ex)
+            {
+                log.error("Simulated controller failed", ex);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    //
+    // Watches
+    //
+
+    /**
+     * A watch on a collection, open from the websocket upgrade until the client closes it.  Events after the
+     * requested resource version are replayed when it opens.
+     */
+    private class WatchStream extends WebSocketListener
+    {
+        private final String collection;
+        private final String labelSelector;
+        private final String fieldSelector;
+        private final long since;
+
+        private WebSocket socket;
+
+        private WatchStream(final String collection,
+                            final String labelSelector,
+                            final String fieldSelector,
+                            final String resourceVersion)
+        {
+            this.collection = collection;
+            this.labelSelector = labelSelector;
+            this.fieldSelector = fieldSelector;
+            this.since = resourceVersion == null || resourceVersion.isEmpty() ? 0 : Long.parseLong(resourceVersion);
+        }
+
+        @Override
+        public void onOpen(final WebSocket webSocket, final Response response)
+        {
+            synchronized (SimulatedCluster.this)
+            {
+                this.socket = webSocket;
+
+                if (since > 0)
+                {
+                    for (Event event : history)
+                    {
+                        if (event.resourceVersion > since)
+                        {
+                            send(event);
+                        }
+                    }
+                }
+
+                watches.add(this);
+            }
+        }
+
+        @Override
+        public void onClosing(final WebSocket webSocket, final int code, final String reason)
+        {
+            watches.remove(this);
+            webSocket.close(code, reason);
+        }
+
+        @Override
+        public void onFailure(final WebSocket webSocket, final Throwable t, final Response response)
+        {
+            watches.remove(this);
+        }
+
+        private void send(final Event event)
+        {
+            if (! event.collection.equals(collection) || ! matches(event.object, labelSelector, fieldSelector))
+            {
+                return;
+            }
+
+            final ObjectNode frame = objectMapper.createObjectNode();
+            frame.put("type", event.type);
+            frame.set("object", event.object);
+
+            final String text = frame.toString();
+            meter.bytesReceived.addAndGet(text.getBytes(StandardCharsets.UTF_8).length);
+
+            socket.send(text);
+        }
+    }
+
+    //
+    // Helpers
+    //
+
+    /**
+     * Equality (=, ==, !=) and existence (key, !key) requirements on labels, and metadata.name on fields.
+     */
+    private static boolean matches(final ObjectNode object, final String labelSelector, final String fieldSelector)
+    {
+        final JsonNode metadata = object.path("metadata");
+
+        if (fieldSelector != null && fieldSelector.startsWith("metadata.name="))
+        {
+            if (! metadata.path("name").asText().equals(fieldSelector.substring("metadata.name=".length())))
+            {
+                return false;
+            }
+        }
+
+        if (labelSelector == null || labelSelector.isEmpty())
+        {
+            return true;
+        }
+
+        final JsonNode labels = metadata.path("labels");
+        for (String requirement : labelSelector.split(","))
+        {
+            final boolean matched;
+            if (requirement.contains("!="))
+            {
+                final String[] kv = requirement.split("!=", 2);
+                matched = ! kv[1].equals(labels.path(kv[0]).asText(null));
+            }
+            else if (requirement.contains("="))
+            {
+                final String[] kv = requirement.split("==?", 2);
+                matched = kv[1].equals(labels.path(kv[0]).asText(null));
+            }
+            else if (requirement.startsWith("!"))
+            {
+                matched = ! labels.has(requirement.substring(1));
+            }
+            else
+            {
+                matched = labels.has(requirement);
+            }
+
+            if (! matched)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * JSON merge patch (RFC 7386), which also stands in for an apply:  the fields in the patch win.
+     */
+    private static void merge(final ObjectNode target, final ObjectNode patch)
+    {
+        final Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext())
+        {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            final JsonNode value = field.getValue();
+
+            if (value.isNull())
+            {
+                target.remove(field.getKey());
+            }
+            else if (value.isObject() && target.path(field.getKey()).isObject())
+            {
+                merge((ObjectNode) target.get(field.getKey()), (ObjectNode) value);
+            }
+            else
+            {
+                target.set(field.getKey(), value);
+            }
+        }
+    }
+
+    private static ObjectNode readBody(final RecordedRequest request) throws IOException
+    {
+        final String body = request.getBody().readUtf8();
+        final String contentType = String.valueOf(request.getHeader("Content-Type"));
+
+        return (ObjectNode) (contentType.contains("yaml") ? yamlMapper : objectMapper).readTree(body);
+    }
+
+    private static Map<String, String> parseQuery(final String query)
+    {
+        final Map<String, String> params = new HashMap<>();
+        for (String param : query.split("&"))
+        {
+            if (! param.isEmpty())
+            {
+                final String[] kv = param.split("=", 2);
+                params.put(URLDecoder.decode(kv[0], StandardCharsets.UTF_8),
+                           kv.length > 1 ? URLDecoder.decode(kv[1], StandardCharsets.UTF_8) : "");
+            }
+        }
+
+        return params;
+    }
+
+    private static MockResponse reply(final int code, final JsonNode body)
+    {
+        return new MockResponse()
+                .setResponseCode(code)
+                .setHeader("Content-Type", "application/json")
+                .setBody(body.toString());
+    }
+
+    private static MockResponse notFound(final String name)
+    {
+        final ObjectNode status = status(HttpURLConnection.HTTP_NOT_FOUND, "NotFound");
+        status.put("message", name + " not found");
+
+        return reply(HttpURLConnection.HTTP_NOT_FOUND, status);
+    }
+
+    private static ObjectNode status(final int code, final String reason)
+    {
+        final ObjectNode status = objectMapper.createObjectNode();
+        status.put("apiVersion", "v1");
+        status.put("kind", "Status");
+        status.put("status", reason == null ? "Success" : "Failure");
+        status.put("code", code);
+        if (reason != null)
+        {
+            status.put("reason", reason);
+        }
+
+        return status;
+    }
+
+    private static String apiVersionOf(final String collection)
+    {
+        return collection.startsWith("/api/v1") ? "v1" : collection.split("/")[2] + "/" + collection.split("/")[3];
+    }
+
+    private static String namespaceOf(final String collection)
+    {
+        final String[] parts = collection.split("/");
+        return parts[parts.length - 2];
+    }
+
+    private static String podsOf(final String collection)
+    {
+        return "/api/v1/namespaces/" + namespaceOf(collection) + "/pods";
+    }
+
+    private synchronized String suffix()
+    {
+        final StringBuilder suffix = new StringBuilder();
+        for (int i = 0; i < 5; i++)
+        {
+            suffix.append((char) ('a' + random.nextInt(26)));
+        }
+
+        return suffix.toString();
+    }
+}
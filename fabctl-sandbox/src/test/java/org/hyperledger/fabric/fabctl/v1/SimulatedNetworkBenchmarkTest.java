@@ -0,0 +1,163 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.fabric.fabctl.v0.JobExecutor;
+import org.hyperledger.fabric.fabctl.v0.JobInformer;
+import org.hyperledger.fabric.fabctl.v1.reconcile.BatchApplier;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Run the test network bootstrap, channel and chaincode flows against a SimulatedCluster rather than KIND, and
+ * report the wall-clock time, API calls and bytes on the wire for each phase.  Jobs and rollouts are simulated, so
+ * the numbers are fabctl's own orchestration overhead:  a change in the calls or bytes of a phase is a change in
+ * the way fabctl drives the API server.
+ *
+ * The latencies can be set with -Dfabctl.simApiLatency, simPodStart, simJobRun and simRollout (milliseconds.)
+ * The report is written to build/reports/fabctl-bench/simulated-network.json.
+ *
+ * This needs the cryptogen output in config/crypto-config (see README), but no cluster.
+ */
+@Slf4j
+public class SimulatedNetworkBenchmarkTest extends TestBase
+{
+    /**
+     * Not the test-network namespace:  the MSP blob store remembers its uploads by namespace.
+     */
+    private static final String NAMESPACE = "fabctl-bench";
+
+    private static final SimulatedCluster.Latencies LATENCIES =
+            new SimulatedCluster.Latencies(Long.getLong("fabctl.simApiLatency", 2),
+                                           Long.getLong("fabctl.simPodStart", 100),
+                                           Long.getLong("fabctl.simJobRun", 200),
+                                           Long.getLong("fabctl.simRollout", 500));
+
+    private static final File REPORT = new File("build/reports/fabctl-bench/simulated-network.json");
+
+    private static SimulatedCluster cluster;
+
+    /**
+     * Runs after TestBase has connected to the current kube context.  Point the tests at the simulated cluster
+     * instead.
+     */
+    @BeforeAll
+    public static void startSimulatedCluster()
+    {
+        assumeTrue(new File("config/crypto-config").isDirectory(), "Run cryptogen first (see README)");
+
+        jobExecutor.close();
+        applier.close();
+
+        //
+        // Commands are run as Jobs:  exec into a warm shell is not simulated.
+        //
+        if (shellPool != null)
+        {
+            shellPool.close();
+            shellPool = null;
+        }
+
+        //
+        // Nothing has been submitted yet, but the Job informer may have been started against the real cluster.
+        //
+        JobInformer.stop(client);
+        client.close();
+
+        cluster = new SimulatedCluster(NAMESPACE, LATENCIES, jobName -> List.of(jobName + " completed"));
+
+        client = cluster.getClient();
+        jobExecutor = new JobExecutor(client, MAX_CONCURRENT_JOBS, JOB_TIMEOUT, JOB_TIMEOUT_UNITS);
+        applier = new BatchApplier(client, APPLY_PARALLELISM);
+    }
+
+    /**
+     * Runs before TestBase.afterAll:  release everything using the simulated client before the mock server goes.
+     */
+    @AfterAll
+    public static void stopSimulatedCluster()
+    {
+        if (cluster != null)
+        {
+            jobExecutor.close();
+            applier.close();
+            JobInformer.stop(client);
+
+            cluster.close();
+        }
+    }
+
+    @Test
+    public void benchmarkTestNetwork() throws Exception
+    {
+        cluster.phase("bootstrap");
+        new InitFabricNetworkTest().testInitFabricNetwork();
+
+        cluster.phase("reconcile");
+        new InitFabricNetworkTest().testReconcileNetwork();
+
+        cluster.phase("channel");
+        new CreateAndJoinChannelTest().testCreateAndJoinChannel();
+
+        cluster.phase("chaincode");
+        new ChaincodeSandboxTest().testDeployChaincodeToNetwork();
+
+        cluster.phase(null);
+
+        final Map<String, SimulatedCluster.Meter> meters = cluster.getMeters();
+        final ObjectNode report = objectMapper.createObjectNode();
+        report.putPOJO("latencies", LATENCIES);
+
+        log.info("Simulated network with latencies {}:", LATENCIES);
+        for (SimulatedCluster.Meter meter : meters.values())
+        {
+            log.info("  {}: {} ms, {} calls ({} writes), {} bytes sent, {} bytes received",
+                     meter.phase,
+                     meter.elapsed.toMillis(),
+                     meter.calls.get(),
+                     meter.writes.get(),
+                     meter.bytesSent.get(),
+                     meter.bytesReceived.get());
+
+            final ObjectNode phase = report.with("phases").with(meter.phase);
+            phase.put("elapsedMillis", meter.elapsed.toMillis());
+            phase.put("calls", meter.calls.get());
+            phase.put("writes", meter.writes.get());
+            phase.put("bytesSent", meter.bytesSent.get());
+            phase.put("bytesReceived", meter.bytesReceived.get());
+
+            for (Map.Entry<String, AtomicLong> e : meter.requests.entrySet())
+            {
+                log.info("    {} {}", e.getKey(), e.getValue().get());
+                phase.with("requests").put(e.getKey(), e.getValue().get());
+            }
+        }
+
+        REPORT.getParentFile().mkdirs();
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(REPORT, report);
+
+        for (String phase : List.of("bootstrap", "channel", "chaincode"))
+        {
+            assertTrue(meters.get(phase).writes.get() > 0, phase + " wrote nothing");
+        }
+
+        //
+        // The bootstrap stamps what it creates in the same way as the reconciler:  an unchanged network is read
+        // from the informer caches and nothing is written.
+        //
+        assertEquals(0, meters.get("reconcile").writes.get());
+    }
+}
@@ -0,0 +1,76 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A crypto-config tree of synthetic peer identities, laid out as cryptogen does and with about the same file sizes.
+ * This lets the MSP loader and pipeline benchmarks (src/test and src/jmh) run without cryptogen.
+ */
+public class SyntheticCryptoConfig
+{
+    public static final int PEERS_PER_ORG = 100;
+
+    /**
+     * Write [identities] peer folders under dir, PEERS_PER_ORG to an org.  The CA certs and config.yaml are shared
+     * across an org, as they are in cryptogen output.
+     *
+     * @return the identity folders, by MSP descriptor name.
+     */
+    public static Map<String, File> generate(final Path dir, final int identities) throws IOException
+    {
+        final Map<String, File> folders = new LinkedHashMap<>();
+
+        for (int i = 0; i < identities; i++)
+        {
+            final String org = "org" + (i / PEERS_PER_ORG) + ".example.com";
+            final String id = "peer" + i + "." + org;
+            final Path base = dir.resolve("peerOrganizations/" + org + "/peers/" + id);
+
+            write(base.resolve("msp/admincerts/Admin@" + org + "-cert.pem"), "Admin@" + org);
+            write(base.resolve("msp/cacerts/ca." + org + "-cert.pem"), "ca." + org);
+            write(base.resolve("msp/keystore/priv_sk"), "key." + id);
+            write(base.resolve("msp/signcerts/" + id + "-cert.pem"), id);
+            write(base.resolve("msp/tlscacerts/tlsca." + org + "-cert.pem"), "tlsca." + org);
+            write(base.resolve("msp/config.yaml"), "config." + org);
+            write(base.resolve("tls/ca.crt"), "tlsca." + org);
+            write(base.resolve("tls/server.crt"), "server." + id);
+            write(base.resolve("tls/server.key"), "server.key." + id);
+
+            folders.put("msp-" + id, base.toFile());
+        }
+
+        return folders;
+    }
+
+    /**
+     * About the size of a cryptogen PEM file.  PEMs with the same seed have the same content.
+     */
+    public static byte[] pem(final String seed)
+    {
+        final StringBuilder pem = new StringBuilder("-----BEGIN CERTIFICATE-----\n");
+        for (int line = 0; line < 12; line++)
+        {
+            pem.append(String.format("%08x", seed.hashCode() * 31 + line).repeat(8)).append('\n');
+        }
+        pem.append("-----END CERTIFICATE-----\n");
+
+        return pem.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void write(final Path path, final String seed) throws IOException
+    {
+        Files.createDirectories(path.getParent());
+        Files.write(path, pem(seed));
+    }
+}
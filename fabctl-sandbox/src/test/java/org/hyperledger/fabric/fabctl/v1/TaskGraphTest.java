@@ -0,0 +1,85 @@
+/*-
+ * Copyright IBM Corp. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.fabctl.v1;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.fabric.fabctl.v1.bootstrap.TaskGraph;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The task graph runs without a cluster.  Check that independent tasks overlap, and that the critical path
+ * follows the slowest chain.
+ */
+@Slf4j
+public class TaskGraphTest
+{
+    @Test
+    public void testIndependentTasksRunConcurrently() throws Exception
+    {
+        final Set<String> completed = ConcurrentHashMap.newKeySet();
+
+        final TaskGraph graph =
+                new TaskGraph()
+                        .add("config", () -> completed.add("config"))
+                        .add("slow", () -> sleep(400), "config")
+                        .add("fast", () -> sleep(100), "config")
+                        .add("done", () -> {
+                            assertTrue(completed.contains("config"));
+                            completed.add("done");
+                        }, "slow", "fast");
+
+        final TaskGraph.Report report = graph.run(4);
+
+        log.info("Report: {}", report);
+
+        assertTrue(completed.contains("done"));
+        assertEquals(List.of("config", "slow", "done"), report.criticalPath);
+
+        //
+        // slow and fast overlap: the graph takes about as long as the longest chain, not the sum.
+        //
+        assertTrue(report.elapsed.toMillis() < 400 + 100);
+    }
+
+    @Test
+    public void testFailureSkipsDependents()
+    {
+        final Set<String> completed = ConcurrentHashMap.newKeySet();
+
+        final TaskGraph graph =
+                new TaskGraph()
+                        .add("broken", () -> { throw new IllegalStateException("boom"); })
+                        .add("dependent", () -> completed.add("dependent"), "broken")
+                        .add("independent", () -> completed.add("independent"));
+
+        final Exception ex = assertThrows(IllegalStateException.class, () -> graph.run(2));
+        assertEquals("boom", ex.getMessage());
+
+        assertFalse(completed.contains("dependent"));
+        assertTrue(completed.contains("independent"));
+    }
+
+    @Test
+    public void testCycleIsRejected()
+    {
+        final TaskGraph graph =
+                new TaskGraph()
+                        .add("a", () -> {}, "b")
+                        .add("b", () -> {}, "a");
+
+        assertThrows(IllegalStateException.class, () -> graph.run(1));
+    }
+
+    private static void sleep(final long millis) throws InterruptedException
+    {
+        Thread.sleep(millis);
+    }
+}
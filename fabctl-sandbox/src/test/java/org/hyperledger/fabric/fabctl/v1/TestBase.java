@@ -9,24 +9,36 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
 import io.fabric8.kubernetes.api.model.*;
 import io.fabric8.kubernetes.api.model.batch.v1.Job;
-import io.fabric8.kubernetes.api.model.batch.v1.JobBuilder;
 import io.fabric8.kubernetes.client.Config;
 import io.fabric8.kubernetes.client.ConfigBuilder;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
 import java.io.*;
+import java.net.HttpURLConnection;
 import java.nio.charset.Charset;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.compress.utils.IOUtils;
-import org.hyperledger.fabric.fabctl.v0.JobUtil;
+import org.hyperledger.fabric.fabctl.v0.JobExecutor;
+import org.hyperledger.fabric.fabctl.v0.JobInformer;
+import org.hyperledger.fabric.fabctl.v0.JobResult;
 import org.hyperledger.fabric.fabctl.v0.command.ConfigTXGenCommand;
 import org.hyperledger.fabric.fabctl.v0.command.FabricCommand;
 import org.hyperledger.fabric.fabctl.v0.command.PeerCommand;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPBlobStore;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPBundle;
 import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
 import org.hyperledger.fabric.fabctl.v1.network.Environment;
+import org.hyperledger.fabric.fabctl.v1.reconcile.BatchApplier;
+import org.hyperledger.fabric.fabctl.v1.shell.AdminShellPool;
+import org.hyperledger.fabric.fabctl.v1.template.ManifestTemplate;
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 
 import static org.junit.jupiter.api.Assertions.fail;
@@ -46,10 +58,82 @@ public class TestBase
 
     protected static final TimeUnit JOB_TIMEOUT_UNITS = TimeUnit.SECONDS;
 
+    protected static final int MAX_CONCURRENT_JOBS = 8;
+
+    /**
+     * The maximum number of server-side apply requests in flight at any one time.
+     */
+    protected static final int APPLY_PARALLELISM = 16;
+
+    /**
+     * When set (-Dfabctl.warmShells=true), commands are run by exec in a pool of warm admin shell pods
+     * rather than as a batch Job.
+     */
+    protected static final boolean WARM_SHELLS = Boolean.getBoolean("fabctl.warmShells");
+
+    protected static final int SHELL_POOL_SIZE = 2;
+
+    /**
+     * When set (-Dfabctl.mspBundles=true), MSP config maps carry a single tar.gz bundle rather than a yaml
+     * descriptor.
+     */
+    protected static final boolean MSP_BUNDLES = Boolean.getBoolean("fabctl.mspBundles");
+
+    /**
+     * When set (-Dfabctl.mspProjected=true), MSP folders are projected into pods directly from the blob config
+     * maps, with no msp-unfurl init container.
+     */
+    protected static final boolean MSP_PROJECTED = Boolean.getBoolean("fabctl.mspProjected");
+
+    /**
+     * Whether pods need the msp-blob-* config maps:  yaml descriptors refer to their files by digest, and projected
+     * MSP folders are built from the blobs.  A bundle carries its own files, so with bundles (and no projection)
+     * the blobs are neither uploaded nor mounted.
+     */
+    protected static final boolean MSP_BLOBS = ! MSP_BUNDLES || MSP_PROJECTED;
+
+    /**
+     * When set (-Dfabctl.mspWatch=true), peers and orderers run the msp-unfurler as an msp-watch sidecar, reading
+     * their MSP contexts from mutable config maps named for the descriptor (see watchMSPVolume.)  Updating one of
+     * those config maps in place rotates the node's certificates without a new pod.  Projected MSP folders are
+     * fixed for the life of the pod, so this has no effect with MSP_PROJECTED.
+     */
+    protected static final boolean MSP_WATCH = Boolean.getBoolean("fabctl.mspWatch") && ! MSP_PROJECTED;
+
+    protected static final int MSP_CONFIG_MAP_HASH_LENGTH = 10;
+
+    //
+    // Manifest templates are parsed once, on first use, and rendered for each node.
+    //
+    protected static final ManifestTemplate<Job> JOB_TEMPLATE =
+            ManifestTemplate.load("job.yaml", Job.class);
+
+    protected static final ManifestTemplate<Service> SERVICE_TEMPLATE =
+            ManifestTemplate.load("service.yaml", Service.class);
+
+    protected static final ManifestTemplate<Container> MSP_UNFURL_TEMPLATE =
+            ManifestTemplate.load("msp-unfurl-container.yaml", Container.class);
+
+    protected static final ManifestTemplate<Container> MSP_WATCH_TEMPLATE =
+            ManifestTemplate.load("msp-watch-container.yaml", Container.class);
+
+    protected static final long SHELL_IDLE_TIMEOUT = 300;
+
+    /**
+     * Shared by all tests in the JVM, so that each distinct MSP file is held and uploaded once.
+     */
+    protected static final MSPBlobStore blobStore = new MSPBlobStore();
+
     protected static Config kubeConfig;
 
     protected static KubernetesClient client;
 
+    protected static JobExecutor jobExecutor;
+
+    protected static BatchApplier applier;
+
+    protected static AdminShellPool shellPool;
+
     @BeforeAll
     public static void beforeAll() throws Exception
     {
@@ -62,6 +146,60 @@ public class TestBase
                  yamlMapper.writeValueAsString(kubeConfig.getCurrentContext()));
 
         client = new DefaultKubernetesClient(kubeConfig);
+
+        jobExecutor = new JobExecutor(client, MAX_CONCURRENT_JOBS, JOB_TIMEOUT, JOB_TIMEOUT_UNITS);
+
+        applier = new BatchApplier(client, APPLY_PARALLELISM);
+
+        if (WARM_SHELLS)
+        {
+            shellPool = new AdminShellPool(client,
+                                           (command, msps) -> buildRemoteJob(command, new Environment(), msps)
+                                                   .getSpec()
+                                                   .getTemplate()
+                                                   .getSpec(),
+                                           blobStore,
+                                           SHELL_POOL_SIZE,
+                                           SHELL_IDLE_TIMEOUT,
+                                           JOB_TIMEOUT,
+                                           JOB_TIMEOUT_UNITS);
+        }
+    }
+
+    @AfterAll
+    public static void afterAll()
+    {
+        if (jobExecutor != null)
+        {
+            jobExecutor.close();
+        }
+
+        if (shellPool != null)
+        {
+            shellPool.close();
+        }
+
+        if (applier != null)
+        {
+            applier.close();
+        }
+
+        //
+        // Blobs still mounted by the network (or a Job) stay.  The rest are uploaded again when a test needs them.
+        //
+        if (MSP_BLOBS && client != null)
+        {
+            try
+            {
+                blobStore.prune(client, List.of());
+            }
+            catch (KubernetesClientException ex)
+            {
+                log.warn("Could not prune the MSP blobs in namespace {}", client.getNamespace(), ex);
+            }
+        }
+
+        JobInformer.stop(client);
     }
 
     /**
@@ -130,15 +268,68 @@ public class TestBase
         log.info("With context:\n{}", yamlMapper.writeValueAsString(environment));
         log.info("With msp descriptors:\n{}", yamlMapper.writeValueAsString(msps));
 
+        uploadMSPBlobs(msps);
+
+        if (shellPool != null)
+        {
+            return logResult(shellPool.execute(command, environment, msps)).getExitCode();
+        }
+
         final Job template = buildRemoteJob(command, environment, msps);
 
         return runJob(template);
     }
 
+    /**
+     * Run a command without blocking the caller.  Use this to overlap independent admin commands.
+     */
+    protected CompletableFuture<JobResult> executeAsync(final FabricCommand command,
+                                                        final Environment environment,
+                                                        final List<MSPDescriptor> mspList)
+        throws Exception
+    {
+        final MSPDescriptor[] msps = mspList.toArray(new MSPDescriptor[0]);
+
+        log.info("Submitting command:\n{}", yamlMapper.writeValueAsString(command));
+        log.info("With context:\n{}", yamlMapper.writeValueAsString(environment));
+
+        uploadMSPBlobs(msps);
+
+        if (shellPool != null)
+        {
+            return CompletableFuture.supplyAsync(() ->
+            {
+                try
+                {
+                    return shellPool.execute(command, environment, msps);
+                }
+                catch (Exception ex)
+                {
+                    throw new CompletionException(ex);
+                }
+            }).thenApply(TestBase::logResult);
+        }
+
+        return jobExecutor.submit(buildRemoteJob(command, environment, msps))
+                          .thenApply(TestBase::logResult);
+    }
+
+
+    /**
+     * MSP config maps may reference shared blobs rather than embedding the files.  Make sure the blobs are in the
+     * namespace before submitting a Job (or launching a shell) that mounts them.  Blobs already uploaded are skipped.
+     */
+    protected static void uploadMSPBlobs(final MSPDescriptor... msps)
+    {
+        if (MSP_BLOBS)
+        {
+            blobStore.upload(client, Arrays.asList(msps));
+        }
+    }
 
-    protected Job buildRemoteJob(final FabricCommand command,
-                                 final Map<String,String> context,
-                                 final MSPDescriptor... msps)
+    protected static Job buildRemoteJob(final FabricCommand command,
+                                        final Map<String,String> context,
+                                        final MSPDescriptor... msps)
     {
         final List<EnvVar> env = new ArrayList<>();
         for (Entry<String, String> e : context.entrySet())
@@ -208,7 +399,6 @@ public class TestBase
                             .endEmptyDir()
                             .build());
 
-
         //
         // Add a config map volume for each msp context in scope.
         //
@@ -221,7 +411,7 @@ public class TestBase
                                 // .withName(msp.name)  // volumes may not have '.'
                                 .withName("msp-cm-vol-" + i++)
                                 .withConfigMap(new ConfigMapVolumeSourceBuilder()
-                                                       .withName(msp.name)
+                                                       .withName(mspConfigMapName(msp))
                                                        .build())
                                 .build());
         }
@@ -236,6 +426,8 @@ public class TestBase
                                               .withMountPath("/var/hyperledger/fabric/xyzzy")
                                               .build());
 
+        addMSPBlobVolume(volumes, initContainerVolumeMounts, Arrays.asList(msps));
+
         //
         // Each msp descriptor will be mounted into the init container as a single file.
         //
@@ -247,88 +439,255 @@ public class TestBase
             initContainerVolumeMounts.add(new VolumeMountBuilder()
                                                   // .withName(msp.name) // volumes may not have '.' in name
                                                   .withName("msp-cm-vol-" + i++)
-                                                  .withMountPath("/var/hyperledger/fabric/msp-descriptors/" + msp.name + ".yaml")
-                                                  .withSubPath(msp.name + ".yaml")
+                                                  .withMountPath("/var/hyperledger/fabric/msp-descriptors/" + mspConfigMapKey(msp))
+                                                  .withSubPath(mspConfigMapKey(msp))
                                                   .build());
         }
 
 
-        return new JobBuilder()
-                .withApiVersion("batch/v1")
-                .withNewMetadata()
-                .withGenerateName("peer-job-")
-                .endMetadata()
-                .withNewSpec()
-                .withBackoffLimit(0)
-                .withCompletions(1)
-                .withNewTemplate()
-                .withNewSpec()
-                .withRestartPolicy("Never")
-                .addNewContainer()
-                .withName("main")
-                .withImage(command.getImage() + ":" + command.getLabel())
-                .withCommand(command.command)
-                .withEnv(env)
-                .withVolumeMounts(nodeVolumeMounts)
-                .endContainer()
-
-
-
-
-                //
-                // Set up an init container to unfurl the MSP context into a directory on the node.
-                //
-                .addNewInitContainer()
-                .withName("msp-unfurl")
-                .withImage("hyperledgendary/fabric-hyper-kube/fabctl-msp-unfurler")
-                .withImagePullPolicy("IfNotPresent")
-                .addToEnv(new EnvVarBuilder()
-                                  .withName("INPUT_FOLDER")
-                                  .withValue("/var/hyperledger/fabric/msp-descriptors")
-                                  .build())
-                .addToEnv(new EnvVarBuilder()
-                                  .withName("OUTPUT_FOLDER")
-                                  .withValue("/var/hyperledger/fabric/xyzzy")
-                                  .build())
-                .withVolumeMounts(initContainerVolumeMounts)
-                .endInitContainer()
-
-
-                .withVolumes(volumes)
-                .endSpec()
-                .endTemplate()
-                .endSpec()
-                .build();
+        final Job job =
+                JOB_TEMPLATE.render(Map.of("image", command.getImage() + ":" + command.getLabel(),
+                                           "command", command.command,
+                                           "env", env,
+                                           "volumeMounts", nodeVolumeMounts,
+                                           "mspUnfurl", buildMSPUnfurlContainer(initContainerVolumeMounts),
+                                           "volumes", volumes));
+
+        if (MSP_PROJECTED)
+        {
+            projectMSPVolume(job.getSpec().getTemplate().getSpec(), Arrays.asList(msps));
+        }
+
+        return job;
     }
 
-    protected int runJob(final Job template) throws Exception
+    /**
+     * The msp-unfurl init container, reading descriptors from /var/hyperledger/fabric/msp-descriptors and writing
+     * MSP folders to /var/hyperledger/fabric/xyzzy.
+     */
+    protected static Container buildMSPUnfurlContainer(final List<VolumeMount> volumeMounts)
+    {
+        return MSP_UNFURL_TEMPLATE.render(Map.of("blobFolder", MSPBlobStore.BLOB_FOLDER,
+                                                 "volumeMounts", volumeMounts));
+    }
+
+    /**
+     * A service exposing the ports of the pods with app=[name]
+     */
+    protected static Service buildService(final String name, final List<ServicePort> ports)
     {
-        final Job job = JobUtil.runJob(client, template, JOB_TIMEOUT, JOB_TIMEOUT_UNITS);
-        final Pod mainPod = JobUtil.findMainPod(client, job.getMetadata().getName());
-        final PodStatus status = mainPod.getStatus();
-        final int exitCode = JobUtil.getContainerStatusCode(status, "main");
+        return SERVICE_TEMPLATE.render(Map.of("name", name,
+                                              "ports", ports));
+    }
 
-        log.info("Command output:");
+    /**
+     * Project the blobs referenced by the descriptors into the msp-unfurl init container, when the MSP config maps
+     * refer to blobs at all (see MSP_BLOBS.)  The projection's config map sources are not optional:  a pod that
+     * mounts a blob nobody uploaded never starts.
+     */
+    protected static void addMSPBlobVolume(final List<Volume> volumes,
+                                           final List<VolumeMount> initContainerVolumeMounts,
+                                           final Collection<MSPDescriptor> msps)
+    {
+        if (! MSP_BLOBS)
+        {
+            return;
+        }
 
-        //
-        // Print the [main] container / pod logs
-        //
-        try (final Reader logReader =
-                     client.pods()
-                           .withName(mainPod.getMetadata().getName())
-                           .inContainer("main")
-                           .getLogReader();
-             final BufferedReader reader = new BufferedReader(logReader))
+        volumes.add(blobStore.buildVolume("msp-blobs", msps));
+
+        initContainerVolumeMounts.add(new VolumeMountBuilder()
+                                              .withName("msp-blobs")
+                                              .withMountPath(MSPBlobStore.BLOB_FOLDER)
+                                              .build());
+    }
+
+    /**
+     * Swap the unfurled msp-volume for a projection of the MSP folders from the blob config maps, dropping the
+     * msp-unfurl init container and the volumes that fed it.  The node still finds its MSP folders at
+     * /var/hyperledger/fabric/xyzzy/[id]/...
+     */
+    protected static void projectMSPVolume(final PodSpec spec, final Collection<MSPDescriptor> msps)
+    {
+        spec.getInitContainers().removeIf(container -> "msp-unfurl".equals(container.getName()));
+
+        spec.getVolumes().removeIf(volume -> "msp-volume".equals(volume.getName())
+                                             || "msp-blobs".equals(volume.getName())
+                                             || "msp-config".equals(volume.getName())
+                                             || volume.getName().startsWith("msp-cm-vol-"));
+
+        spec.getVolumes().add(blobStore.buildMSPVolume("msp-volume", msps));
+    }
+
+    /**
+     * Have the msp-unfurl init container and a new msp-watch sidecar read the MSP descriptors from the mutable,
+     * descriptor-named config maps (see buildMSPWatchConfigMap) in place of the content-named ones, for MSP_WATCH.
+     *
+     * The config maps are projected into one volume, mounted as a folder rather than a file at a time by subPath:
+     * the kubelet refreshes the folder by swapping its ..data symlink, and the sidecar's WatchService sees the swap.
+     * The pod spec no longer names the content hash of any MSP, so updating a config map does not roll out a new
+     * pod.  The node keeps reading /var/hyperledger/fabric/xyzzy/[id]/..., where the sidecar replaces the changed
+     * files.
+     */
+    protected static void watchMSPVolume(final PodSpec spec, final Collection<MSPDescriptor> msps)
+    {
+        spec.getVolumes().removeIf(volume -> "msp-blobs".equals(volume.getName())
+                                             || "msp-config".equals(volume.getName())
+                                             || volume.getName().startsWith("msp-cm-vol-"));
+
+        final List<VolumeProjection> sources = new ArrayList<>();
+        for (MSPDescriptor msp : msps)
+        {
+            sources.add(new VolumeProjectionBuilder()
+                                .withNewConfigMap()
+                                .withName(mspWatchConfigMapName(msp))
+                                .endConfigMap()
+                                .build());
+        }
+
+        spec.getVolumes().add(new VolumeBuilder()
+                                      .withName("msp-descriptors")
+                                      .withNewProjected()
+                                      .withSources(sources)
+                                      .endProjected()
+                                      .build());
+
+        final List<VolumeMount> volumeMounts =
+                List.of(new VolumeMountBuilder()
+                                .withName("msp-volume")
+                                .withMountPath("/var/hyperledger/fabric/xyzzy")
+                                .build(),
+                        new VolumeMountBuilder()
+                                .withName("msp-descriptors")
+                                .withMountPath("/var/hyperledger/fabric/msp-descriptors")
+                                .build());
+
+        for (Container container : spec.getInitContainers())
         {
-            String line;
-            while ((line = reader.readLine()) != null)
+            if ("msp-unfurl".equals(container.getName()))
             {
-                log.info(line);
+                container.setVolumeMounts(new ArrayList<>(volumeMounts));
             }
         }
 
-        log.info("Command exit: {}", exitCode);
+        spec.getContainers().add(MSP_WATCH_TEMPLATE.render(Map.of("volumeMounts", volumeMounts)));
+    }
+
+    /**
+     * The file name of the MSP descriptor (or bundle) in an MSP config map.
+     */
+    protected static String mspConfigMapKey(final MSPDescriptor msp)
+    {
+        return msp.name + (MSP_BUNDLES ? MSPBundle.SUFFIX : MSPBlobStore.DESCRIPTOR_SUFFIX);
+    }
+
+    /**
+     * MSP config maps are immutable and named for their content:  [name]-[hash].  The hash covers the files in
+     * the descriptor and the form (yaml or bundle) it is carried in.  A change to the descriptor is a new config
+     * map, and a pod spec that refers to it rolls out a new pod.
+     */
+    protected static String mspConfigMapName(final MSPDescriptor msp)
+    {
+        final String hash = DigestUtils.sha256Hex(mspConfigMapKey(msp) + "  " + blobStore.digest(msp));
+
+        return msp.name + "-" + hash.substring(0, MSP_CONFIG_MAP_HASH_LENGTH);
+    }
+
+    /**
+     * The mutable MSP config map watched by an MSP_WATCH node is named for the descriptor alone.
+     */
+    protected static String mspWatchConfigMapName(final MSPDescriptor msp)
+    {
+        return msp.name;
+    }
+
+    /**
+     * Build the mutable MSP config map watched by an MSP_WATCH node.  It always carries a bundle:  the node's blob
+     * volume is fixed when the pod starts, and would not hold the blobs of a rotated certificate.
+     */
+    protected static ConfigMap buildMSPWatchConfigMap(final MSPDescriptor msp) throws IOException
+    {
+        return MSPBundle.buildConfigMap(mspWatchConfigMapName(msp), msp, MSPBundle.build(msp, blobStore::get), false);
+    }
+
+    /**
+     * Build an MSP config map.  The yaml descriptor refers to its files by digest, while a bundle carries the files.
+     *
+     * todo: add some metadata labels to the configmap (e.g. id, org, name, type, etc .etc. )
+     */
+    protected static ConfigMap buildMSPConfigMap(final MSPDescriptor msp) throws IOException
+    {
+        if (MSP_BUNDLES)
+        {
+            return MSPBundle.buildConfigMap(mspConfigMapName(msp), msp, MSPBundle.build(msp, blobStore::get));
+        }
+
+        return blobStore.buildDescriptorConfigMap(mspConfigMapName(msp), msp);
+    }
+
+    /**
+     * Create an MSP config map (and any blobs it refers to) unless a config map with the same content is already
+     * in the namespace.  Repeat runs with the same crypto material write nothing.  With MSP_WATCH, the watched
+     * config map is written (or updated in place) as well.
+     */
+    protected static ConfigMap createMSPConfigMap(final MSPDescriptor msp) throws IOException
+    {
+        if (MSP_BLOBS)
+        {
+            blobStore.upload(client, List.of(msp));
+        }
+
+        if (MSP_WATCH)
+        {
+            client.configMaps().createOrReplace(buildMSPWatchConfigMap(msp));
+        }
+
+        final String name = mspConfigMapName(msp);
+
+        final ConfigMap existing = client.configMaps().withName(name).get();
+        if (existing != null)
+        {
+            log.info("Reusing MSP config map {}", name);
+            return existing;
+        }
+
+        try
+        {
+            return client.configMaps().create(buildMSPConfigMap(msp));
+        }
+        catch (KubernetesClientException ex)
+        {
+            //
+            // Created by a concurrent task.  Same name, same content.
+            //
+            if (ex.getCode() != HttpURLConnection.HTTP_CONFLICT)
+            {
+                throw ex;
+            }
+
+            return client.configMaps().withName(name).get();
+        }
+    }
+
+    protected int runJob(final Job template) throws Exception
+    {
+        return logResult(jobExecutor.submit(template).get()).getExitCode();
+    }
+
+    /**
+     * Print the [main] container / pod logs
+     */
+    protected static JobResult logResult(final JobResult result)
+    {
+        log.info("Command output ({}):", result.getPodName());
+
+        for (String line : result.getLogs())
+        {
+            log.info(line);
+        }
+
+        log.info("Command exit: {}", result.getExitCode());
 
-        return exitCode;
+        return result;
     }
 }
@@ -8,8 +8,11 @@ package org.hyperledger.fabric.fabctl.v1;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptor;
+import org.hyperledger.fabric.fabctl.v1.msp.MSPDescriptorLoader;
 import org.hyperledger.fabric.fabctl.v1.network.*;
 
 import static org.junit.jupiter.api.Assertions.fail;
@@ -37,6 +40,8 @@ import static org.junit.jupiter.api.Assertions.fail;
  */
 class TestNetwork extends NetworkConfig
 {
+    private static final int LOADER_PARALLELISM = 8;
+
     TestNetwork()
     {
         this("test-network");
@@ -48,32 +53,56 @@ class TestNetwork extends NetworkConfig
 
         try
         {
+            //
+            // Load all of the MSP descriptors up front, in parallel.
+            //
+            final Map<String, File> folders = new LinkedHashMap<>();
+            folders.put("msp-com.example",                       new File("config/crypto-config/ordererOrganizations/example.com"));
+            folders.put("msp-com.example.orderer1",              new File("config/crypto-config/ordererOrganizations/example.com/orderers/orderer1.example.com"));
+            folders.put("msp-com.example.orderer2",              new File("config/crypto-config/ordererOrganizations/example.com/orderers/orderer2.example.com"));
+            folders.put("msp-com.example.orderer3",              new File("config/crypto-config/ordererOrganizations/example.com/orderers/orderer3.example.com"));
+            folders.put("msp-com.example.org1",                  new File("config/crypto-config/peerOrganizations/org1.example.com"));
+            folders.put("msp-com.example.org1.org1-peer1",       new File("config/crypto-config/peerOrganizations/org1.example.com/peers/org1-peer1.org1.example.com"));
+            folders.put("msp-com.example.org1.user.admin",       new File("config/crypto-config/peerOrganizations/org1.example.com/users/Admin@org1.example.com"));
+            folders.put("msp-com.example.org1.org1-peer2",       new File("config/crypto-config/peerOrganizations/org1.example.com/peers/org1-peer2.org1.example.com"));
+            folders.put("msp-com.example.org2",                  new File("config/crypto-config/peerOrganizations/org2.example.com"));
+            folders.put("msp-com.example.org2.org2-peer1",       new File("config/crypto-config/peerOrganizations/org2.example.com/peers/org2-peer1.org2.example.com"));
+            folders.put("msp-com.example.org2.org2-peer2",       new File("config/crypto-config/peerOrganizations/org2.example.com/peers/org2-peer2.org2.example.com"));
+
+            final Map<String, MSPDescriptor> msps = new LinkedHashMap<>();
+            try (MSPDescriptorLoader loader = new MSPDescriptorLoader(LOADER_PARALLELISM))
+            {
+                //
+                // Refer to the MSP files by digest.  The CA certs shared by every node are held (and uploaded) once.
+                //
+                for (Map.Entry<String, MSPDescriptor> e : loader.loadAll(folders).entrySet())
+                {
+                    msps.put(e.getKey(), TestBase.blobStore.intern(e.getValue()));
+                }
+            }
+
             //
             // orderer org: three orderers. 
             //
             final OrganizationConfig ordererOrg = 
                     new OrganizationConfig("OrdererOrg",
                                            "OrdererMSP",
-                                           new MSPDescriptor("msp-com.example",
-                                                             new File("config/crypto-config/ordererOrganizations/example.com")));
+                                           msps.get("msp-com.example"));
 
             ordererOrg.getOrderers()
                       .add(new OrdererConfig("orderer1",
                                              loadEnvironment("orderer1.properties"),
-                                             new MSPDescriptor("msp-com.example.orderer1",
-                                                               new File("config/crypto-config/ordererOrganizations/example.com/orderers/orderer1.example.com"))));
+                                             msps.get("msp-com.example.orderer1")));
 
             ordererOrg.getOrderers()
                       .add(new OrdererConfig("orderer2",
                                              loadEnvironment("orderer2.properties"),
-                                             new MSPDescriptor("msp-com.example.orderer2",
-                                                               new File("config/crypto-config/ordererOrganizations/example.com/orderers/orderer2.example.com"))));
+                                             msps.get("msp-com.example.orderer2")));
 
             ordererOrg.getOrderers()
                       .add(new OrdererConfig("orderer3",
                                              loadEnvironment("orderer3.properties"),
-                                             new MSPDescriptor("msp-com.example.orderer3",
-                                                               new File("config/crypto-config/ordererOrganizations/example.com/orderers/orderer3.example.com"))));
+                                             msps.get("msp-com.example.orderer3")));
 
 
             
@@ -83,8 +112,7 @@ class TestNetwork extends NetworkConfig
             final OrganizationConfig org1 =
                     new OrganizationConfig("Org1",
                                            "Org1MSP",
-                                           new MSPDescriptor("msp-com.example.org1",
-                                                             new File("config/crypto-config/peerOrganizations/org1.example.com")));
+                                           msps.get("msp-com.example.org1"));
 
 
             //
@@ -97,18 +125,14 @@ class TestNetwork extends NetworkConfig
             org1.getPeers()
                 .add(new PeerConfig("org1-peer1",
                                     loadEnvironment("org1-peer1.properties"),
-                                    new MSPDescriptor("msp-com.example.org1.org1-peer1",
-                                                      new File("config/crypto-config/peerOrganizations/org1.example.com/peers/org1-peer1.org1.example.com")),
-                                    new MSPDescriptor("msp-com.example.org1.user.admin",
-                                                      new File("config/crypto-config/peerOrganizations/org1.example.com/users/Admin@org1.example.com")),
-                                    new MSPDescriptor("msp-com.example.orderer1",
-                                                      new File("config/crypto-config/ordererOrganizations/example.com/orderers/orderer1.example.com"))));
+                                    msps.get("msp-com.example.org1.org1-peer1"),
+                                    msps.get("msp-com.example.org1.user.admin"),
+                                    msps.get("msp-com.example.orderer1")));
 
             org1.getPeers()
                 .add(new PeerConfig("org1-peer2",
                                     loadEnvironment("org1-peer2.properties"),
-                                    new MSPDescriptor("msp-com.example.org1.org1-peer2",
-                                                      new File("config/crypto-config/peerOrganizations/org1.example.com/peers/org1-peer2.org1.example.com"))));
+                                    msps.get("msp-com.example.org1.org1-peer2")));
 
 
             
@@ -118,20 +142,17 @@ class TestNetwork extends NetworkConfig
             final OrganizationConfig org2 =
                     new OrganizationConfig("Org2",
                                            "Org1MSP",
-                                           new MSPDescriptor("msp-com.example.org2",
-                                                             new File("config/crypto-config/peerOrganizations/org2.example.com")));
+                                           msps.get("msp-com.example.org2"));
 
 
             org2.getPeers()
                 .add(new PeerConfig("org2-peer1",
                                     loadEnvironment("org2-peer1.properties"),
-                                    new MSPDescriptor("msp-com.example.org2.org2-peer1",
-                                                      new File("config/crypto-config/peerOrganizations/org2.example.com/peers/org2-peer1.org2.example.com"))));
+                                    msps.get("msp-com.example.org2.org2-peer1")));
             org2.getPeers()
                 .add(new PeerConfig("org2-peer2",
                                     loadEnvironment("org2-peer2.properties"),
-                                    new MSPDescriptor("msp-com.example.org2.org2-peer2",
-                                                      new File("config/crypto-config/peerOrganizations/org2.example.com/peers/org2-peer2.org2.example.com"))));
+                                    msps.get("msp-com.example.org2.org2-peer2")));
 
 
             organizations.add(ordererOrg);